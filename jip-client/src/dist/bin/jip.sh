@@ -54,6 +54,43 @@ fi
 
 export PATH=$JIP_HOME/bin:$PATH
 
+# send the command to a running JIP daemon. Returns the exit code
+# of the command or 255 if the command has to run in this process
+jip_daemon() {
+    local file="$HOME/.jip/daemon"
+    local port token home arg line started=0
+    [ -r "$file" ] || return 255
+    read port token home < "$file" || return 255
+    [ "$home" = "$(cd "$JIP_HOME" && pwd -P)" ] || return 255
+    for arg in "$@"; do
+        case "$arg" in *$'\n'*) return 255;; esac
+    done
+    { exec 3<>/dev/tcp/127.0.0.1/$port; } 2>/dev/null || return 255
+    { printf '%s\n%s\n' "$token" "$#"; for arg in "$@"; do printf '%s\n' "$arg"; done; } >&3
+    while IFS= read -r line <&3; do
+        case "$line" in
+            "1 "*) printf '%s\n' "${line:2}"; started=1;;
+            "2 "*) printf '%s\n' "${line:2}" >&2; started=1;;
+            "0 "*) exec 3<&-; return "${line:2}";;
+            f) exec 3<&-; return 255;;
+        esac
+    done
+    exec 3<&-
+    if [ $started = 1 ]; then
+        echo "Lost connection to the JIP daemon" >&2
+        return 1
+    fi
+    return 255
+}
+
+if [ -z "$JIP_NO_DAEMON" ]; then
+    jip_daemon "$@"
+    code=$?
+    if [ $code != 255 ]; then
+        exit $code
+    fi
+fi
+
 java -Xmx$JIP_MEM $MISC \
 -Djip.home=$JIP_HOME \
 ${JAVA_OPTS} \
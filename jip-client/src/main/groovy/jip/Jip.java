@@ -7,8 +7,13 @@ import groovy.text.GStringTemplateEngine;
 import groovy.text.Template;
 import jip.commands.JipCommand;
 import jip.commands.JipCommandService;
+import jip.jobs.DefaultRunService;
+import jip.jobs.FileJobStore;
+import jip.jobs.Job;
+import jip.jobs.JobStore;
 import jip.plugin.PluginBootstrapper;
 import jip.plugin.PluginRegistry;
+import jip.tools.DefaultToolService;
 import jip.tools.ToolService;
 import net.sourceforge.argparse4j.ArgumentParsers;
 import net.sourceforge.argparse4j.inf.*;
@@ -50,6 +55,18 @@ public class Jip implements JipEnvironment{
      * The plugin registry
      */
     private PluginRegistry pluginRegistry;
+    /**
+     * The command service, set once the plugin system is started
+     */
+    private JipCommandService commandService;
+    /**
+     * The command line parser
+     */
+    private ArgumentParser argparser;
+    /**
+     * Logging is configured
+     */
+    private boolean loggingConfigured;
     /**
      * The global log layout
      */
@@ -92,9 +109,13 @@ public class Jip implements JipEnvironment{
      */
     public static void main(String[] args) {
         long start = System.currentTimeMillis();
-        getInstance().run(args);
+        String[] job = getExecuteJob(args);
+        int exitCode = job != null ? getInstance().executeJob(job[0], job[1], args) : getInstance().execute(args);
         log.debug("Jip finished in {}ms", System.currentTimeMillis() - start);
         //System.err.println("Jip finished in "+ (System.currentTimeMillis() - start));
+        if(exitCode != 0){
+            System.exit(exitCode);
+        }
     }
 
     /**
@@ -106,11 +127,12 @@ public class Jip implements JipEnvironment{
     }
 
     /**
-     * Run the JIP client
-     *
-     * @param args the command line arguments
+     * Configure logging and start the plugin system. The plugin system
+     * and the command line parser are only created once, so a running
+     * {@link JipDaemon} can execute many commands.
      */
-    void run(String[] args) {
+    synchronized void bootstrap() {
+        if(commandService != null) return;
         Properties properties = new Properties();
         String userHome = new File(System.getProperty("user.home", ".") + "/.jip").getAbsolutePath();
         String jipHome = new File(System.getProperty("jip.home", "")).getAbsolutePath();
@@ -119,11 +141,7 @@ public class Jip implements JipEnvironment{
         }
         properties.setProperty("jip.user.home", userHome);
 
-        try {
-            configureLogger(this, getConfiguration());
-        } catch (IOException e) {
-            log.error("Error while initializing logging system : {}", e.getMessage());
-        }
+        configureLogging();
 
         log.debug("JIP home: {}", jipHome);
         log.debug("JIP user dir: {}", userHome);
@@ -139,10 +157,104 @@ public class Jip implements JipEnvironment{
         }
 
         pluginRegistry = injector.getInstance(PluginRegistry.class);
-        JipCommandService commandService = injector.getInstance(JipCommandService.class);
         this.toolService = injector.getInstance(ToolService.class);
+        JipCommandService commands = injector.getInstance(JipCommandService.class);
+        argparser = createOptions(commands);
+        commandService = commands;
+    }
 
-        ArgumentParser argparser = createOptions(commandService);
+    /**
+     * Configure the logging system once
+     */
+    private synchronized void configureLogging() {
+        if(loggingConfigured) return;
+        loggingConfigured = true;
+        try {
+            configureLogger(this, getConfiguration());
+        } catch (IOException e) {
+            log.error("Error while initializing logging system : {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the pipeline and job id if the arguments only execute a stored
+     * job, for example <code>execute -p 1 -j 2</code>
+     *
+     * @param args the command line arguments
+     * @return ids the pipeline and job id or null
+     */
+    static String[] getExecuteJob(String[] args) {
+        if(args.length != 5 || !args[0].equals("execute")) return null;
+        String[] ids = new String[2];
+        for (int i = 1; i < args.length; i += 2) {
+            if(args[i].equals("-p") || args[i].equals("--pipeline")){
+                ids[0] = args[i + 1];
+            }else if(args[i].equals("-j") || args[i].equals("--job")){
+                ids[1] = args[i + 1];
+            }else{
+                return null;
+            }
+        }
+        return ids[0] != null && ids[1] != null ? ids : null;
+    }
+
+    /**
+     * Execute a stored job without starting the plugin system. Only the job
+     * and the definition of its tool are loaded, and the job state is reported
+     * to the job store. Jobs that need a plugin, for example a job store, codec
+     * or tool implemented in a plugin, are executed through
+     * {@link #execute(String[])}.
+     *
+     * @param pipelineId the pipeline id
+     * @param jobId the job id
+     * @param args the command line arguments used if the job needs plugins
+     * @return exitCode the exit code
+     */
+    int executeJob(String pipelineId, String jobId, String[] args) {
+        configureLogging();
+        Job job = null;
+        DefaultToolService tools = null;
+        JobStore jobStore = null;
+        try {
+            Object store = JipConfiguration.get(getConfiguration(), "storage", "store");
+            if(store == null || store.toString().equals(FileJobStore.class.getName())){
+                jobStore = new FileJobStore(this, null);
+                job = jobStore.getJob(pipelineId, jobId);
+            }
+            if(job != null){
+                tools = new DefaultToolService(null, this, null);
+                if(tools.loadTool(job.getToolName()) == null){
+                    job = null;
+                }
+            }
+        } catch (Exception e) {
+            log.info("Unable to load job {}-{} without plugins : {}", new Object[]{pipelineId, jobId, e.getMessage()});
+            job = null;
+        }
+        if(job == null){
+            return execute(args);
+        }
+
+        log.info("Executing {}-{}", pipelineId, jobId);
+        toolService = tools;
+        try {
+            new DefaultRunService(tools, null, null, jobStore, this).execute(job, true);
+        } catch (Exception e) {
+            log.error("Error while executing job {}", jobId, e);
+            System.err.println("ERROR " + e.getMessage());
+            return 1;
+        }
+        return 0;
+    }
+
+    /**
+     * Execute a JIP command
+     *
+     * @param args the command line arguments
+     * @return exitCode the exit code, 0 on success
+     */
+    int execute(String[] args) {
+        bootstrap();
         log.debug("Parsing command line options");
         Namespace parsed = null;
         try {
@@ -151,17 +263,17 @@ public class Jip implements JipEnvironment{
             System.err.println("");
             System.err.println("Error parsing arguments\n\n" + e.getMessage());
             System.err.println("");
-            return;
+            return 0;
         }
 
         if(parsed.get("help") != null && parsed.getBoolean("help")){
             argparser.printHelp();
-            return;
+            return 0;
         }
 
         if(parsed.get("version") != null && parsed.getBoolean("version")){
             createVersionString();
-            return;
+            return 0;
         }
 
         if(parsed.get("loglevel") != null && System.getProperty("jip.log.level", "").isEmpty()){
@@ -176,7 +288,7 @@ public class Jip implements JipEnvironment{
             JipCommand cmd = commandService.get(command.toString());
             if(cmd == null){
                 log.error("Command {} not found!", command);
-                return;
+                return 0;
             }
             try {
                 cmd.run(args, parsed);
@@ -187,11 +299,10 @@ public class Jip implements JipEnvironment{
                 }else{
                     e.printStackTrace();
                 }
-                System.exit(1);
+                return 1;
             }
         }
-
-
+        return 0;
     }
 
     /**
@@ -0,0 +1,359 @@
+package jip;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.*;
+
+/**
+ * Long running JIP process that keeps the plugin system, the tools and the
+ * job store loaded and executes commands for the <code>jip</code> launcher.
+ * <p>
+ * The daemon listens on a loopback socket. Port, access token and JIP home
+ * are written to the daemon file in the users JIP directory, which is only
+ * readable by the user. A request consists of lines
+ * <pre>
+ *     token
+ *     number of arguments, or -1 to stop the daemon
+ *     one line per argument
+ * </pre>
+ * The response prefixes every line written to stdout with <code>1 </code>,
+ * every line written to stderr with <code>2 </code> and ends with
+ * <code>0 &lt;exit code&gt;</code>. Commands that are not enabled for the
+ * daemon are answered with a single <code>f</code> line, and the client runs
+ * them in its own process. Commands are executed one at a time.
+ * </p>
+ *
+ * @author Thasso Griebel <thasso.griebel@gmail.com>
+ */
+public class JipDaemon {
+    /**
+     * The logger
+     */
+    private static Logger log = LoggerFactory.getLogger(JipDaemon.class);
+    /**
+     * Name of the daemon file in the users JIP directory
+     */
+    public static final String FILE_NAME = "daemon";
+    /**
+     * Timeout to read a request in milliseconds
+     */
+    private static final int REQUEST_TIMEOUT = 30000;
+
+    /**
+     * The JIP instance that executes commands
+     */
+    private Jip jip;
+    /**
+     * The daemon file
+     */
+    private File file;
+    /**
+     * The commands that are executed by the daemon
+     */
+    private Set<String> commands;
+    /**
+     * The server socket
+     */
+    private ServerSocket serverSocket;
+    /**
+     * The access token
+     */
+    private String token;
+
+    /**
+     * Create a new daemon
+     *
+     * @param jip the JIP instance that executes commands
+     * @param file the daemon file
+     * @param commands the names of the commands executed by the daemon
+     */
+    public JipDaemon(Jip jip, File file, Collection<String> commands) {
+        this.jip = jip;
+        this.file = file;
+        this.commands = new HashSet<String>(commands);
+    }
+
+    /**
+     * Bind the socket and write the daemon file
+     *
+     * @param port the port, 0 picks a free port
+     * @param jipHome the JIP home the daemon serves
+     * @throws IOException in case the socket could not be bound or the file could not be written
+     */
+    public void start(int port, File jipHome) throws IOException {
+        if(file.exists() && isRunning(file)){
+            throw new IOException("A JIP daemon is already running, see " + file);
+        }
+        serverSocket = new ServerSocket(port, 50, InetAddress.getByName("127.0.0.1"));
+        token = new BigInteger(160, new SecureRandom()).toString(16);
+
+        file.getParentFile().mkdirs();
+        File tmp = new File(file.getParentFile(), "." + file.getName() + ".tmp");
+        tmp.delete();
+        // restrict access before the token is written
+        tmp.createNewFile();
+        tmp.setReadable(false, false);
+        tmp.setWritable(false, false);
+        tmp.setReadable(true, true);
+        tmp.setWritable(true, true);
+        Files.write(serverSocket.getLocalPort() + " " + token + " " + jipHome.getCanonicalPath() + "\n", tmp, Charsets.UTF_8);
+        if(!tmp.renameTo(file)){
+            throw new IOException("Unable to write " + file);
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run() {
+                close();
+            }
+        });
+        log.info("JIP daemon listening on port {}", serverSocket.getLocalPort());
+    }
+
+    /**
+     * Get the port of a started daemon
+     *
+     * @return port the port
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Serve requests until the daemon is stopped
+     */
+    public void serve() {
+        while(!serverSocket.isClosed()){
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                if(!serverSocket.isClosed()) log.error("Error while accepting connection", e);
+                continue;
+            }
+            try {
+                handle(socket);
+            } catch (Exception e) {
+                log.warn("Error while handling daemon request : {}", e.getMessage());
+            } finally {
+                try { socket.close(); } catch (IOException ignore) {}
+            }
+        }
+    }
+
+    /**
+     * Stop the daemon and remove the daemon file
+     */
+    public synchronized void close() {
+        if(serverSocket != null && !serverSocket.isClosed()){
+            try {
+                serverSocket.close();
+            } catch (IOException ignore) {}
+            // only remove the file if it still belongs to this daemon
+            try {
+                if(file.exists() && Files.toString(file, Charsets.UTF_8).contains(" " + token + " ")){
+                    file.delete();
+                }
+            } catch (IOException ignore) {}
+            log.info("JIP daemon stopped");
+        }
+    }
+
+    /**
+     * Handle a single request
+     *
+     * @param socket the client connection
+     * @throws IOException in case of a communication error
+     */
+    private void handle(Socket socket) throws IOException {
+        socket.setSoTimeout(REQUEST_TIMEOUT);
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), Charsets.UTF_8));
+        OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+        String clientToken = in.readLine();
+        if(clientToken == null || !MessageDigest.isEqual(clientToken.getBytes(Charsets.UTF_8), token.getBytes(Charsets.UTF_8))){
+            log.warn("Rejecting daemon request with invalid token");
+            return;
+        }
+        int count = Integer.parseInt(in.readLine().trim());
+        if(count < 0){
+            respond(out, "0 0");
+            close();
+            return;
+        }
+        String[] args = new String[count];
+        for (int i = 0; i < count; i++) {
+            args[i] = in.readLine();
+            if(args[i] == null) throw new EOFException("Incomplete request");
+        }
+        if(count == 0 || !commands.contains(args[0])){
+            respond(out, "f");
+            return;
+        }
+        log.info("Executing {}", Arrays.asList(args));
+        int exitCode = execute(args, out);
+        respond(out, "0 " + exitCode);
+    }
+
+    /**
+     * Execute a command and send its output
+     *
+     * @param args the arguments
+     * @param out the client stream
+     * @return exitCode the exit code
+     */
+    int execute(String[] args, OutputStream out) {
+        synchronized (JipDaemon.class){
+            PrintStream stdout = System.out;
+            PrintStream stderr = System.err;
+            PrintStream clientOut = new PrintStream(new LineStream(out, '1'), true);
+            PrintStream clientErr = new PrintStream(new LineStream(out, '2'), true);
+            System.setOut(clientOut);
+            System.setErr(clientErr);
+            try {
+                return execute(args);
+            } catch (Exception e) {
+                log.error("Command execution failed", e);
+                clientErr.println("ERROR " + e.getMessage());
+                return 1;
+            } finally {
+                clientOut.close();
+                clientErr.close();
+                System.setOut(stdout);
+                System.setErr(stderr);
+            }
+        }
+    }
+
+    /**
+     * Execute a command
+     *
+     * @param args the arguments
+     * @return exitCode the exit code
+     */
+    int execute(String[] args) {
+        return jip.execute(args);
+    }
+
+    private static void respond(OutputStream out, String line) throws IOException {
+        synchronized (out){
+            out.write((line + "\n").getBytes(Charsets.UTF_8));
+            out.flush();
+        }
+    }
+
+    /**
+     * Returns true if the daemon of the given file accepts connections
+     *
+     * @param file the daemon file
+     * @return running true if the daemon is running
+     */
+    static boolean isRunning(File file) {
+        try {
+            String[] fields = Files.toString(file, Charsets.UTF_8).trim().split(" ");
+            Socket socket = new Socket(InetAddress.getByName("127.0.0.1"), Integer.parseInt(fields[0]));
+            socket.close();
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * Stop the daemon of the given file
+     *
+     * @param file the daemon file
+     * @return stopped true if a running daemon was stopped
+     * @throws IOException in case the daemon file could not be read
+     */
+    public static boolean stop(File file) throws IOException {
+        if(!file.exists()) return false;
+        String[] fields = Files.toString(file, Charsets.UTF_8).trim().split(" ");
+        Socket socket;
+        try {
+            socket = new Socket(InetAddress.getByName("127.0.0.1"), Integer.parseInt(fields[0]));
+        } catch (SocketException e) {
+            // stale file of a daemon that was killed
+            file.delete();
+            return false;
+        }
+        try {
+            socket.setSoTimeout(REQUEST_TIMEOUT);
+            OutputStream out = socket.getOutputStream();
+            out.write((fields[1] + "\n-1\n").getBytes(Charsets.UTF_8));
+            out.flush();
+            String response = new BufferedReader(new InputStreamReader(socket.getInputStream(), Charsets.UTF_8)).readLine();
+            return "0 0".equals(response);
+        } finally {
+            socket.close();
+        }
+    }
+
+    /**
+     * Writes complete lines with a stream prefix to the client
+     */
+    private static class LineStream extends OutputStream {
+        /**
+         * The client stream
+         */
+        private OutputStream out;
+        /**
+         * The current line, starting with the prefix
+         */
+        private ByteArrayOutputStream line = new ByteArrayOutputStream();
+        /**
+         * The prefix
+         */
+        private char prefix;
+
+        private LineStream(OutputStream out, char prefix) {
+            this.out = out;
+            this.prefix = prefix;
+            reset();
+        }
+
+        private void reset() {
+            line.reset();
+            line.write(prefix);
+            line.write(' ');
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            line.write(b);
+            if(b == '\n') writeLine();
+        }
+
+        private void writeLine() throws IOException {
+            synchronized (out){
+                line.writeTo(out);
+            }
+            reset();
+        }
+
+        @Override
+        public void flush() throws IOException {
+            synchronized (out){
+                out.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            // terminate an incomplete last line
+            if(line.size() > 2){
+                write('\n');
+            }
+            flush();
+        }
+    }
+}
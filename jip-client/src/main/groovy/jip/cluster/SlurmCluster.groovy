@@ -1,7 +1,10 @@
 package jip.cluster
 
 import jip.JipEnvironment
+import jip.jobs.DefaultJob
 import jip.jobs.Job
+import jip.jobs.JobState
+import jip.tools.DefaultExecuteEnvironment
 import jip.plugin.Extension
 import org.slf4j.Logger
 import org.slf4j.LoggerFactory
@@ -40,6 +43,9 @@ class SlurmCluster implements Cluster{
      R   RUNNING         Job currently has an allocation.
      S   SUSPENDED       Job has an allocation, but execution has been suspended.
      TO  TIMEOUT         Job terminated upon reaching its time limit.
+     OOM OUT_OF_MEMORY   Job experienced out of memory error.
+     BF  BOOT_FAIL       Job terminated due to launch failure.
+     PR  PREEMPTED       Job terminated due to preemption.
      */
     public static Map<String, ClusterJobState> STATE_MAP = new HashMap<String, ClusterJobState>(){{
         put("CANCELLED", ClusterJobState.Canceled);
@@ -58,6 +64,12 @@ class SlurmCluster implements Cluster{
         put("NF", ClusterJobState.Error);
         put("TIMEOUT", ClusterJobState.Error);
         put("TO", ClusterJobState.Error);
+        put("OUT_OF_MEMORY", ClusterJobState.Error);
+        put("OOM", ClusterJobState.Error);
+        put("BOOT_FAIL", ClusterJobState.Error);
+        put("BF", ClusterJobState.Error);
+        put("PREEMPTED", ClusterJobState.Error);
+        put("PR", ClusterJobState.Error);
         put("RUNNING", ClusterJobState.Running);
         put("R", ClusterJobState.Running);
         put("SUSPENDED", ClusterJobState.Running); // todo : what are the transisitons for suspended ? do we need a special state ?
@@ -83,6 +95,14 @@ class SlurmCluster implements Cluster{
      * Job submit pattern
      */
     static Pattern SUBMIT_PATTERN = Pattern.compile(".*Submitted batch job (\\d+).*", Pattern.MULTILINE | Pattern.DOTALL);
+    /**
+     * Pending array tasks in the squeue output
+     */
+    static Pattern ARRAY_ID_PATTERN = Pattern.compile("(\\d+)_\\[([0-9,\\-%]+)\\]");
+    /**
+     * Default maximum number of tasks of an array job
+     */
+    static final int DEFAULT_MAX_ARRAY_SIZE = 1000
 
     /**
      * Path to the sbatch command
@@ -96,6 +116,10 @@ class SlurmCluster implements Cluster{
      * Path to the squeue command
      */
     String squeue
+    /**
+     * Path to the sacct command
+     */
+    String sacct
 
     /**
      * The configuration
@@ -107,6 +131,12 @@ class SlurmCluster implements Cluster{
      */
     private JipEnvironment runtime
 
+    /**
+     * Remote ids of the tasks of the array jobs submitted by this instance,
+     * by array job id
+     */
+    private Map<String, Set<String>> arrays = [:]
+
 
     @Override
     void configure(JipEnvironment environment, Map configuration) {
@@ -115,6 +145,7 @@ class SlurmCluster implements Cluster{
         this.sbatch = configuration?.sbatch ? configuration.sbatch : "sbatch"
         this.scancel = configuration?.scancel ? configuration.scancel : "scancel"
         this.squeue = configuration?.squeue ? configuration.squeue : "squeue"
+        this.sacct = configuration?.sacct ? configuration.sacct : "sacct"
 
     }
 
@@ -130,6 +161,36 @@ class SlurmCluster implements Cluster{
         return result;
     }
 
+    @Override
+    Map<String, String> getFinalStates(Collection<String> remoteIds) throws Exception {
+        if(!remoteIds) return [:]
+        def cmd = [sacct, "-n", "-X", "-P", "-o", "JobID,State", "-j", remoteIds.join(",")]
+        log.debug("Calling sacct with : {}", cmd)
+        def output = cmd.execute()
+        def result = parseSacctOutput(output.inputStream)
+        if (output.waitFor() != 0) {
+            throw new RuntimeException("Slurm accounting failed! Error Message: ${output.errorStream.text}");
+        }
+        return result
+    }
+
+    /**
+     * Parse the <code>JobID|State</code> lines of sacct. States like
+     * <code>CANCELLED by 1000</code> are reduced to the state name
+     *
+     * @param output the sacct output
+     * @return states the states by job id
+     */
+    static Map<String, String> parseSacctOutput(InputStream output) throws IOException {
+        Map<String, String> states = new HashMap<String, String>()
+        output.newReader().eachLine { String line ->
+            def split = line.trim().split("\\|")
+            if(split.length < 2 || !split[1]) return
+            states.put(split[0], split[1].split(" ")[0])
+        }
+        return states
+    }
+
     @Override
     String getType() {
         return TYPE;
@@ -150,13 +211,39 @@ class SlurmCluster implements Cluster{
                 continue;
             }
             log.debug("squeue add grid job " + split[0]);
-            states.put(split[0], STATE_MAP.get(split[1]));
+            for (String id : expandArrayIds(split[0])) {
+                states.put(id, STATE_MAP.get(split[1]));
+            }
         }
         commandOutput.close();
         return states;
     }
 
 
+    /**
+     * Expand pending array tasks like 123_[0-3,7%2] to their single task
+     * ids. Other ids are returned as is.
+     *
+     * @param id the squeue job id
+     * @return ids the job ids
+     */
+    static List<String> expandArrayIds(String id){
+        Matcher m = ARRAY_ID_PATTERN.matcher(id)
+        if(!m.matches()) return [id]
+        def ids = []
+        String spec = m.group(2)
+        if(spec.contains("%")) spec = spec.substring(0, spec.indexOf("%"))
+        for (String range : spec.split(",")) {
+            def bounds = range.split("-")
+            int from = bounds[0] as int
+            int to = bounds.length > 1 ? bounds[1] as int : from
+            for (int i = from; i <= to; i++) {
+                ids << "${m.group(1)}_${i}".toString()
+            }
+        }
+        return ids
+    }
+
     @Override
     void cancel(List<Job> jobs) {
         def jobids = jobs.find{it.remoteId != null}.collect {it.remoteId}
@@ -168,15 +255,7 @@ class SlurmCluster implements Cluster{
     void submit(Job job) {
         log.debug("Submitting job {}-{}", job.getPipelineId(), job.getId())
         def params = [[sbatch]]
-        // add environment parameters
-        if(job.executeEnvironment){
-            def environment = job.executeEnvironment
-            if(environment.threads > 0) params<<['-c', "${environment.threads}"]
-            if(environment.maxMemory > 0) params<<["--mem-per-cpu=${environment.maxMemory}"]
-            if(environment.maxTime && environment.maxTime > 0) params<<["-t", "${environment.maxTime}"]
-            if(environment.priority) params<<["--qos", "${environment.priority}"]
-            if(environment.queue) params<<["-p", "${environment.queue}"]
-        }
+        params << getEnvironmentParameters(job)
 
         // if no log files are set,
         // set them
@@ -188,18 +267,173 @@ class SlurmCluster implements Cluster{
         }
         // append logs
         params << ['-o', job.log, '-e', job.errorLog]
+        params << getDependencyParameters(job)
+
+        params << ["--wrap", "${runtime.getJipHome(false)}/bin/jip execute -p ${job.getPipelineId()} -j ${job.id}"]
+        job.remoteId = sbatch(params)
+    }
+
+    /**
+     * Submit split jobs as array jobs. Array task ids are relative to the
+     * smallest split index of an array, so large splits are submitted as
+     * multiple arrays that stay below the configured <code>maxArraySize</code>.
+     * The remote id of a job is the <code>&lt;array job id&gt;_&lt;task id&gt;</code>.
+     *
+     * @param jobs the jobs
+     */
+    @Override
+    void submit(List<Job> jobs) {
+        if(!canSubmitArray(jobs)){
+            jobs.each { submit(it) }
+            return
+        }
+        Job first = jobs[0]
+        String base = DefaultJob.SPLIT_ID_PATTERN.matcher(first.id).with { matches(); group(1) }
+        SortedMap<Integer, Job> indexed = new TreeMap<Integer, Job>()
+        jobs.each { indexed[splitIndex(it)] = it }
+
+        int maxArraySize = configuration?.maxArraySize ? configuration.maxArraySize as int : DEFAULT_MAX_ARRAY_SIZE
+        List<Integer> indexes = new ArrayList<Integer>(indexed.keySet())
+        int start = 0
+        while(start < indexes.size()){
+            int offset = indexes[start]
+            int end = start
+            while(end < indexes.size() && indexes[end] - offset < maxArraySize) end++
+            List<Integer> tasks = indexes.subList(start, end).collect { it - offset }
+            log.debug("Submitting array job {}-{} with {} tasks", first.getPipelineId(), base, tasks.size())
+
+            def logPattern = "${first.workingDirectory}/jip-${first.getPipelineId()}-${base}_split-%A_%a"
+            def params = [[sbatch]]
+            params << ["--array=${toArraySpec(tasks)}"]
+            params << getEnvironmentParameters(first)
+            params << ['-o', "${logPattern}.out", '-e', "${logPattern}.err"]
+            params << getDependencyParameters(first)
+            params << ["--wrap", "${runtime.getJipHome(false)}/bin/jip execute -p ${first.getPipelineId()} -j ${base}_split_\$((${offset}+SLURM_ARRAY_TASK_ID))"]
+            def arrayId = sbatch(params)
+            arrays[arrayId] = tasks.collect { "${arrayId}_${it}".toString() } as Set
+
+            for (int task : tasks) {
+                Job job = indexed[task + offset]
+                job.remoteId = "${arrayId}_${task}"
+                job.log = "${logPattern}.out".replace("%A", arrayId).replace("%a", "${task}")
+                job.errorLog = "${logPattern}.err".replace("%A", arrayId).replace("%a", "${task}")
+            }
+            start = end
+        }
+    }
+
+    /**
+     * Check that all jobs are split jobs of the same node that only differ by
+     * their index and do not define custom logs
+     */
+    private static boolean canSubmitArray(List<Job> jobs){
+        if(jobs.size() < 2) return false
+        Job first = jobs[0]
+        def base = DefaultJob.SPLIT_ID_PATTERN.matcher(first.id).with { matches() ? group(1) : null }
+        if(base == null) return false
+        def environment = first.executeEnvironment ? DefaultExecuteEnvironment.toMap(first.executeEnvironment) : null
+        def dependencies = first.dependenciesBefore*.id as Set
+        Set<Integer> indexes = new HashSet<Integer>()
+        return jobs.every { job ->
+            def m = DefaultJob.SPLIT_ID_PATTERN.matcher(job.id)
+            m.matches() && m.group(1) == base &&
+                    indexes.add(m.group(2) as int) &&
+                    !job.log && !job.errorLog &&
+                    job.pipelineId == first.pipelineId &&
+                    job.workingDirectory == first.workingDirectory &&
+                    (job.executeEnvironment ? DefaultExecuteEnvironment.toMap(job.executeEnvironment) : null) == environment &&
+                    job.dependenciesBefore*.id as Set == dependencies
+        }
+    }
+
+    private static int splitIndex(Job job){
+        def m = DefaultJob.SPLIT_ID_PATTERN.matcher(job.id)
+        m.matches()
+        return m.group(2) as int
+    }
+
+    /**
+     * Create a compact array specification, i.e. 0-5,7,9-12, from sorted task ids
+     *
+     * @param tasks the sorted task ids
+     * @return spec the array specification
+     */
+    static String toArraySpec(List<Integer> tasks){
+        def ranges = []
+        int i = 0
+        while(i < tasks.size()){
+            int j = i
+            while(j + 1 < tasks.size() && tasks[j + 1] == tasks[j] + 1) j++
+            ranges << (i == j ? "${tasks[i]}" : "${tasks[i]}-${tasks[j]}")
+            i = j + 1
+        }
+        return ranges.join(",")
+    }
+
+    private List getEnvironmentParameters(Job job){
+        def params = []
+        if(job.executeEnvironment){
+            def environment = job.executeEnvironment
+            if(environment.threads > 0) params<<['-c', "${environment.threads}"]
+            if(environment.maxMemory > 0) params<<["--mem-per-cpu=${environment.maxMemory}"]
+            if(environment.maxTime && environment.maxTime > 0) params<<["-t", "${environment.maxTime}"]
+            if(environment.priority) params<<["--qos", "${environment.priority}"]
+            if(environment.queue) params<<["-p", "${environment.queue}"]
+        }
+        return params
+    }
 
-        // append dependencies
-        if (job.dependenciesBefore && job.dependenciesBefore.size() > 0){
-            params << ['-d', "afterok:${job.dependenciesBefore.collect {it.remoteId}.join(':')}"]
+    private List getDependencyParameters(Job job){
+        def params = []
+        // append dependencies, jobs that are already done are not submitted
+        def dependencies = job.dependenciesBefore?.findAll { it.state != JobState.Done }
+        if (dependencies){
+            params << ['-d', "afterok:${collapseArrays(dependencies*.remoteId).join(':')}"]
         }
         // explicitly set working directory
         if (job.workingDirectory){
             params << ['-D', job.workingDirectory]
         }
+        return params
+    }
 
-        params << ["--wrap", "${runtime.getJipHome(false)}/bin/jip execute -p ${job.getPipelineId()} -j ${job.id}"]
+    /**
+     * Replace the task ids of an array job by the array job id if all tasks
+     * of the array are listed. Only arrays submitted by this instance are
+     * collapsed. The tasks of other arrays are unknown, and a task that
+     * failed and was resubmitted would block a dependency on the whole array.
+     *
+     * @param remoteIds the remote ids
+     * @return ids the remote ids with complete arrays collapsed
+     */
+    private List<String> collapseArrays(List<String> remoteIds){
+        Set<String> listed = remoteIds as Set
+        Map<String, Boolean> complete = [:]
+        Set<String> ids = new LinkedHashSet<String>()
+        for (String remoteId : remoteIds) {
+            int split = remoteId == null ? -1 : remoteId.indexOf('_')
+            String arrayId = split > 0 ? remoteId.substring(0, split) : null
+            if(arrayId != null && arrays.containsKey(arrayId)){
+                if(!complete.containsKey(arrayId)){
+                    complete[arrayId] = listed.containsAll(arrays[arrayId])
+                }
+                if(complete[arrayId]){
+                    ids << arrayId
+                    continue
+                }
+            }
+            ids << remoteId
+        }
+        return new ArrayList<String>(ids)
+    }
 
+    /**
+     * Call sbatch and return the slurm job id
+     *
+     * @param params the parameters
+     * @return id the slurm job id
+     */
+    private String sbatch(List params){
         // flatten paramters and submit job
         params = params.flatten()
         log.debug("Submitting job with : {}", params)
@@ -211,8 +445,7 @@ class SlurmCluster implements Cluster{
         if(process.waitFor() != 0 || !m.matches()){
             throw new RuntimeException("${process.errorStream.text}")
         }
-        def jobId = m.group(1)
-        job.remoteId = jobId
+        return m.group(1)
     }
 
     @Override
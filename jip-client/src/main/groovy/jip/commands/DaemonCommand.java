@@ -0,0 +1,114 @@
+package jip.commands;
+
+import com.google.inject.Inject;
+import jip.Jip;
+import jip.JipDaemon;
+import jip.JipEnvironment;
+import jip.plugin.Extension;
+import jip.utils.Resources;
+import net.sourceforge.argparse4j.impl.Arguments;
+import net.sourceforge.argparse4j.inf.Namespace;
+import net.sourceforge.argparse4j.inf.Subparser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Start and stop the JIP daemon
+ *
+ * @author Thasso Griebel <thasso.griebel@gmail.com>
+ */
+@Extension
+public class DaemonCommand implements JipCommand{
+    /**
+     * The logger
+     */
+    private static final Logger log = LoggerFactory.getLogger(DaemonCommand.class);
+    /**
+     * Commands executed by the daemon if nothing is configured
+     */
+    private static final List<String> DEFAULT_COMMANDS = Arrays.asList("jobs", "message", "tools");
+
+    /**
+     * The JIP environment
+     */
+    private JipEnvironment environment;
+
+    @Inject
+    public DaemonCommand(JipEnvironment environment) {
+        this.environment = environment;
+    }
+
+    @Override
+    public String getCommandName() {
+        return "daemon";
+    }
+
+    @Override
+    public String getShortDescription() {
+        return "Start or stop the JIP daemon";
+    }
+
+    @Override
+    public String getLongDescription() {
+        return Resources.text("/help/commands/daemon.txt");
+    }
+
+    @Override
+    public void run(String[] args, Namespace parsed) {
+        File file = new File(environment.getJipHome(true), JipDaemon.FILE_NAME);
+        if(parsed.getBoolean("stop")){
+            try {
+                if(JipDaemon.stop(file)){
+                    System.out.println("JIP daemon stopped");
+                }else{
+                    System.out.println("No JIP daemon running");
+                }
+            } catch (IOException e) {
+                throw new RuntimeException("Unable to stop the JIP daemon : " + e.getMessage(), e);
+            }
+            return;
+        }
+
+        Map<String, Object> cfg = getDaemonConfiguration();
+        Collection<String> commands = cfg.get("commands") instanceof Collection ? (Collection<String>) cfg.get("commands") : DEFAULT_COMMANDS;
+        int port = 0;
+        if(parsed.get("port") != null){
+            port = parsed.getInt("port");
+        }else if(cfg.get("port") instanceof Number){
+            port = ((Number) cfg.get("port")).intValue();
+        }
+
+        JipDaemon daemon = new JipDaemon(Jip.getInstance(), file, commands);
+        try {
+            daemon.start(port, environment.getJipHome(false));
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to start the JIP daemon : " + e.getMessage(), e);
+        }
+        log.info("Daemon executes {}", commands);
+        System.out.println("JIP daemon listening on port " + daemon.getPort());
+        daemon.serve();
+    }
+
+    private Map<String, Object> getDaemonConfiguration() {
+        Map<String, Object> cfg = environment.getConfiguration();
+        if(cfg != null && cfg.get("jip") instanceof Map){
+            Object daemon = ((Map) cfg.get("jip")).get("daemon");
+            if(daemon instanceof Map) return (Map<String, Object>) daemon;
+        }
+        return Collections.emptyMap();
+    }
+
+    @Override
+    public void populateParser(Subparser parser) {
+        parser.addArgument("--stop").dest("stop").action(Arguments.storeTrue()).help("Stop the running daemon");
+        parser.addArgument("--port").dest("port").type(Integer.class).help("The loopback port, a free port is picked by default");
+    }
+}
@@ -19,6 +19,8 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * The run command executes jobs locally. The command
@@ -78,11 +80,17 @@ public class RunCommand implements JipCommand{
             }
 
             String toolName = parsed.getString("tool");
+            // targets are not part of the tool configuration
+            Map<String, Object> configuration = new HashMap<String, Object>(parsed.getAttrs());
+            List<String> targets = (List<String>) configuration.remove("pipeline_targets");
+            if(Boolean.TRUE.equals(configuration.remove("pipeline_incremental"))){
+                runService.setIncremental(true);
+            }
 
             if(parsed.get("cluster") == null || ! parsed.getBoolean("cluster")){
                 log.debug("Starting local run");
                 try {
-                    runService.run(toolName, parsed.getAttrs(), cwd);
+                    runService.run(toolName, configuration, cwd, targets);
                 } catch (Exception e) {
                     log.error("Error running tool {} : {}", toolName, e.getMessage());
                     throw new RuntimeException(e);
@@ -101,10 +109,11 @@ public class RunCommand implements JipCommand{
 
                     PipelineJob job = runService.submit(
                             toolName,
-                            parsed.getAttrs(),
+                            configuration,
                             cwd,
                             null,
-                            execEnv);// default cluster
+                            execEnv,
+                            targets);// default cluster
                     System.out.println(job.getId() + " submitted");
                 } catch (Exception e) {
                     log.error("Error submitting tool {} : {}", toolName, e.getMessage());
@@ -127,6 +136,8 @@ public class RunCommand implements JipCommand{
         parser.addArgument("-m", "--max-mem").dest("memory").help("Maximum memory. You can specify in megabytes or use G suffix for gigabytes").type(String.class);
         parser.addArgument("-t", "--time").dest("time").help("Wall clock time in m or hh:mm and more *see help").type(String.class);
         parser.addArgument("-d", "--cwd").dest("cwd").help("Jobs working directory").type(String.class);
+        parser.addArgument("--target").dest("pipeline_targets").action(Arguments.append()).help("Only run the jobs needed for this node, node.output or tool. Can be repeated").type(String.class);
+        parser.addArgument("-i", "--incremental").dest("pipeline_incremental").action(Arguments.storeTrue()).help("Skip jobs whose outputs are up to date");
 
         Subparsers toolsCommands = parser.addSubparsers();
         toolsCommands.dest("tool");
@@ -1,5 +1,7 @@
 package jip.dsl
 
+import com.google.common.base.Charsets
+import com.google.common.hash.Hashing
 import com.sun.xml.internal.ws.api.pipe.PipelineAssembler
 import jip.JipEnvironment
 import jip.graph.Pipeline
@@ -51,7 +53,9 @@ class JipDSL {
     JipDSLContext evaluateToolDefinition(String script, Map args){
         ExpandoMetaClass.enableGlobally()
         GroovyShell shell = createShell(args)
-        return evaluateToolDefinition(shell.evaluate("{->\n${script}\n}"))
+        JipDSLContext result = evaluateToolDefinition(shell.evaluate("{->\n${script}\n}"))
+        context.definitions.add(Hashing.sha1().hashString(script, Charsets.UTF_8).toString())
+        return result
     }
 
     Closure evaluate(String script){
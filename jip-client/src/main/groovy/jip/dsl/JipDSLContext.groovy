@@ -29,6 +29,10 @@ class JipDSLContext implements JipContext{
      * Registered tools
      */
     Map<String, Tool> tools = [:]
+    /**
+     * SHA-1 digests of the evaluated tool definition scripts
+     */
+    List<String> definitions = []
 
     /**
      * The jip runtime
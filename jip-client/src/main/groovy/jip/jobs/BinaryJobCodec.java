@@ -0,0 +1,304 @@
+package jip.jobs;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import jip.plugin.Extension;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary codec. Values are written with a one byte type tag,
+ * numbers and sizes as variable length integers, and every distinct string
+ * is written once and referenced by index afterwards. Keys and environments
+ * repeated across the jobs of a pipeline therefore cost a few bytes each.
+ * <p>
+ * Values that are not strings, numbers, booleans, maps or collections are
+ * converted the same way Gson would convert them and map entries with null
+ * values are skipped, so both codecs decode to maps with the same keys and
+ * structure. Number types differ. This codec decodes integers as
+ * <code>Integer</code> or <code>Long</code> and only floating point values
+ * as <code>Double</code>, while the JSON codec decodes every number as a
+ * <code>Double</code>. Readers must therefore only rely on
+ * <code>Number</code> and convert with <code>intValue()</code> or
+ * <code>longValue()</code>.
+ * </p>
+ *
+ * @author Thasso Griebel <thasso.griebel@gmail.com>
+ */
+@Extension
+public class BinaryJobCodec implements JobCodec{
+    /**
+     * The codec name
+     */
+    public static final String NAME = "binary";
+    /**
+     * Header that identifies documents written by this codec
+     */
+    private static final byte[] MAGIC = {'J', 'I', 'P', 'B', 1};
+    /**
+     * UTF-8 charset
+     */
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final int NULL = 0;
+    private static final int TRUE = 1;
+    private static final int FALSE = 2;
+    private static final int INT = 3;
+    private static final int LONG = 4;
+    private static final int DOUBLE = 5;
+    private static final int STRING = 6;
+    private static final int STRING_REF = 7;
+    private static final int MAP = 8;
+    private static final int LIST = 9;
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public boolean canDecode(byte[] data) {
+        if(data.length < MAGIC.length) return false;
+        for (int i = 0; i < MAGIC.length; i++) {
+            if(data[i] != MAGIC[i]) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public byte[] encode(Map<String, Object> data) {
+        Encoder encoder = new Encoder();
+        encoder.out.write(MAGIC, 0, MAGIC.length);
+        encoder.write(data);
+        return encoder.out.toByteArray();
+    }
+
+    @Override
+    public Map<String, Object> decode(byte[] data) {
+        if(!canDecode(data)){
+            throw new IllegalArgumentException("Data was not written by the binary job codec");
+        }
+        Decoder decoder = new Decoder(data, MAGIC.length);
+        return (Map<String, Object>) decoder.read();
+    }
+
+    /**
+     * Encoder state
+     */
+    private static class Encoder {
+        /**
+         * The output
+         */
+        ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
+        /**
+         * Index of strings that were already written
+         */
+        Map<String, Integer> strings = new HashMap<String, Integer>();
+        /**
+         * Converter for unknown types
+         */
+        Gson gson;
+
+        void write(Object value){
+            if(value == null){
+                out.write(NULL);
+            }else if(value instanceof Boolean){
+                out.write((Boolean) value ? TRUE : FALSE);
+            }else if(value instanceof Integer || value instanceof Short || value instanceof Byte){
+                out.write(INT);
+                writeVarLong(zigZag(((Number) value).longValue()));
+            }else if(value instanceof Long){
+                out.write(LONG);
+                writeVarLong(zigZag((Long) value));
+            }else if(value instanceof Double || value instanceof Float){
+                out.write(DOUBLE);
+                long bits = Double.doubleToLongBits(((Number) value).doubleValue());
+                for (int i = 56; i >= 0; i -= 8) {
+                    out.write((int) (bits >>> i) & 0xFF);
+                }
+            }else if(value instanceof CharSequence || value instanceof Character){
+                writeString(value.toString());
+            }else if(value instanceof Enum){
+                writeString(((Enum) value).name());
+            }else if(value instanceof Map){
+                // null entries are skipped like Gson does
+                Map<?, ?> map = (Map) value;
+                int size = 0;
+                for (Object v : map.values()) {
+                    if(v != null) size++;
+                }
+                out.write(MAP);
+                writeVarLong(size);
+                for (Map.Entry<?, ?> e : map.entrySet()) {
+                    if(e.getValue() == null) continue;
+                    writeString(String.valueOf(e.getKey()));
+                    write(e.getValue());
+                }
+            }else if(value instanceof Collection){
+                Collection<?> list = (Collection) value;
+                out.write(LIST);
+                writeVarLong(list.size());
+                for (Object o : list) {
+                    write(o);
+                }
+            }else if(value instanceof JsonElement){
+                write(fromJson((JsonElement) value));
+            }else{
+                if(gson == null) gson = new Gson();
+                write(fromJson(gson.toJsonTree(value)));
+            }
+        }
+
+        void writeString(String value){
+            Integer index = strings.get(value);
+            if(index != null){
+                out.write(STRING_REF);
+                writeVarLong(index);
+                return;
+            }
+            strings.put(value, strings.size());
+            byte[] bytes = value.getBytes(UTF8);
+            out.write(STRING);
+            writeVarLong(bytes.length);
+            out.write(bytes, 0, bytes.length);
+        }
+
+        void writeVarLong(long value){
+            while((value & ~0x7FL) != 0){
+                out.write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            out.write((int) value);
+        }
+
+        static long zigZag(long value){
+            return (value << 1) ^ (value >> 63);
+        }
+
+        /**
+         * Convert a Gson tree to plain values
+         *
+         * @param element the element
+         * @return value the plain value
+         */
+        static Object fromJson(JsonElement element){
+            if(element == null || element.isJsonNull()) return null;
+            if(element.isJsonObject()){
+                Map<String, Object> map = new LinkedHashMap<String, Object>();
+                for (Map.Entry<String, JsonElement> e : ((JsonObject) element).entrySet()) {
+                    map.put(e.getKey(), fromJson(e.getValue()));
+                }
+                return map;
+            }
+            if(element.isJsonArray()){
+                List<Object> list = new ArrayList<Object>();
+                for (JsonElement e : (JsonArray) element) {
+                    list.add(fromJson(e));
+                }
+                return list;
+            }
+            JsonPrimitive primitive = (JsonPrimitive) element;
+            if(primitive.isBoolean()) return primitive.getAsBoolean();
+            if(primitive.isNumber()) return primitive.getAsDouble();
+            return primitive.getAsString();
+        }
+    }
+
+    /**
+     * Decoder state
+     */
+    private static class Decoder {
+        /**
+         * The data
+         */
+        byte[] data;
+        /**
+         * Current position
+         */
+        int position;
+        /**
+         * Strings in the order they were read
+         */
+        List<String> strings = new ArrayList<String>();
+
+        Decoder(byte[] data, int position) {
+            this.data = data;
+            this.position = position;
+        }
+
+        Object read(){
+            int tag = data[position++];
+            switch (tag){
+                case NULL: return null;
+                case TRUE: return Boolean.TRUE;
+                case FALSE: return Boolean.FALSE;
+                case INT: return (int) unZigZag(readVarLong());
+                case LONG: return unZigZag(readVarLong());
+                case DOUBLE:
+                    long bits = 0;
+                    for (int i = 0; i < 8; i++) {
+                        bits = (bits << 8) | (data[position++] & 0xFF);
+                    }
+                    return Double.longBitsToDouble(bits);
+                case STRING:
+                case STRING_REF:
+                    return readString(tag);
+                case MAP:
+                    int size = (int) readVarLong();
+                    Map<String, Object> map = new LinkedHashMap<String, Object>(size * 4 / 3 + 1);
+                    for (int i = 0; i < size; i++) {
+                        String key = readString(data[position++]);
+                        map.put(key, read());
+                    }
+                    return map;
+                case LIST:
+                    int length = (int) readVarLong();
+                    List<Object> list = new ArrayList<Object>(length);
+                    for (int i = 0; i < length; i++) {
+                        list.add(read());
+                    }
+                    return list;
+            }
+            throw new IllegalArgumentException("Unknown type " + tag + " at position " + (position - 1));
+        }
+
+        String readString(int tag){
+            if(tag == STRING_REF){
+                return strings.get((int) readVarLong());
+            }
+            if(tag != STRING){
+                throw new IllegalArgumentException("Expected string at position " + (position - 1));
+            }
+            int length = (int) readVarLong();
+            String value = new String(data, position, length, UTF8);
+            position += length;
+            strings.add(value);
+            return value;
+        }
+
+        long readVarLong(){
+            long value = 0;
+            int shift = 0;
+            while(true){
+                int b = data[position++];
+                value |= (long) (b & 0x7F) << shift;
+                if((b & 0x80) == 0) return value;
+                shift += 7;
+            }
+        }
+
+        static long unZigZag(long value){
+            return (value >>> 1) ^ -(value & 1);
+        }
+    }
+}
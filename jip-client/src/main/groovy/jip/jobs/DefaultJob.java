@@ -7,11 +7,17 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.regex.Pattern;
 
 /**
  * @author Thasso Griebel <thasso.griebel@gmail.com>
  */
 public class DefaultJob implements Job{
+    /**
+     * Matches the ids of jobs that were created by splitting a node. The first
+     * group is the id of the split node, the second the index of the job
+     */
+    public static final Pattern SPLIT_ID_PATTERN = Pattern.compile("(.+)_split_(\\d+)");
 
     private String id;
     private String pipelineId;
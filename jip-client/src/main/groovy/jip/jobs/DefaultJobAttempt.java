@@ -0,0 +1,89 @@
+package jip.jobs;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @author Thasso Griebel <thasso.griebel@gmail.com>
+ */
+public class DefaultJobAttempt implements JobAttempt {
+    private String remoteId;
+    private String reason;
+    private Date endDate;
+    private Date retryDate;
+    private long maxMemory;
+    private long maxTime;
+
+    public DefaultJobAttempt(String remoteId, String reason, Date endDate, Date retryDate, long maxMemory, long maxTime) {
+        this.remoteId = remoteId;
+        this.reason = reason;
+        this.endDate = endDate;
+        this.retryDate = retryDate;
+        this.maxMemory = maxMemory;
+        this.maxTime = maxTime;
+    }
+
+    public DefaultJobAttempt(Map config) {
+        this.remoteId = (String) config.get("remoteId");
+        this.reason = (String) config.get("reason");
+        this.endDate = new Date(((Number) config.get("endDate")).longValue());
+        this.retryDate = new Date(((Number) config.get("retryDate")).longValue());
+        if(config.containsKey("maxMemory")){
+            this.maxMemory = ((Number) config.get("maxMemory")).longValue();
+        }
+        if(config.containsKey("maxTime")){
+            this.maxTime = ((Number) config.get("maxTime")).longValue();
+        }
+    }
+
+    @Override
+    public String getRemoteId() {
+        return remoteId;
+    }
+
+    @Override
+    public String getReason() {
+        return reason;
+    }
+
+    @Override
+    public Date getEndDate() {
+        return endDate;
+    }
+
+    @Override
+    public Date getRetryDate() {
+        return retryDate;
+    }
+
+    @Override
+    public long getMaxMemory() {
+        return maxMemory;
+    }
+
+    @Override
+    public long getMaxTime() {
+        return maxTime;
+    }
+
+    @Override
+    public String toString() {
+        return "Attempt " + remoteId + " failed with " + reason + " at " + endDate + ", retry at " + retryDate;
+    }
+
+    public static Map<String, Object> toMap(JobAttempt attempt){
+        HashMap<String, Object> map = new HashMap<String, Object>();
+        if(attempt.getRemoteId() != null){
+            map.put("remoteId", attempt.getRemoteId());
+        }
+        if(attempt.getReason() != null){
+            map.put("reason", attempt.getReason());
+        }
+        map.put("endDate", attempt.getEndDate().getTime());
+        map.put("retryDate", attempt.getRetryDate().getTime());
+        map.put("maxMemory", attempt.getMaxMemory());
+        map.put("maxTime", attempt.getMaxTime());
+        return map;
+    }
+}
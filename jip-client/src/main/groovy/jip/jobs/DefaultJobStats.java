@@ -1,7 +1,9 @@
 package jip.jobs;
 
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -11,6 +13,7 @@ public class DefaultJobStats implements JobStats {
     private Date createDate;
     private Date startDate;
     private Date endDate;
+    private List<JobAttempt> attempts;
 
     public DefaultJobStats() {
         this.createDate = new Date();
@@ -24,6 +27,11 @@ public class DefaultJobStats implements JobStats {
         if(config.containsKey("endDate")){
             this.endDate = new Date(((Number) config.get("endDate")).longValue());
         }
+        if(config.containsKey("attempts")){
+            for (Object attempt : (List) config.get("attempts")) {
+                getAttempts().add(new DefaultJobAttempt((Map) attempt));
+            }
+        }
     }
 
     @Override
@@ -40,6 +48,15 @@ public class DefaultJobStats implements JobStats {
     public Date getEndDate() {
         return endDate;
     }
+
+    @Override
+    public List<JobAttempt> getAttempts() {
+        if(attempts == null){
+            attempts = new ArrayList<JobAttempt>();
+        }
+        return attempts;
+    }
+
     @Override
     public void setCreateDate(Date createDate) {
         this.createDate = createDate;
@@ -69,6 +86,13 @@ public class DefaultJobStats implements JobStats {
         if(stats.getEndDate() != null){
             map.put("endDate", stats.getEndDate().getTime());
         }
+        if(stats.getAttempts() != null && stats.getAttempts().size() > 0){
+            List<Map<String, Object>> attempts = new ArrayList<Map<String, Object>>();
+            for (JobAttempt attempt : stats.getAttempts()) {
+                attempts.add(DefaultJobAttempt.toMap(attempt));
+            }
+            map.put("attempts", attempts);
+        }
         return map;
     }
 
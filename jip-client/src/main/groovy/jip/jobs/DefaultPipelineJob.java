@@ -1,5 +1,6 @@
 package jip.jobs;
 
+import jip.graph.CompactGraph;
 import org.jgrapht.experimental.dag.DirectedAcyclicGraph;
 
 import java.util.ArrayList;
@@ -99,6 +100,21 @@ public class DefaultPipelineJob implements PipelineJob{
         return graph;
     }
 
+    @Override
+    public CompactGraph<Job> getCompactGraph() {
+        CompactGraph.Builder<Job> builder = new CompactGraph.Builder<Job>();
+        for (Job job : getJobs()) {
+            builder.addNode(job);
+        }
+        for (Job job : getJobs()) {
+            for (Job before : job.getDependenciesBefore()) {
+                if(!builder.contains(before)) throw new IllegalArgumentException("Dependency " + before.getId() + " of " + job.getId() + " is not part of the pipeline");
+                builder.addEdge(before, job);
+            }
+        }
+        return builder.build();
+    }
+
     @Override
     public String getId() {
         return id;
@@ -1,21 +1,30 @@
 package jip.jobs
 
 import com.google.inject.Inject
+import jip.JipConfiguration
 import jip.dsl.JipDSL
 import jip.dsl.JipDSLContext
+import jip.graph.CompactGraph
 import jip.graph.FileParameter
-import jip.graph.JobEdge
 import jip.graph.JobNode
 import jip.graph.Pipeline
 import jip.graph.PipelineGraph
+import jip.tools.DefaultExecuteEnvironment
 import jip.tools.Parameter
 import jip.tools.Tool
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
 
 /**
  *
  * @author Thasso Griebel <thasso.griebel@gmail.com>
  */
 class DefaultPipelineService implements PipelineService{
+    /**
+     * The logger
+     */
+    private static Logger log = LoggerFactory.getLogger(DefaultPipelineService.class)
+
     /**
      * The DSL Context to resolve tools
      */
@@ -26,6 +35,18 @@ class DefaultPipelineService implements PipelineService{
      */
     IdService idService
 
+    /**
+     * Maximum number of threads used to prepare sub-pipelines. If this is
+     * null, the value is read from jobs.pipeline.parallelism
+     */
+    Integer parallelism
+
+    /**
+     * Cache of created pipelines. If this is null and jobs.pipeline.cache
+     * is enabled, the cache is created in the users JIP home
+     */
+    PipelineCache pipelineCache
+
     /**
      * Create a new default pipeline service. The context is used to
      * resolve tools while the id service provides next ids used for the
@@ -42,6 +63,11 @@ class DefaultPipelineService implements PipelineService{
 
     @Override
     PipelineJob create(String toolName, Map cfg, File cwd) throws Exception {
+        return create(toolName, cfg, cwd, (Collection<String>) null)
+    }
+
+    @Override
+    PipelineJob create(String toolName, Map cfg, File cwd, Collection<String> targets) throws Exception {
         if(context == null){
             throw new NullPointerException("No JIP context specified! Unable to evaluate and run pipelines");
         }
@@ -56,53 +82,133 @@ class DefaultPipelineService implements PipelineService{
             cfg = absoluteFileParameter(tool, cwd, cfg)
         }
 
+        PipelineCache cache = getPipelineCache()
+        String key = cache?.key(toolName, cfg, cwd, context.getDefinitions(), targets)
+        if(key != null && cache.contains(key)){
+            PipelineJob cached = cache.get(key, idService.next())
+            if(cached != null){
+                log.info("Using cached pipeline {} for {}", key, toolName)
+                return cached
+            }
+        }
+
         Closure pipelineClosure = tool.pipeline
         if(pipelineClosure == null){
             pipelineClosure = {
                 "${tool.name}"(cfg)
             }
         }
-        return create(toolName, pipelineClosure, cwd, cfg)
+        PipelineJob job = create(toolName, pipelineClosure, cwd, cfg, targets)
+        if(key != null) cache.put(key, job)
+        return job
     }
 
     public PipelineJob create(String name, Closure pipelineClosure, File cwd, Map cfg){
+        return create(name, pipelineClosure, cwd, cfg, null)
+    }
+
+    /**
+     * Create a pipeline job from a pipeline closure
+     *
+     * @param name the pipeline name
+     * @param pipelineClosure the pipeline closure
+     * @param cwd the working directory
+     * @param cfg the configuration
+     * @param targets if not empty, only the jobs needed for the targets are created
+     * @return job the pipeline job
+     */
+    public PipelineJob create(String name, Closure pipelineClosure, File cwd, Map cfg, Collection<String> targets){
         // run pipeline
         Pipeline pipeline = new JipDSL(context).evaluateRun(cfg, pipelineClosure);
         PipelineGraph graph = new PipelineGraph(pipeline);
+        if(targets){
+            int removed = graph.prune(targets)
+            log.info("Pruned {} nodes not needed for {}", removed, targets)
+        }
+        graph.setParallelism(getParallelism())
         graph.prepare();
         graph.reduceDependencies();
 
         def pipelineRunId = idService.next()
         DefaultPipelineJob job = new DefaultPipelineJob(pipelineRunId, name)
-        int counter = 1;
-        Map<String, DefaultJob> jobs = [:]
+        CompactGraph<JobNode> nodes = graph.compact()
+        DefaultJob[] jobs = new DefaultJob[nodes.size()]
 
         // create jobs
-        for (JobNode node : graph.getNodes()) {
-            DefaultJob jobInstance = new DefaultJob(pipelineRunId, "${node.getNodeId()}", cwd.getAbsolutePath())
-            jobInstance.setConfiguration(node.getConfiguration())
-            jobInstance.setToolName(node.getPipelineJob().getToolId())
-            jobs[node.getNodeId()] = jobInstance
-            job.getJobs().add(jobInstance)
+        for (int n = 0; n < nodes.size(); n++) {
+            JobNode node = nodes.get(n)
+            jobs[n] = createJob(pipelineRunId, node, cwd)
+            job.getJobs().add(jobs[n])
         }
 
         // translate edges
-        for (JobNode node : graph.getNodes()) {
-            def inEdges = graph.getGraph().incomingEdgesOf(node)
-            DefaultJob j = jobs[node.getNodeId()]
-            for (JobEdge e : inEdges) {
-                def source = graph.findNode(e.getSourceNode())
-                j.getDependenciesBefore().add(jobs[source.getNodeId()])
+        for (int n = 0; n < nodes.size(); n++) {
+            DefaultJob j = jobs[n]
+            for (int i = 0; i < nodes.inDegree(n); i++) {
+                j.getDependenciesBefore().add(jobs[nodes.predecessor(n, i)])
             }
-            def outEdges = graph.getGraph().outgoingEdgesOf(node)
-            for (JobEdge e : outEdges) {
-                def target = graph.getGraph().getEdgeTarget(e).getNodeId()
-                j.getDependenciesAfter().add(jobs[target])
+            for (int i = 0; i < nodes.outDegree(n); i++) {
+                j.getDependenciesAfter().add(jobs[nodes.successor(n, i)])
             }
         }
         return job;
     }
 
+    /**
+     * Create the job for a graph node
+     *
+     * @param pipelineRunId the pipeline id
+     * @param node the node
+     * @param cwd the working directory
+     * @return job the job
+     */
+    private DefaultJob createJob(String pipelineRunId, JobNode node, File cwd){
+        DefaultJob jobInstance = new DefaultJob(pipelineRunId, "${node.getNodeId()}", cwd.getAbsolutePath())
+        jobInstance.setConfiguration(node.getConfiguration())
+        jobInstance.setToolName(node.getPipelineJob().getToolId())
+        // jobs start with the resources declared by their tool
+        Tool jobTool = context.getTools().get(node.getPipelineJob().getToolId())
+        if(jobTool?.getExecuteEnvironment() != null){
+            jobInstance.setExecuteEnvironment(new DefaultExecuteEnvironment(DefaultExecuteEnvironment.toMap(jobTool.getExecuteEnvironment())))
+        }
+        return jobInstance
+    }
+
+    /**
+     * Get the maximum number of threads used to prepare sub-pipelines
+     *
+     * @return parallelism the number of threads, values less than 2 prepare sequentially
+     */
+    int getParallelism(){
+        if(parallelism != null) return parallelism
+        Object value = getPipelineSetting("parallelism")
+        return value instanceof Number ? ((Number) value).intValue() : 1
+    }
+
+    /**
+     * Get a value from the jobs.pipeline configuration
+     *
+     * @param name the name of the setting
+     * @return value the value or null
+     */
+    private Object getPipelineSetting(String name){
+        Map configuration = context?.jipRuntime?.getConfiguration()
+        if(configuration == null || !(configuration.get("jobs") instanceof Map) || !(configuration.jobs.get("pipeline") instanceof Map)) return null
+        return JipConfiguration.get(configuration, "jobs", "pipeline", name)
+    }
+
+    /**
+     * Get the pipeline cache
+     *
+     * @return cache the cache or null if pipelines are not cached
+     */
+    PipelineCache getPipelineCache(){
+        if(pipelineCache != null) return pipelineCache
+        if(!Boolean.TRUE.equals(getPipelineSetting("cache"))) return null
+        pipelineCache = new PipelineCache(new File(context.jipRuntime.getJipHome(true), "cache/pipelines"))
+        return pipelineCache
+    }
+
     /**
      * Make all file parameter values absolute with respect
      * to the given directory
@@ -0,0 +1,238 @@
+package jip.jobs;
+
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Default pipeline summary implementation. The summary only keeps the number
+ * of jobs per state, so its size does not depend on the number of jobs. It
+ * records the length of the job journal it was created from, so stores can
+ * detect summaries that do not include the latest journaled updates.
+ *
+ * @author Thasso Griebel <thasso.griebel@gmail.com>
+ */
+public class DefaultPipelineSummary implements PipelineSummary{
+    /**
+     * The pipeline job id
+     */
+    private String id;
+    /**
+     * The pipeline name
+     */
+    private String name;
+    /**
+     * The create date
+     */
+    private Date createDate;
+    /**
+     * First start date
+     */
+    private Date startDate;
+    /**
+     * Last end date
+     */
+    private Date endDate;
+    /**
+     * Number of jobs
+     */
+    private int jobCount;
+    /**
+     * Number of jobs per state, jobs without state are not included
+     */
+    private Map<JobState, Integer> counts;
+    /**
+     * Length of the job journal that is included in this summary
+     */
+    private long journalLength;
+    /**
+     * The last message
+     */
+    private Message lastMessage;
+
+    /**
+     * Create a summary of the given pipeline job
+     *
+     * @param pipelineJob the pipeline job
+     */
+    public DefaultPipelineSummary(PipelineJob pipelineJob) {
+        this.id = pipelineJob.getId();
+        this.name = pipelineJob.getName();
+        this.counts = new EnumMap<JobState, Integer>(JobState.class);
+        for (Job job : pipelineJob.getJobs()) {
+            jobCount++;
+            if(job.getState() != null){
+                count(job.getState(), 1);
+            }
+            JobStats stats = job.getJobStats();
+            createDate = min(createDate, stats.getCreateDate());
+            startDate = min(startDate, stats.getStartDate());
+            endDate = max(endDate, stats.getEndDate());
+            for (Message message : job.getMessages()) {
+                addMessage(message);
+            }
+        }
+        if(createDate == null){
+            createDate = new Date();
+        }
+    }
+
+    /**
+     * Create a summary from its map representation
+     *
+     * @param data the map
+     */
+    public DefaultPipelineSummary(Map data) {
+        this.id = (String) data.get("id");
+        this.name = (String) data.get("name");
+        this.jobCount = ((Number) data.get("jobCount")).intValue();
+        this.createDate = new Date(((Number) data.get("createDate")).longValue());
+        if(data.containsKey("startDate")){
+            this.startDate = new Date(((Number) data.get("startDate")).longValue());
+        }
+        if(data.containsKey("endDate")){
+            this.endDate = new Date(((Number) data.get("endDate")).longValue());
+        }
+        if(data.containsKey("journalLength")){
+            this.journalLength = ((Number) data.get("journalLength")).longValue();
+        }
+        this.counts = new EnumMap<JobState, Integer>(JobState.class);
+        Map<String, Number> countMap = (Map<String, Number>) data.get("counts");
+        if(countMap != null){
+            for (Map.Entry<String, Number> e : countMap.entrySet()) {
+                count(JobState.valueOf(e.getKey()), e.getValue().intValue());
+            }
+        }
+        // summaries of older versions store the state of every job
+        Map<String, String> stateMap = (Map<String, String>) data.get("states");
+        if(stateMap != null){
+            for (String state : stateMap.values()) {
+                count(JobState.valueOf(state), 1);
+            }
+        }
+        if(data.containsKey("lastMessage")){
+            this.lastMessage = new DefaultMessage((Map) data.get("lastMessage"));
+        }
+    }
+
+    private void count(JobState state, int n){
+        Integer count = counts.get(state);
+        counts.put(state, count == null ? n : count + n);
+    }
+
+    /**
+     * Update the summary with a new message
+     *
+     * @param message the message
+     */
+    private void addMessage(Message message){
+        if(lastMessage == null || lastMessage.compareTo(message) <= 0){
+            lastMessage = message;
+        }
+    }
+
+    @Override
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public int getJobCount() {
+        return jobCount;
+    }
+
+    @Override
+    public Map<JobState, Integer> getStateCounts() {
+        Map<JobState, Integer> counts = new EnumMap<JobState, Integer>(JobState.class);
+        for (JobState jobState : JobState.values()) {
+            counts.put(jobState, 0);
+        }
+        counts.putAll(this.counts);
+        return counts;
+    }
+
+    /**
+     * Get the length of the job journal that is included in this summary
+     *
+     * @return length the journal length
+     */
+    public long getJournalLength() {
+        return journalLength;
+    }
+
+    /**
+     * Set the length of the job journal that is included in this summary
+     *
+     * @param journalLength the journal length
+     */
+    public void setJournalLength(long journalLength) {
+        this.journalLength = journalLength;
+    }
+
+    @Override
+    public Date getCreateDate() {
+        return createDate;
+    }
+
+    @Override
+    public Date getStartDate() {
+        return startDate;
+    }
+
+    @Override
+    public Date getEndDate() {
+        return endDate;
+    }
+
+    @Override
+    public Message getLastMessage() {
+        return lastMessage;
+    }
+
+    private static Date min(Date a, Date b){
+        if(a == null) return b;
+        if(b == null) return a;
+        return a.before(b) ? a : b;
+    }
+
+    private static Date max(Date a, Date b){
+        if(a == null) return b;
+        if(b == null) return a;
+        return a.after(b) ? a : b;
+    }
+
+    public static Map<String, Object> toMap(PipelineSummary summary){
+        HashMap<String, Object> map = new HashMap<String, Object>();
+        map.put("id", summary.getId());
+        map.put("name", summary.getName());
+        map.put("jobCount", summary.getJobCount());
+        map.put("createDate", summary.getCreateDate().getTime());
+        if(summary.getStartDate() != null){
+            map.put("startDate", summary.getStartDate().getTime());
+        }
+        if(summary.getEndDate() != null){
+            map.put("endDate", summary.getEndDate().getTime());
+        }
+        Map<String, Integer> countMap = new LinkedHashMap<String, Integer>();
+        for (Map.Entry<JobState, Integer> e : summary.getStateCounts().entrySet()) {
+            if(e.getValue() > 0){
+                countMap.put(e.getKey().name(), e.getValue());
+            }
+        }
+        map.put("counts", countMap);
+        if(summary instanceof DefaultPipelineSummary){
+            map.put("journalLength", ((DefaultPipelineSummary) summary).journalLength);
+        }
+        if(summary.getLastMessage() != null){
+            map.put("lastMessage", DefaultMessage.toMap(summary.getLastMessage()));
+        }
+        return map;
+    }
+}
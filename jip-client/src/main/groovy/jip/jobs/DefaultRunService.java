@@ -1,10 +1,12 @@
 package jip.jobs;
 
 import com.google.inject.Inject;
+import jip.JipConfiguration;
 import jip.JipEnvironment;
 import jip.cluster.Cluster;
 import jip.cluster.ClusterJobState;
 import jip.cluster.ClusterService;
+import jip.tools.DefaultExecuteEnvironment;
 import jip.tools.ExecuteEnvironment;
 import jip.tools.Tool;
 import jip.tools.ToolService;
@@ -12,8 +14,19 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
 
 /**
  * @author Thasso Griebel <thasso.griebel@gmail.com>
@@ -47,6 +60,16 @@ public class DefaultRunService implements RunService{
      */
     private JipEnvironment environment;
 
+    /**
+     * Skip up to date jobs, defaults to the <code>jobs.incremental</code> configuration
+     */
+    private Boolean incremental;
+
+    /**
+     * The result cache, created from the <code>jobs.results</code> configuration
+     */
+    private ResultCache resultCache;
+
     @Inject
     public DefaultRunService(ToolService toolService, PipelineService pipelineService, ClusterService clusterService, JobStore jobStore, JipEnvironment environment) {
         this.toolService = toolService;
@@ -58,34 +81,143 @@ public class DefaultRunService implements RunService{
 
     @Override
     public void execute(Job job, boolean updateInStore) throws Exception {
+        executeJob(job, updateInStore);
+    }
+
+    /**
+     * Execute a single job
+     *
+     * @param job the job
+     * @param updateInStore update the job state in the job store
+     * @return success true if the job finished successfully
+     */
+    private boolean executeJob(Job job, boolean updateInStore) throws Exception {
         log.info("Running job " + job.getId() + " with tool " + job.getToolName() + " in pipeline " + job.getPipelineId());
         Tool jobTool = toolService.getTool(job.getToolName());
+        // jobs are recorded in existing manifests, incremental runs create them
+        JobManifest manifest = null;
+        JobManifest.Pending pending = null;
+        if(job.getWorkingDirectory() != null){
+            manifest = new JobManifest(new File(job.getWorkingDirectory()));
+            if(manifest.exists()){
+                pending = manifest.start(job, jobTool);
+            }
+        }
+        JobSpool spool = null;
         if(updateInStore){
             jobStore.setState(job.getPipelineId(), job.getId(), JobState.Running, null);
+            spool = JobSpool.open(job, jobStore);
         }
         try {
-            jobTool.run(new File(job.getWorkingDirectory()), job.getConfiguration(), job);
-            jobStore.setState(job.getPipelineId(), job.getId(), JobState.Done, null);
+            // the key is computed before the job runs and changes its inputs
+            ResultCache cache = getResultCache();
+            String key = cache == null ? null : cache.key(job, jobTool);
+            if(key != null && cache.restore(key, job, jobTool)){
+                log.info("Restored outputs of {}-{} from the result cache", job.getPipelineId(), job.getId());
+                if(spool != null){
+                    spool.close();
+                }
+            }else{
+                try {
+                    jobTool.run(new File(job.getWorkingDirectory()), job.getConfiguration(), job);
+                } finally {
+                    if(spool != null){
+                        spool.close();
+                    }
+                }
+                if(key != null){
+                    cache.put(key, job, jobTool);
+                }
+            }
+            if(pending != null){
+                try {
+                    manifest.record(pending);
+                } catch (Exception e) {
+                    log.warn("Unable to record {}-{} in the job manifest : {}", new Object[]{job.getPipelineId(), job.getId(), e.getMessage()});
+                }
+            }
+            if(updateInStore){
+                jobStore.setState(job.getPipelineId(), job.getId(), JobState.Done, null);
+            }
+            return true;
         } catch (Exception e) {
             log.error("Job execution for {}-{} failed : {}", new Object[]{job.getPipelineId(), job.getId(), e.getMessage()});
-            jobStore.setState(job.getPipelineId(), job.getId(), JobState.Failed, e.getMessage());
+            if(updateInStore){
+                jobStore.setState(job.getPipelineId(), job.getId(), JobState.Failed, e.getMessage());
+            }
+            return false;
         }
     }
 
     @Override
     public void run(String tool, Map configuration, File directory) throws Exception {
+        run(tool, configuration, directory, null);
+    }
+
+    @Override
+    public void run(String tool, Map configuration, File directory, Collection<String> targets) throws Exception {
         log.info("Creating pipeline graph");
-        PipelineJob pipelineJob = pipelineService.create(tool, configuration, directory);
+        PipelineJob pipelineJob = pipelineService.create(tool, configuration, directory, targets);
         log.info("Pipeline with {} jobs created", pipelineJob.getJobs().size());
-        PipelineJob.ExecutionGraph graph = pipelineJob.getGraph();
-        // iterates in topological order
-        for (Job job : graph) {
-            execute(job, false);
+        LocalExecutor executor = new LocalExecutor(
+                (int) getLocalConfiguration("parallelism"),
+                (int) getLocalConfiguration("threads"),
+                getLocalConfiguration("memory"));
+        log.info("Running pipeline with {} threads and {}M memory", executor.getThreads(), executor.getMemory());
+        final Set<Job> upToDate = findUpToDate(pipelineJob);
+        // iterate in topological order so ready jobs start in a stable order
+        Map<Job, JobState> states = executor.execute(pipelineJob.getCompactGraph(), new LocalExecutor.JobRunner() {
+            @Override
+            public boolean run(Job job) throws Exception {
+                if(upToDate.contains(job)){
+                    log.info("Skipping up to date job {}", job.getId());
+                    return true;
+                }
+                return executeJob(job, false);
+            }
+
+            @Override
+            public void canceled(Job job, Job cause) {
+            }
+        });
+        int failed = 0;
+        int canceled = 0;
+        for (JobState state : states.values()) {
+            if(state == JobState.Failed) failed++;
+            if(state == JobState.Canceled) canceled++;
         }
+        if(failed > 0){
+            throw new RuntimeException(failed + " job(s) failed and " + canceled + " job(s) were canceled");
+        }
+    }
+
+    /**
+     * Get a numeric value of the local execution configuration
+     * <code>jobs.local</code>. The local executor limits
+     * <ul>
+     *     <li>parallelism: the number of concurrent jobs</li>
+     *     <li>threads: the number of threads used by all jobs</li>
+     *     <li>memory: the memory in megabytes used by all jobs</li>
+     * </ul>
+     * A value of 0 uses the capacity of the machine.
+     *
+     * @param key the configuration key
+     * @return value the configured value or 0
+     */
+    private long getLocalConfiguration(String key){
+        Map<String, Object> jobs = (Map<String, Object>) environment.getConfiguration().get("jobs");
+        if(jobs == null || jobs.get("local") == null) return 0;
+        Object value = JipConfiguration.get(jobs, "local", key);
+        return value instanceof Number ? ((Number) value).longValue() : 0;
     }
 
     @Override
     public PipelineJob submit(String tool, Map configuration, File directory, String clusterName, ExecuteEnvironment executeEnvironment) throws Exception {
+        return submit(tool, configuration, directory, clusterName, executeEnvironment, null);
+    }
+
+    @Override
+    public PipelineJob submit(String tool, Map configuration, File directory, String clusterName, ExecuteEnvironment executeEnvironment, Collection<String> targets) throws Exception {
         Cluster cluster = null;
         if(clusterName == null){
             cluster = clusterService.getDefault();
@@ -97,7 +229,7 @@ public class DefaultRunService implements RunService{
         }
 
         log.info("Creating pipeline graph");
-        PipelineJob pipelineJob = pipelineService.create(tool, configuration, directory);
+        PipelineJob pipelineJob = pipelineService.create(tool, configuration, directory, targets);
         log.info("Pipeline with {} jobs created", pipelineJob.getJobs().size());
 
         if(executeEnvironment != null){
@@ -122,21 +254,254 @@ public class DefaultRunService implements RunService{
             }
         }
 
+        Set<Job> upToDate = findUpToDate(pipelineJob);
+        ResultCache cache = getResultCache();
+        List<Job> jobs = new ArrayList<Job>();
+        for (Job job : pipelineJob.getCompactGraph()) {
+            // the inputs of jobs whose dependencies are done exist, so their results can be restored
+            if(!upToDate.contains(job) && cache != null && upToDate.containsAll(job.getDependenciesBefore())){
+                Tool jobTool = toolService.getTool(job.getToolName());
+                String key = cache.key(job, jobTool);
+                if(key != null && cache.restore(key, job, jobTool)){
+                    log.info("Restored outputs of {} from the result cache", job.getId());
+                    upToDate.add(job);
+                }
+            }
+            if(upToDate.contains(job)){
+                job.setState(JobState.Done);
+            }else{
+                job.setState(JobState.Submitted);
+                jobs.add(job);
+            }
+        }
         log.info("Saving pipeline job {}", pipelineJob.getId());
+        jobStore.save(pipelineJob);
+        submitJobs(jobs, cluster);
+        return pipelineJob;
+    }
+
+    @Override
+    public List<Job> resume(String id) throws Exception {
+        PipelineJob pipelineJob = jobStore.get(id);
+        if(pipelineJob == null){
+            throw new IllegalArgumentException("Pipeline job " + id + " not found");
+        }
+        Cluster cluster = clusterService.getDefault();
+        Map<String, ClusterJobState> states = cluster.list();
+        Set<Job> failed = new HashSet<Job>();
         for (Job job : pipelineJob.getJobs()) {
+            if(job.getState() != JobState.Done && !isInFlight(job, states)){
+                failed.add(job);
+            }
+        }
+        List<Job> jobs = resubmit(pipelineJob, failed, cluster, states);
+        if(jobs.isEmpty()){
+            log.info("No jobs of {} have to be resubmitted", id);
+        }
+        return jobs;
+    }
+
+    /**
+     * Resubmit jobs and all jobs that depend on them. Done jobs are never
+     * resubmitted. Queued jobs that depend on a resubmitted job would never
+     * start, so they are canceled and resubmitted as well. Resubmitted jobs
+     * depend on the jobs that are still in flight.
+     *
+     * @param pipelineJob the pipeline job
+     * @param jobs the jobs to resubmit
+     * @param cluster the cluster
+     * @param states the current cluster states
+     * @return resubmitted all resubmitted jobs in topological order
+     * @throws Exception in case the jobs could not be resubmitted
+     */
+    private List<Job> resubmit(PipelineJob pipelineJob, Set<Job> jobs, Cluster cluster, Map<String, ClusterJobState> states) throws Exception {
+        // jobs in topological order, so dependencies are resubmitted before the jobs that depend on them
+        List<Job> resubmit = new ArrayList<Job>();
+        Set<Job> resubmitted = new HashSet<Job>();
+        List<Job> canceled = new ArrayList<Job>();
+        for (Job job : pipelineJob.getCompactGraph()) {
+            if(job.getState() == JobState.Done) continue;
+            boolean dependencyResubmitted = false;
+            for (Job before : job.getDependenciesBefore()) {
+                dependencyResubmitted |= resubmitted.contains(before);
+            }
+            if(!jobs.contains(job) && !dependencyResubmitted) continue;
+            if(isInFlight(job, states)){
+                // waits for a dependency that failed and would never start
+                canceled.add(job);
+            }
+            resubmitted.add(job);
+            resubmit.add(job);
+        }
+        if(resubmit.isEmpty()) return resubmit;
+        if(!canceled.isEmpty()){
+            log.info("Canceling {} queued jobs that depend on resubmitted jobs", canceled.size());
+            cluster.cancel(canceled);
+        }
+
+        log.info("Resubmitting {} jobs of {}", resubmit.size(), pipelineJob.getId());
+        for (Job job : resubmit) {
             job.setState(JobState.Submitted);
+            job.setStateReason(null);
+            job.setRemoteId(null);
         }
-        jobStore.save(pipelineJob);
+        jobStore.save(resubmit);
+        submitJobs(resubmit, cluster);
+        return resubmit;
+    }
+
+    /**
+     * Returns true if the job is queued or running on the cluster
+     *
+     * @param job the job
+     * @param states the current cluster states
+     * @return inFlight true if the job is still executing
+     */
+    private static boolean isInFlight(Job job, Map<String, ClusterJobState> states) {
+        return !job.getState().isDoneState()
+                && job.getRemoteId() != null
+                && states.containsKey(job.getRemoteId())
+                && states.get(job.getRemoteId()).isExecutionState();
+    }
 
-        PipelineJob.ExecutionGraph graph = pipelineJob.getGraph();
-        for (Job job : graph) {
-            submit(job, cluster);
+    /**
+     * Submit jobs and group split jobs
+     *
+     * @param jobs the jobs in topological order
+     * @param cluster the cluster
+     * @throws Exception in case a job could not be submitted
+     */
+    private void submitJobs(List<Job> jobs, Cluster cluster) throws Exception {
+        for (List<Job> group : groupSplitJobs(jobs)) {
+            if(group.size() == 1){
+                submit(group.get(0), cluster);
+            }else{
+                submit(group, cluster);
+            }
         }
-        return pipelineJob;
+    }
+
+    @Override
+    public boolean isIncremental() {
+        if(incremental == null){
+            Map<String, Object> jobs = (Map<String, Object>) environment.getConfiguration().get("jobs");
+            Object value = jobs == null ? null : jobs.get("incremental");
+            incremental = value instanceof Boolean ? (Boolean) value : false;
+        }
+        return incremental;
+    }
+
+    @Override
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    /**
+     * Get the result cache configured in <code>jobs.results</code>. The cache
+     * is disabled unless <code>cache</code> is true. A relative
+     * <code>directory</code> is resolved against the JIP installation, so the
+     * cache is shared by all users, and <code>size</code> limits the cache
+     * size in megabytes. Outputs are copied unless <code>link</code> is true,
+     * which restores them as read only hard links.
+     *
+     * @return cache the result cache or null if results are not cached
+     */
+    ResultCache getResultCache(){
+        if(resultCache != null) return resultCache;
+        Map<String, Object> jobs = (Map<String, Object>) environment.getConfiguration().get("jobs");
+        if(jobs == null || !(jobs.get("results") instanceof Map)) return null;
+        Map<String, Object> results = (Map<String, Object>) jobs.get("results");
+        if(!Boolean.TRUE.equals(results.get("cache"))) return null;
+        Object path = results.get("directory");
+        File directory = new File(path == null ? "cache/results" : path.toString());
+        if(!directory.isAbsolute()){
+            directory = new File(environment.getJipHome(false), directory.getPath());
+        }
+        Object size = results.get("size");
+        resultCache = new ResultCache(directory, size instanceof Number ? ((Number) size).longValue() * 1024 * 1024 : 0);
+        if(results.get("link") instanceof Boolean){
+            resultCache.setLink((Boolean) results.get("link"));
+        }
+        return resultCache;
+    }
+
+    /**
+     * Find the jobs of a pipeline that do not have to run in incremental mode.
+     * A job is up to date if it is up to date in the manifest of its
+     * working directory and all its dependencies are up to date. The
+     * manifests are created, so the jobs that run are recorded.
+     *
+     * @param pipelineJob the pipeline job
+     * @return upToDate the up to date jobs, empty if incremental mode is disabled
+     */
+    Set<Job> findUpToDate(PipelineJob pipelineJob){
+        Set<Job> upToDate = new HashSet<Job>();
+        if(!isIncremental()) return upToDate;
+        Map<String, JobManifest> manifests = new HashMap<String, JobManifest>();
+        // the compact graph is in topological order, dependencies are checked first
+        for (Job job : pipelineJob.getCompactGraph()) {
+            if(job.getWorkingDirectory() == null) continue;
+            JobManifest manifest = manifests.get(job.getWorkingDirectory());
+            if(manifest == null){
+                manifest = new JobManifest(new File(job.getWorkingDirectory()));
+                manifest.create();
+                manifests.put(job.getWorkingDirectory(), manifest);
+            }
+            if(upToDate.containsAll(job.getDependenciesBefore()) && manifest.isUpToDate(job, toolService.getTool(job.getToolName()))){
+                upToDate.add(job);
+            }
+        }
+        log.info("{} of {} jobs are up to date", upToDate.size(), pipelineJob.getJobs().size());
+        return upToDate;
+    }
+
+    /**
+     * Group the jobs created by splitting a node that share the tool, the
+     * dependencies and the environment. Groups are returned in the order of
+     * their first job, so a topological order of the jobs is preserved.
+     *
+     * @param jobs the jobs in topological order
+     * @return groups the groups of jobs
+     */
+    static List<List<Job>> groupSplitJobs(Iterable<Job> jobs){
+        Map<String, List<Job>> groups = new LinkedHashMap<String, List<Job>>();
+        for (Job job : jobs) {
+            String key = getSplitGroupKey(job);
+            if(key == null){
+                key = "job:" + job.getId();
+            }
+            List<Job> group = groups.get(key);
+            if(group == null){
+                group = new ArrayList<Job>();
+                groups.put(key, group);
+            }
+            group.add(job);
+        }
+        return new ArrayList<List<Job>>(groups.values());
+    }
+
+    /**
+     * Create the key that identifies split jobs that can be submitted together
+     *
+     * @param job the job
+     * @return key the group key or null if the job is not a split job
+     */
+    private static String getSplitGroupKey(Job job){
+        Matcher matcher = DefaultJob.SPLIT_ID_PATTERN.matcher(job.getId());
+        if(!matcher.matches()) return null;
+        Set<String> dependencies = new TreeSet<String>();
+        for (Job before : job.getDependenciesBefore()) {
+            dependencies.add(before.getId());
+        }
+        Map environment = job.getExecuteEnvironment() == null ? null : new TreeMap(DefaultExecuteEnvironment.toMap(job.getExecuteEnvironment()));
+        Map variables = job.getEnvironment() == null ? null : new TreeMap(job.getEnvironment());
+        return "split:" + matcher.group(1) + "\n" + job.getToolName() + "\n" + job.getWorkingDirectory()
+                + "\n" + dependencies + "\n" + environment + "\n" + variables;
     }
 
     public void submit(Job job, Cluster cluster) throws Exception {
         clusterService.applyConfiguration(job, cluster);
+        applyRetryResources(job);
         log.info("Submitting {}-{}", job.getPipelineId(), job.getId());
         cluster.submit(job);
         // save job
@@ -144,10 +509,25 @@ public class DefaultRunService implements RunService{
         jobStore.setState(job.getPipelineId(), job.getId(), JobState.Queued, null);
     }
 
+    @Override
+    public void submit(List<Job> jobs, Cluster cluster) throws Exception {
+        for (Job job : jobs) {
+            clusterService.applyConfiguration(job, cluster);
+            applyRetryResources(job);
+        }
+        log.info("Submitting {} split jobs of {}-{}", new Object[]{jobs.size(), jobs.get(0).getPipelineId(), jobs.get(0).getId()});
+        cluster.submit(jobs);
+        // save all jobs with a single update
+        for (Job job : jobs) {
+            job.setState(JobState.Queued);
+        }
+        jobStore.save(jobs);
+    }
+
     @Override
     public void cancel(PipelineJob job) {
         log.info("Canceling {}", job.getId());
-        for (Job j : job.getGraph()) {
+        for (Job j : job.getCompactGraph()) {
             if(!j.getState().isDoneState()){
                 try {
                     clusterService.getDefault().cancel(Arrays.asList(j));
@@ -167,34 +547,131 @@ public class DefaultRunService implements RunService{
             Map<String,ClusterJobState> states = cluster.list();
             log.debug("Job states : {}", states);
             for (PipelineJob pipelineJob : jobStore.list(false)) {
+                // jobs that are not running any more
+                List<Job> finished = new ArrayList<Job>();
+                Set<Job> retry = new HashSet<Job>();
                 for (Job job : pipelineJob.getJobs()) {
-                    if(!job.getState().isDoneState()){
+                    if(job.getState() == JobState.Hold){
+                        if(isRetryDue(job)) retry.add(job);
+                    }else if(!job.getState().isDoneState()){
                         log.info("Checking state for {}-{}", pipelineJob.getId(), job.getId());
                         if(!states.containsKey(job.getRemoteId()) || !states.get(job.getRemoteId()).isExecutionState()){
-                            log.info("Updating state for {}-{}", pipelineJob.getId(), job.getId());
-                            // job is not running any more
-                            if(!states.containsKey(job.getRemoteId())){
-                                // out of list, assume failed!
-                                jobStore.setState(job.getPipelineId(), job.getId(), JobState.Failed, "");
-                            }else{
-                                switch (states.get(job.getRemoteId())){
-                                    case Canceled:
-                                        jobStore.setState(job.getPipelineId(), job.getId(), JobState.Canceled, "");
-                                        break;
-                                    case Done:
-                                        jobStore.setState(job.getPipelineId(), job.getId(), JobState.Done, "");
-                                        break;
-                                    case Error:
-                                        jobStore.setState(job.getPipelineId(), job.getId(), JobState.Failed, "");
-                                        break;
-                                }
-                            }
+                            finished.add(job);
                         }
                     }
                 }
+                Map<String, String> finalStates = getFinalStates(cluster, finished);
+                for (Job job : finished) {
+                    log.info("Updating state for {}-{}", pipelineJob.getId(), job.getId());
+                    ClusterJobState state = states.get(job.getRemoteId());
+                    if(state == ClusterJobState.Done){
+                        jobStore.setState(job.getPipelineId(), job.getId(), JobState.Done, "");
+                    }else if(state == ClusterJobState.Canceled){
+                        jobStore.setState(job.getPipelineId(), job.getId(), JobState.Canceled, "");
+                    }else{
+                        // out of list, assume failed!
+                        String finalState = finalStates.get(job.getRemoteId());
+                        if(!holdForRetry(job, finalState, cluster)){
+                            jobStore.setState(job.getPipelineId(), job.getId(), JobState.Failed, finalState == null ? "" : finalState);
+                        }
+                    }
+                }
+                if(!retry.isEmpty()){
+                    resubmit(pipelineJob, retry, cluster, states);
+                }
             }
         } catch (Exception e) {
             log.error("Failed checking job status on cluster", e);
         }
     }
+
+    /**
+     * Get the final states of finished jobs from the cluster
+     *
+     * @param cluster the cluster
+     * @param jobs the finished jobs
+     * @return states the final states by remote id, empty if the states could not be fetched
+     */
+    private Map<String, String> getFinalStates(Cluster cluster, List<Job> jobs) {
+        List<String> remoteIds = new ArrayList<String>();
+        for (Job job : jobs) {
+            if(job.getRemoteId() != null) remoteIds.add(job.getRemoteId());
+        }
+        if(remoteIds.isEmpty()) return new HashMap<String, String>();
+        try {
+            return cluster.getFinalStates(remoteIds);
+        } catch (Exception e) {
+            log.warn("Unable to get final job states, jobs are not retried : {}", e.getMessage());
+            return new HashMap<String, String>();
+        }
+    }
+
+    /**
+     * Put a failed job on hold if its retry policy allows another attempt. The
+     * attempt is recorded in the job stats and the resources of the job are
+     * increased for timeouts and out of memory failures.
+     *
+     * @param job the failed job
+     * @param finalState the final cluster state
+     * @param cluster the cluster
+     * @return hold true if the job is retried
+     */
+    private boolean holdForRetry(Job job, String finalState, Cluster cluster) {
+        RetryPolicy policy = getRetryPolicy(job);
+        List<JobAttempt> attempts = job.getJobStats().getAttempts();
+        int attempt = attempts.size() + 1;
+        if(!policy.isRetried(finalState, attempt)) return false;
+
+        ExecuteEnvironment environment = job.getExecuteEnvironment();
+        Date now = new Date();
+        Date retryDate = new Date(now.getTime() + policy.getDelay(attempt));
+        attempts.add(new DefaultJobAttempt(job.getRemoteId(), finalState, now, retryDate,
+                environment == null ? 0 : environment.getMaxMemory(),
+                environment == null ? 0 : environment.getMaxTime()));
+        policy.escalate(finalState, environment);
+        log.info("Retrying {}-{} after {}, attempt {} of {}", new Object[]{job.getPipelineId(), job.getId(), finalState, attempt, policy.getAttempts()});
+        job.setState(JobState.Hold);
+        job.setStateReason(finalState + ", retry " + attempt + " at " + retryDate);
+        jobStore.save(job);
+        return true;
+    }
+
+    /**
+     * Restore the escalated resources of a retried job after the cluster
+     * configuration was applied
+     *
+     * @param job the job
+     */
+    private void applyRetryResources(Job job) {
+        List<JobAttempt> attempts = job.getJobStats().getAttempts();
+        if(attempts.isEmpty()) return;
+        getRetryPolicy(job).escalate(attempts, job.getExecuteEnvironment());
+    }
+
+    /**
+     * Returns true if a job on hold for a retry can be resubmitted
+     *
+     * @param job the job
+     * @return due true if the retry date passed
+     */
+    private static boolean isRetryDue(Job job) {
+        List<JobAttempt> attempts = job.getJobStats().getAttempts();
+        if(attempts.isEmpty()) return false;
+        return attempts.get(attempts.size() - 1).getRetryDate().getTime() <= System.currentTimeMillis();
+    }
+
+    /**
+     * Get the retry policy of a job on the default cluster
+     *
+     * @param job the job
+     * @return policy the retry policy
+     */
+    RetryPolicy getRetryPolicy(Job job) {
+        Map<String, Object> configuration = environment.getConfiguration();
+        Map<String, Object> jobs = (Map<String, Object>) configuration.get("jobs");
+        Object retry = jobs == null ? null : jobs.get("retry");
+        Object cluster = configuration.get("cluster") instanceof Map ? ((Map) configuration.get("cluster")).get("name") : null;
+        return RetryPolicy.create(retry instanceof Map ? (Map<String, Object>) retry : null,
+                cluster == null ? null : cluster.toString(), job.getToolName());
+    }
 }
@@ -9,13 +9,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
-import java.nio.ByteBuffer;
 import java.nio.LongBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
-import java.nio.channels.FileLock;
-import java.nio.channels.OverlappingFileLockException;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  *
@@ -23,6 +21,14 @@ import java.util.Map;
  * the next id in a file. A Lock is acquired to ensure process
  * safety and the service can only be run on a file system
  * that allows to lock files.
+ * <p>
+ * The service can lease blocks of ids. Every lock on the id file then
+ * reserves <code>block</code> ids that are handed out from memory, which
+ * keeps ids unique across processes and monotonic within a process, but
+ * ids are no longer consecutive across processes and unused ids of a
+ * block are lost when the process exits. The block size is configured with
+ * <code>jobs.idservice.block</code> and defaults to 1.
+ * </p>
  *
  * @author Thasso Griebel <thasso.griebel@gmail.com>
  */
@@ -44,6 +50,16 @@ public class FileIdService implements IdService{
      */
     private File idfile;
 
+    /**
+     * Number of ids leased per lock
+     */
+    private int blockSize;
+
+    /**
+     * The currently leased block
+     */
+    private volatile Block block;
+
     /**
      * Initialize a new service that uses the JIP environment to identify
      * the storage location
@@ -56,6 +72,11 @@ public class FileIdService implements IdService{
             throw new NullPointerException("NULL environment not permitted");
         }
         this.environment = environment;
+        Object size = JipConfiguration.get(environment.getConfiguration(), "jobs", "idservice", "block");
+        this.blockSize = size instanceof Number ? ((Number) size).intValue() : 1;
+        if(blockSize < 1){
+            throw new IllegalArgumentException("ID service block size must be positive");
+        }
     }
 
     /**
@@ -64,11 +85,49 @@ public class FileIdService implements IdService{
      * @param idfile the id file
      */
     public FileIdService(File idfile ) {
+        this(idfile, 1);
+    }
+
+    /**
+     * Create an instance based on the given file that leases blocks of ids
+     *
+     * @param idfile the id file
+     * @param blockSize number of ids leased per lock
+     */
+    public FileIdService(File idfile, int blockSize) {
+        if(blockSize < 1){
+            throw new IllegalArgumentException("ID service block size must be positive");
+        }
         this.idfile = idfile;
+        this.blockSize = blockSize;
     }
 
     @Override
-    public synchronized String next() {
+    public String next() {
+        while(true){
+            Block current = block;
+            if(current != null){
+                long id = current.next.getAndIncrement();
+                if(id < current.end){
+                    return Long.toString(id);
+                }
+            }
+            synchronized (this){
+                // another thread might have leased a block already
+                if(block == current){
+                    long start = lease();
+                    block = new Block(start, start + blockSize);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reserve the next block of ids in the id file
+     *
+     * @return start the first id of the block
+     */
+    private long lease() {
         if (idfile == null) {
             Map<String, Object> cfg = environment.getConfiguration();
             Object path = JipConfiguration.get(cfg, "jobs", "idservice", "file");
@@ -87,36 +146,43 @@ public class FileIdService implements IdService{
                 }
             }
         }
-        FileLock lock = null;
         long nextId = 0;
-        FileChannel channel = null;
+        // block until the lock is acquired, the lock is shared with other
+        // services of this process that use the same file
+        FileLocks.Handle lock = FileLocks.exclusive(idfile);
         try {
-            // Get a file channel for the file
-            RandomAccessFile rw = new RandomAccessFile(idfile, "rw");
-            channel = rw.getChannel();
-
-            // Use the file channel to create a lock on the file.
-            // This method blocks until it can retrieve the lock.
-            lock = channel.lock();
-            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_WRITE, 0, 8);
+            MappedByteBuffer map = lock.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, 8);
             LongBuffer longBuffer = map.asLongBuffer();
             nextId = longBuffer.get(0);
-            longBuffer.put(0, nextId+1);
+            longBuffer.put(0, nextId+blockSize);
+            map.force();
         } catch (Exception e) {
             log.error("Error while reading next id {}", e.getMessage());
             throw new RuntimeException(e);
         } finally {
-            // Release the lock
-            if (lock != null) {
-                try {lock.release();} catch (IOException ignore) {}
-            }
-            // Close the file
-            if (channel != null) {
-                try {channel.close();} catch (IOException ignore) {}
-            }
+            // Release the lock and close the file
+            lock.release();
+        }
+        return nextId;
+    }
+
+    /**
+     * A leased block of ids
+     */
+    private static class Block {
+        /**
+         * The next id
+         */
+        final AtomicLong next;
+        /**
+         * End of the block, exclusive
+         */
+        final long end;
 
+        Block(long start, long end) {
+            this.next = new AtomicLong(start);
+            this.end = end;
         }
-        return Long.toString(nextId);
     }
 
     private ConfigObject get(ConfigObject source, String id){
@@ -0,0 +1,267 @@
+package jip.jobs;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Append-only update log of a single pipeline job. Records are small encoded
+ * maps written to the end of the file with their length in front and at the
+ * end, so an update only costs the size of the record and never the size of the
+ * pipeline. The trailing length lets an append check that the last record is
+ * complete without reading the journal. A partially written record at the
+ * end is removed.
+ * <p>
+ * A journal opened with {@link #lock(java.io.File)} holds an exclusive lock
+ * on the log until it is released. This is used by the {@link FileJobStore}
+ * to read and truncate the log atomically when it is folded back into
+ * the pipeline snapshot. Readers open the journal with
+ * {@link #lockShared(java.io.File)}.
+ * </p>
+ *
+ * @author Thasso Griebel <thasso.griebel@gmail.com>
+ */
+class FileJobJournal {
+    /**
+     * The logger
+     */
+    private static Logger log = LoggerFactory.getLogger(FileJobJournal.class);
+    /**
+     * Magic number at the start of journals whose records end with their length
+     */
+    private static final int MAGIC = 0x4a4a5232;
+
+    /**
+     * The journal file
+     */
+    private File file;
+    /**
+     * The lock
+     */
+    private FileLocks.Handle lock;
+    /**
+     * The file channel
+     */
+    private FileChannel channel;
+    /**
+     * The journal is locked exclusively and can be repaired
+     */
+    private boolean exclusive;
+
+    private FileJobJournal(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Append a single record to the given journal file. The file is created
+     * if it does not exist yet
+     *
+     * @param file the journal file
+     * @param record the encoded record
+     * @return length the length of the journal after the record was appended
+     */
+    static long append(File file, byte[] record){
+        FileJobJournal journal = lock(file);
+        try {
+            return journal.append(record);
+        } finally {
+            journal.release();
+        }
+    }
+
+    /**
+     * Open the journal file and block until an exclusive lock is acquired.
+     * The returned journal must be released.
+     *
+     * @param file the journal file
+     * @return journal the locked journal
+     */
+    static FileJobJournal lock(File file){
+        FileJobJournal journal = new FileJobJournal(file);
+        journal.lock = FileLocks.exclusive(file);
+        journal.channel = journal.lock.getChannel();
+        journal.exclusive = true;
+        return journal;
+    }
+
+    /**
+     * Open the journal file and block until a shared lock is acquired.
+     * A shared journal can only be read. The returned journal must be released.
+     *
+     * @param file the journal file
+     * @return journal the locked journal
+     */
+    static FileJobJournal lockShared(File file){
+        FileJobJournal journal = new FileJobJournal(file);
+        journal.lock = FileLocks.shared(file);
+        journal.channel = journal.lock.getChannel();
+        return journal;
+    }
+
+    /**
+     * Append a record to this locked journal
+     *
+     * @param data the encoded record
+     * @return length the length of the journal after the record was appended
+     */
+    long append(byte[] data){
+        try {
+            long end = prepareAppend();
+            // write the record with a single call so concurrent readers
+            // never see a record without its header
+            channel.write(ByteBuffer.wrap(encode(data)), end);
+            return channel.size();
+        } catch (IOException e) {
+            log.error("Error while writing job journal {}", file, e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Encode a record with its length in front and at the end
+     *
+     * @param data the record
+     * @return bytes the encoded record
+     * @throws IOException never for in memory streams
+     */
+    private static byte[] encode(byte[] data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(data.length + 8);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(data.length);
+        out.write(data);
+        out.writeInt(data.length);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Find the position of the next record. Only the last record is checked
+     * by comparing its trailing length with its header, so a complete journal
+     * is never scanned. A torn tail, i.e. from a process that died while
+     * appending, is removed before the record is written after it. Journals
+     * written without record trailers are converted.
+     *
+     * @return end the position of the next record
+     * @throws IOException in case the journal could not be read or written
+     */
+    private long prepareAppend() throws IOException {
+        long size = channel.size();
+        if(size == 0){
+            channel.write(ByteBuffer.allocate(4).putInt(0, MAGIC), 0);
+            return 4;
+        }
+        if(size < 4 || readInt(0) != MAGIC){
+            log.info("Converting job journal {}", file);
+            List<byte[]> records = read();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            new DataOutputStream(bytes).writeInt(MAGIC);
+            for (byte[] record : records) {
+                bytes.write(encode(record));
+            }
+            channel.truncate(0);
+            channel.write(ByteBuffer.wrap(bytes.toByteArray()), 0);
+            return channel.size();
+        }
+        if(isTailComplete(size)) return size;
+        // removes the torn record, the journal is locked exclusively
+        read();
+        return channel.size();
+    }
+
+    /**
+     * Check the trailing length of the last record against its header
+     *
+     * @param size the size of the journal
+     * @return complete true if the last record is complete
+     * @throws IOException in case the journal could not be read
+     */
+    private boolean isTailComplete(long size) throws IOException {
+        if(size == 4) return true;
+        if(size < 12) return false;
+        int length = readInt(size - 4);
+        long start = size - 8 - length;
+        return length >= 0 && start >= 4 && readInt(start) == length;
+    }
+
+    private int readInt(long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4);
+        while(buffer.hasRemaining() && channel.read(buffer, position + buffer.position()) >= 0);
+        if(buffer.hasRemaining()) return -1;
+        return buffer.getInt(0);
+    }
+
+    /**
+     * Read all complete records of this locked journal. A partially written
+     * record at the end of the file, i.e. from a process that died while
+     * appending, is ignored, and removed if the journal is locked exclusively.
+     *
+     * @return records the encoded records in the order they were appended
+     */
+    List<byte[]> read(){
+        List<byte[]> records = new ArrayList<byte[]>();
+        try {
+            long size = channel.size();
+            if(size == 0) return records;
+            // positional reads, the channel might be shared with other readers
+            ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            while(buffer.hasRemaining() && channel.read(buffer, buffer.position()) >= 0);
+            buffer.flip();
+            // journals of older versions have no magic number and no record trailers
+            boolean trailers = size >= 4 && buffer.getInt(0) == MAGIC;
+            if(trailers) buffer.position(4);
+            while(buffer.hasRemaining()){
+                int start = buffer.position();
+                int length = buffer.remaining() >= 4 ? buffer.getInt() : -1;
+                if(length < 0 || length + (trailers ? 4 : 0) > buffer.remaining()
+                        || (trailers && buffer.getInt(start + 4 + length) != length)){
+                    if(exclusive){
+                        log.warn("Removing incomplete record at the end of job journal {}", file);
+                        channel.truncate(start);
+                    }else{
+                        log.warn("Ignoring incomplete record at the end of job journal {}", file);
+                    }
+                    break;
+                }
+                byte[] data = new byte[length];
+                buffer.get(data);
+                if(trailers) buffer.getInt();
+                records.add(data);
+            }
+            return records;
+        } catch (IOException e) {
+            log.error("Error while reading job journal {}", file, e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Remove all records from this locked journal
+     */
+    void truncate(){
+        try {
+            channel.truncate(0);
+        } catch (IOException e) {
+            log.error("Error while truncating job journal {}", file, e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Release the lock and close the journal
+     */
+    void release(){
+        if (lock != null) {
+            lock.release();
+        }
+        lock = null;
+        channel = null;
+    }
+}
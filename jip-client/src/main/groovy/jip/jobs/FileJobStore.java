@@ -1,25 +1,47 @@
 package jip.jobs;
 
 import com.google.common.io.Files;
-import com.google.gson.Gson;
 import com.google.inject.Inject;
 import jip.JipConfiguration;
 import jip.JipEnvironment;
 import jip.plugin.Extension;
+import jip.plugin.PluginRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.FileFilter;
 import java.io.IOException;
-import java.io.RandomAccessFile;
-import java.nio.MappedByteBuffer;
-import java.nio.channels.FileChannel;
-import java.nio.channels.FileLock;
 import java.util.*;
 
 /**
  * Plain text job store for pipeline jobs.
+ * <p>
+ * The store can run in journal mode, where state, message and progress updates
+ * are appended to a per-pipeline journal instead of rewriting the full pipeline
+ * file. Reads always replay an existing journal onto the pipeline snapshot, and
+ * the journal is folded back into the snapshot once it grows beyond the
+ * compaction size.
+ * </p>
+ * <p>
+ * Job files are never modified in place. Writers hold an exclusive lock on the
+ * pipeline's lock file and publish a new snapshot with an atomic rename, while
+ * readers only take a shared lock, so concurrent reads do not block each other.
+ * </p>
+ * <p>
+ * Pipeline jobs and journal records are written with the configured
+ * {@link JobCodec}, UTF-8 JSON by default. Documents written by any other
+ * known codec, including the UTF-16 JSON files of older versions, are read.
+ * They are only rewritten with the configured codec on read if migration is
+ * enabled, otherwise they keep their format until the pipeline is written.
+ * </p>
+ * <p>
+ * Every pipeline has a small summary in the <code>.index</code> folder next to
+ * its job file. The summary is written with every snapshot and used to list
+ * pipelines without loading their jobs. Journaled updates do not touch the
+ * summary. A summary that does not include the whole journal is created
+ * again when the pipeline is listed.
+ * </p>
  *
  * @author Thasso Griebel <thasso.griebel@gmail.com>
  */
@@ -29,6 +51,10 @@ public class FileJobStore implements JobStore{
     * The logger
     */
     private static Logger log = LoggerFactory.getLogger(FileJobStore.class);
+    /**
+     * Default journal compaction size
+     */
+    static final long DEFAULT_COMPACTION_SIZE = 512 * 1024;
 
     /**
      * The directory used to store files
@@ -38,6 +64,26 @@ public class FileJobStore implements JobStore{
      * the archive directory
      */
     private File archiveDirectory;
+    /**
+     * Append updates to the pipeline journal
+     */
+    private boolean journal;
+    /**
+     * Journal size in bytes that triggers a compaction
+     */
+    private long compactionSize;
+    /**
+     * The codec used to write pipeline jobs and journal records
+     */
+    private JobCodec codec;
+    /**
+     * All codecs known to decode existing files
+     */
+    private List<JobCodec> codecs;
+    /**
+     * Rewrite documents of other codecs with the configured codec when they are read
+     */
+    private boolean migrate;
 
     /**
      * Create a new instance of the job store.
@@ -49,7 +95,40 @@ public class FileJobStore implements JobStore{
      * @param storageDirectory the storage directory
      */
     public FileJobStore(File storageDirectory) {
+        this(storageDirectory, false, DEFAULT_COMPACTION_SIZE, new JsonJobCodec());
+    }
+
+    /**
+     * Create a new instance of the job store that optionally
+     * appends updates to a per-pipeline journal.
+     *
+     * @param storageDirectory the storage directory
+     * @param journal append state, message and progress updates to the journal
+     * @param compactionSize journal size in bytes that triggers a compaction
+     */
+    public FileJobStore(File storageDirectory, boolean journal, long compactionSize) {
+        this(storageDirectory, journal, compactionSize, new JsonJobCodec());
+    }
+
+    /**
+     * Create a new instance of the job store that writes
+     * with the given codec.
+     *
+     * @param storageDirectory the storage directory
+     * @param journal append state, message and progress updates to the journal
+     * @param compactionSize journal size in bytes that triggers a compaction
+     * @param codec the codec used to write pipeline jobs
+     */
+    public FileJobStore(File storageDirectory, boolean journal, long compactionSize, JobCodec codec) {
+        if(codec == null) throw new NullPointerException("NULL codec not permitted");
         this.storageDirectory = storageDirectory;
+        this.journal = journal;
+        this.compactionSize = compactionSize;
+        this.codec = codec;
+        this.codecs = new ArrayList<JobCodec>();
+        addCodec(codec);
+        addCodec(new BinaryJobCodec());
+        addCodec(new JsonJobCodec());
         this.archiveDirectory = new File(storageDirectory.getParentFile(), "archive");
         if(!this.storageDirectory.exists()){
             if(!this.storageDirectory.mkdirs()){
@@ -65,17 +144,141 @@ public class FileJobStore implements JobStore{
 
     /**
      * Create a new job store and read the storage location
-     * from the configuration. The key checked is
+     * from the configuration. The keys checked are
      * <pre>
      *     <code>
      *         jip.storage.directory
+     *         jip.storage.journal
+     *         jip.storage.compaction
+     *         jip.storage.codec
+     *         jip.storage.migrate
      *     </code>
      * </pre>
+     * The codec is selected by name from the codecs available
+     * in the plugin registry.
+     *
      * @param jipEnvironment
+     * @param pluginRegistry the plugin registry
      */
     @Inject
-    public FileJobStore(JipEnvironment jipEnvironment){
-        this(new File(getDirectory(jipEnvironment)));
+    public FileJobStore(JipEnvironment jipEnvironment, PluginRegistry pluginRegistry){
+        this(new File(getDirectory(jipEnvironment)), isJournal(jipEnvironment), getCompactionSize(jipEnvironment),
+                getCodec(jipEnvironment, pluginRegistry));
+        setMigrate(isMigrate(jipEnvironment));
+        if(pluginRegistry != null){
+            for (JobCodec c : pluginRegistry.getInstances(JobCodec.class)) {
+                addCodec(c);
+            }
+        }
+    }
+
+    /**
+     * Resolve the configured codec
+     *
+     * @param jipEnvironment the environment
+     * @param pluginRegistry the plugin registry
+     * @return codec the codec
+     */
+    private static JobCodec getCodec(JipEnvironment jipEnvironment, PluginRegistry pluginRegistry) {
+        Object name = JipConfiguration.get(jipEnvironment.getConfiguration(), "storage", "codec");
+        if(name == null || name.toString().equals(JsonJobCodec.NAME)){
+            return new JsonJobCodec();
+        }
+        if(name.toString().equals(BinaryJobCodec.NAME)){
+            return new BinaryJobCodec();
+        }
+        if(pluginRegistry != null){
+            for (JobCodec c : pluginRegistry.getInstances(JobCodec.class)) {
+                if(c.getName().equals(name.toString())){
+                    return c;
+                }
+            }
+        }
+        log.error("Job codec {} not found", name);
+        throw new RuntimeException("No job codec found with name " + name);
+    }
+
+    /**
+     * Enable the migration of documents on read. Documents written by another
+     * codec, for example the UTF-16 JSON files of older versions, are then
+     * rewritten with the configured codec the first time they are read. Older
+     * clients can not read migrated pipelines, so this is disabled by default.
+     *
+     * @param migrate rewrite documents of other codecs when they are read
+     */
+    public void setMigrate(boolean migrate) {
+        this.migrate = migrate;
+    }
+
+    /**
+     * Add a codec that is used to decode existing files. Codecs are checked
+     * in the order they were added
+     *
+     * @param codec the codec
+     */
+    public void addCodec(JobCodec codec){
+        for (JobCodec c : codecs) {
+            if(c.getName().equals(codec.getName())) return;
+        }
+        codecs.add(codec);
+    }
+
+    /**
+     * Find the codec that wrote the given data
+     *
+     * @param data the data
+     * @return codec the codec that can decode the data
+     */
+    private JobCodec getDecoder(byte[] data){
+        for (JobCodec c : codecs) {
+            if(c.canDecode(data)){
+                return c;
+            }
+        }
+        throw new RuntimeException("Unknown job file format, no codec found to decode the data");
+    }
+
+    /**
+     * Decode the pipeline job snapshot
+     *
+     * @param data the snapshot data
+     * @return data the pipeline job map
+     */
+    private Map<String, Object> decodeSnapshot(byte[] data) {
+        return getDecoder(data).decode(data);
+    }
+
+    /**
+     * Check if journal mode is enabled
+     *
+     * @param jipEnvironment the environment
+     * @return journal true if updates are appended to the journal
+     */
+    private static boolean isJournal(JipEnvironment jipEnvironment) {
+        Object journal = JipConfiguration.get(jipEnvironment.getConfiguration(), "storage", "journal");
+        return journal != null && Boolean.valueOf(journal.toString());
+    }
+
+    /**
+     * Check if documents of other codecs are migrated on read
+     *
+     * @param jipEnvironment the environment
+     * @return migrate true if documents are rewritten when they are read
+     */
+    private static boolean isMigrate(JipEnvironment jipEnvironment) {
+        Object migrate = JipConfiguration.get(jipEnvironment.getConfiguration(), "storage", "migrate");
+        return migrate != null && Boolean.valueOf(migrate.toString());
+    }
+
+    /**
+     * Resolve the journal compaction size
+     *
+     * @param jipEnvironment the environment
+     * @return size the journal size in bytes that triggers a compaction
+     */
+    private static long getCompactionSize(JipEnvironment jipEnvironment) {
+        Object size = JipConfiguration.get(jipEnvironment.getConfiguration(), "storage", "compaction");
+        return size instanceof Number ? ((Number) size).longValue() : DEFAULT_COMPACTION_SIZE;
     }
 
     /**
@@ -94,49 +297,139 @@ public class FileJobStore implements JobStore{
 
     @Override
     public void save(PipelineJob pipelineJob) {
-        FileLock lock = null;
-        FileChannel channel = null;
+        File file = getJobFile(pipelineJob, false);
+        FileLocks.Handle lock = FileLocks.exclusive(getLockFile(file, pipelineJob.getId()));
+        FileJobJournal journal = null;
         try {
-            // Get a file channel for the file
-            RandomAccessFile rw = new RandomAccessFile(getJobFile(pipelineJob, false), "rw");
-            channel = rw.getChannel();
-            // Use the file channel to create a lock on the file.
-            // This method blocks until it can retrieve the lock.
-            lock = channel.lock();
-            Map<String, Object> data = DefaultPipelineJob.toMap(pipelineJob);
-            Gson gson = new Gson();
-            rw.writeChars(gson.toJson(data));
+            // the new snapshot replaces all journaled updates
+            journal = FileJobJournal.lock(getJournalFile(file, pipelineJob.getId()));
+            writeAtomic(file, codec.encode(DefaultPipelineJob.toMap(pipelineJob)));
+            journal.truncate();
+            writeSummary(file, new DefaultPipelineSummary(pipelineJob));
         } catch (Exception e) {
             log.error("Error while writing job file", e);
             throw new RuntimeException(e);
         } finally {
-            // Release the lock
-            if (lock != null) {
-                try {lock.release();} catch (IOException ignore) {}
-            }
-            // Close the file
-            if (channel != null) {
-                try {channel.close();} catch (IOException ignore) {}
+            if (journal != null) {
+                journal.release();
             }
-
+            lock.release();
         }
-
     }
 
     private File getJobFile(PipelineJob pipelineJob, boolean archive) {
         return new File(archive ? archiveDirectory : storageDirectory, pipelineJob.getId()+".job");
     }
 
+    /**
+     * Determine the lock file that belongs to a job file. Job files are
+     * replaced on every write, so they are not locked directly.
+     *
+     * @param jobFile the job file
+     * @param id the pipeline job id
+     * @return lock the lock file next to the job file
+     */
+    private File getLockFile(File jobFile, String id) {
+        return new File(jobFile.getParentFile(), id + ".lock");
+    }
+
+    /**
+     * Determine the journal file that belongs to a job file
+     *
+     * @param jobFile the job file
+     * @param id the pipeline job id
+     * @return journal the journal file next to the job file
+     */
+    private File getJournalFile(File jobFile, String id) {
+        return new File(jobFile.getParentFile(), id + ".journal");
+    }
+
+    /**
+     * Determine the summary file that belongs to a job file
+     *
+     * @param jobFile the job file
+     * @param id the pipeline job id
+     * @return summary the summary file in the index folder next to the job file
+     */
+    private File getSummaryFile(File jobFile, String id) {
+        return new File(new File(jobFile.getParentFile(), ".index"), id + ".summary");
+    }
+
+    /**
+     * Write the summary of a pipeline job. The caller must hold the lock
+     * that protects updates of the pipeline job.
+     *
+     * @param jobFile the job file
+     * @param summary the summary
+     */
+    private void writeSummary(File jobFile, PipelineSummary summary) {
+        File file = getSummaryFile(jobFile, summary.getId());
+        if(!file.getParentFile().exists()){
+            file.getParentFile().mkdirs();
+        }
+        writeAtomic(file, codec.encode(DefaultPipelineSummary.toMap(summary)));
+    }
+
+    /**
+     * Read the summary of a pipeline job
+     *
+     * @param jobFile the job file
+     * @param id the pipeline job id
+     * @return summary the summary or null if no summary exists
+     */
+    private DefaultPipelineSummary readSummary(File jobFile, String id) {
+        File file = getSummaryFile(jobFile, id);
+        if(!file.exists()) return null;
+        try {
+            byte[] data = Files.toByteArray(file);
+            return new DefaultPipelineSummary(getDecoder(data).decode(data));
+        } catch (IOException e) {
+            log.error("Error while reading pipeline summary {}", file, e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Replace the target file. The data is written to a temporary file
+     * in the same folder and then renamed, so readers always see either
+     * the old or the new content.
+     *
+     * @param target the target file
+     * @param data the content
+     */
+    private static void writeAtomic(File target, byte[] data) {
+        File tmp = null;
+        try {
+            tmp = File.createTempFile("." + target.getName(), ".tmp", target.getParentFile());
+            Files.write(data, tmp);
+            if(!tmp.renameTo(target)){
+                // some file systems do not replace existing files
+                target.delete();
+                if(!tmp.renameTo(target)){
+                    throw new IOException("Unable to rename " + tmp + " to " + target);
+                }
+            }
+        } catch (IOException e) {
+            log.error("Error while writing {}", target, e);
+            if(tmp != null) tmp.delete();
+            throw new RuntimeException(e);
+        }
+    }
+
     @Override
     public void delete(PipelineJob pipelineJob) {
-        File jobFile = getJobFile(pipelineJob, false);
-        if(jobFile.exists()){
-            jobFile.delete();
-        }else{
-            jobFile = getJobFile(pipelineJob, true);
-            if(jobFile.exists()){
-                jobFile.delete();
+        if(!getJobFile(pipelineJob.getId()).exists()) return;
+        FileStoreJob job = lock(pipelineJob.getId());
+        try {
+            job.file.delete();
+            File summaryFile = getSummaryFile(job.file, job.getId());
+            if(summaryFile.exists()){
+                summaryFile.delete();
             }
+            getJournalFile(job.file, job.getId()).delete();
+            getLockFile(job.file, job.getId()).delete();
+        } finally {
+            job.release();
         }
     }
 
@@ -144,52 +437,82 @@ public class FileJobStore implements JobStore{
     public void archive(PipelineJob pipelineJob) {
         File jobFile = getJobFile(pipelineJob, false);
         if(jobFile.exists()){
+            FileStoreJob job = lock(pipelineJob.getId());
             try {
-                Files.move(jobFile, getJobFile(pipelineJob, true));
+                if(!job.file.equals(jobFile)) return;
+                // fold pending updates into the snapshot before it is moved
+                job.save();
+                File archiveFile = getJobFile(pipelineJob, true);
+                Files.move(jobFile, archiveFile);
+                File summaryFile = getSummaryFile(jobFile, pipelineJob.getId());
+                if(summaryFile.exists()){
+                    File archiveSummary = getSummaryFile(archiveFile, pipelineJob.getId());
+                    archiveSummary.getParentFile().mkdirs();
+                    Files.move(summaryFile, archiveSummary);
+                }
+                getJournalFile(jobFile, pipelineJob.getId()).delete();
+                getLockFile(jobFile, pipelineJob.getId()).delete();
             } catch (IOException e) {
                 throw new RuntimeException("Failed to move job file to archive !");
+            } finally {
+                job.release();
             }
         }
     }
 
+    /**
+     * Fold the journal of the given pipeline job into its snapshot
+     *
+     * @param id the pipeline job id
+     */
+    void compact(String id){
+        lock(id).saveAndRelease();
+    }
+
+    /**
+     * Load the pipeline job and keep it locked exclusively until it
+     * is saved or released
+     *
+     * @param id the pipeline job id
+     * @return job the locked pipeline job
+     */
     FileStoreJob lock(String id){
         if(id == null){
             throw new NullPointerException("NULL pipeline job id not permitted!");
         }
-        FileLock lock = null;
-        FileChannel channel = null;
-        try {
-            // Get a file channel for the file
+        while(true){
             File file = getJobFile(id);
             if(!file.exists()){
                 throw new RuntimeException("Storage file for job " + id + " not found !");
             }
-
-            RandomAccessFile rw = new RandomAccessFile(file, "rw");
-            channel = rw.getChannel();
-            // Use the file channel to create a lock on the file.
-            // This method blocks until it can retrieve the lock.
-            lock = channel.lock();
-            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, file.length());
-            Gson gson = new Gson();
-            String content = map.asCharBuffer().toString();
-            HashMap jobMap = gson.fromJson(content, HashMap.class);
-            FileStoreJob job = new FileStoreJob(jobMap);
-            job.lock = lock;
-            job.channel = channel;
-            job.rw = rw;
-            return job;
-        } catch (Exception e) {
-            log.error("Error while writing job file", e);
-            // Release the lock
-            if (lock != null) {
-                try {lock.release();} catch (IOException ignore) {}
-            }
-            // Close the file
-            if (channel != null) {
-                try {channel.close();} catch (IOException ignore) {}
+            FileLocks.Handle lock = FileLocks.exclusive(getLockFile(file, id));
+            FileJobJournal journal = null;
+            try {
+                if(!file.exists()){
+                    // moved while we were waiting for the lock
+                    lock.release();
+                    continue;
+                }
+                FileStoreJob job = new FileStoreJob(decodeSnapshot(Files.toByteArray(file)));
+                // keep the journal locked until the snapshot is written
+                // so no update gets lost when the journal is truncated
+                File journalFile = getJournalFile(file, id);
+                if(this.journal || journalFile.exists()){
+                    journal = FileJobJournal.lock(journalFile);
+                    replay(job.getJobs(), journal.read());
+                }
+                job.file = file;
+                job.lock = lock;
+                job.journal = journal;
+                return job;
+            } catch (Exception e) {
+                log.error("Error while reading job file", e);
+                if (journal != null) {
+                    journal.release();
+                }
+                lock.release();
+                throw new RuntimeException(e);
             }
-            throw new RuntimeException(e);
         }
     }
 
@@ -209,43 +532,107 @@ public class FileJobStore implements JobStore{
 
     @Override
     public PipelineJob get(String id) {
-        FileLock lock = null;
-        FileChannel channel = null;
-        try {
-            // Get a file channel for the file
+        while(true){
             File file = getJobFile(id);
             if(!file.exists()){
                 throw new RuntimeException("Job " + id + " not found !");
             }
-
-            RandomAccessFile rw = new RandomAccessFile(file, "rw");
-            channel = rw.getChannel();
-            // Use the file channel to create a lock on the file.
-            // This method blocks until it can retrieve the lock.
-            lock = channel.lock();
-            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, file.length());
-            Gson gson = new Gson();
-            String content = map.asCharBuffer().toString();
-            HashMap jobMap = gson.fromJson(content, HashMap.class);
-            return new DefaultPipelineJob(jobMap);
-        } catch (Exception e) {
-            log.error("Error while writing job file", e);
-            throw new RuntimeException(e);
-        } finally {
-            // Release the lock
-            if (lock != null) {
-                try {lock.release();} catch (IOException ignore) {}
+            // the shared lock only waits for running compactions
+            FileLocks.Handle lock = FileLocks.shared(getLockFile(file, id));
+            DefaultPipelineJob pipelineJob;
+            JobCodec decoder;
+            try {
+                if(!file.exists()){
+                    // moved while we were waiting for the lock
+                    continue;
+                }
+                byte[] data = Files.toByteArray(file);
+                decoder = getDecoder(data);
+                pipelineJob = new DefaultPipelineJob(decoder.decode(data));
+                File journalFile = getJournalFile(file, id);
+                if(journalFile.exists()){
+                    FileJobJournal journal = FileJobJournal.lockShared(journalFile);
+                    try {
+                        replay(pipelineJob.getJobs(), journal.read());
+                    } finally {
+                        journal.release();
+                    }
+                }
+            } catch (Exception e) {
+                log.error("Error while reading job file", e);
+                throw new RuntimeException(e);
+            } finally {
+                lock.release();
             }
-            // Close the file
-            if (channel != null) {
-                try {channel.close();} catch (IOException ignore) {}
+            if(migrate && !decoder.getName().equals(codec.getName())){
+                log.info("Migrating pipeline job {} from {} to {}", new Object[]{id, decoder.getName(), codec.getName()});
+                compact(id);
             }
+            return pipelineJob;
+        }
+    }
 
+    @Override
+    public Job getJob(String pipelineId, String jobId) {
+        while(true){
+            File file = getJobFile(pipelineId);
+            if(!file.exists()){
+                throw new RuntimeException("Job " + pipelineId + " not found !");
+            }
+            FileLocks.Handle lock = FileLocks.shared(getLockFile(file, pipelineId));
+            try {
+                if(!file.exists()){
+                    // moved while we were waiting for the lock
+                    continue;
+                }
+                // only the requested job is created, the pipeline graph is not
+                Map<String, Object> snapshot = decodeSnapshot(Files.toByteArray(file));
+                DefaultJob job = null;
+                if(snapshot.get("jobs") != null){
+                    for (Map map : (List<Map>) snapshot.get("jobs")) {
+                        if(jobId.equals(map.get("id"))){
+                            job = new DefaultJob(map);
+                            break;
+                        }
+                    }
+                }
+                if(job == null) return null;
+                File journalFile = getJournalFile(file, pipelineId);
+                if(journalFile.exists()){
+                    FileJobJournal journal = FileJobJournal.lockShared(journalFile);
+                    try {
+                        replay(Collections.singletonList(job), journal.read());
+                    } finally {
+                        journal.release();
+                    }
+                }
+                return job;
+            } catch (IOException e) {
+                log.error("Error while reading job file", e);
+                throw new RuntimeException(e);
+            } finally {
+                lock.release();
+            }
         }
     }
 
     @Override
     public Iterable<PipelineJob> list(boolean archived) {
+        return new JobIterable(listJobFiles(archived));
+    }
+
+    @Override
+    public Iterable<PipelineSummary> listSummaries(boolean archived) {
+        return new SummaryIterable(listJobFiles(archived));
+    }
+
+    /**
+     * List the job files sorted by id, latest first
+     *
+     * @param archived list archived jobs
+     * @return files the job files
+     */
+    private File[] listJobFiles(boolean archived) {
         File[] files = (archived ? archiveDirectory : storageDirectory).listFiles(new FileFilter() {
             @Override
             public boolean accept(File file) {
@@ -262,25 +649,49 @@ public class FileJobStore implements JobStore{
                 return -1;
             }
         });
-        return new JobIterable(files);
+        return files;
+    }
+
+    /**
+     * Load the summary of a pipeline job and create it if it does not
+     * exist yet or does not include all journaled updates
+     *
+     * @param jobFile the job file
+     * @param id the pipeline job id
+     * @return summary the summary
+     */
+    private PipelineSummary getSummary(File jobFile, String id) {
+        DefaultPipelineSummary summary = readSummary(jobFile, id);
+        File journalFile = getJournalFile(jobFile, id);
+        if(summary == null || summary.getJournalLength() != journalFile.length()){
+            FileStoreJob pipelineJob = lock(id);
+            try {
+                summary = new DefaultPipelineSummary(pipelineJob);
+                // the journal is locked, the length includes all replayed records
+                summary.setJournalLength(getJournalFile(pipelineJob.file, id).length());
+                writeSummary(pipelineJob.file, summary);
+            } finally {
+                pipelineJob.release();
+            }
+        }
+        return summary;
     }
 
     @Override
     public void setState(String pipelineId, String jobId, JobState state, String reason){
+        Date date = new Date();
+        if(journal){
+            Map<String, Object> record = createRecord(jobId, "state");
+            record.put("state", state.name());
+            record.put("reason", reason);
+            record.put("date", date.getTime());
+            append(pipelineId, record);
+            return;
+        }
         FileStoreJob pipelineJob = lock(pipelineId);
         for (Job job1 : pipelineJob.getJobs()) {
             if(job1.getId().equals(jobId)){
-                job1.setState(state);
-                job1.setStateReason(reason);
-                if(state == JobState.Running){
-                    job1.getJobStats().setStartDate(new Date());
-                    job1.getJobStats().setEndDate(null);
-                }else if(state == JobState.Submitted ||state == JobState.Queued ){
-                    job1.getJobStats().setStartDate(null);
-                    job1.getJobStats().setEndDate(null);
-                }else if(state.isDoneState()){
-                    job1.getJobStats().setEndDate(new Date());
-                }
+                applyState(job1, state, reason, date);
                 pipelineJob.saveAndRelease();
                 return;
             }
@@ -290,10 +701,17 @@ public class FileJobStore implements JobStore{
 
     @Override
     public void addMessage(String pipelineId, String jobId, MessageType type, String message) {
+        DefaultMessage msg = new DefaultMessage(new Date(), type, message);
+        if(journal){
+            Map<String, Object> record = createRecord(jobId, "message");
+            record.put("message", DefaultMessage.toMap(msg));
+            append(pipelineId, record);
+            return;
+        }
         FileStoreJob pipelineJob = lock(pipelineId);
         for (Job job1 : pipelineJob.getJobs()) {
             if(job1.getId().equals(jobId)){
-                job1.getMessages().add(new DefaultMessage(new Date(), type, message));
+                job1.getMessages().add(msg);
                 pipelineJob.saveAndRelease();
                 return;
             }
@@ -304,6 +722,12 @@ public class FileJobStore implements JobStore{
 
     @Override
     public void setProgress(String pipelineId, String jobId, int progress) {
+        if(journal){
+            Map<String, Object> record = createRecord(jobId, "progress");
+            record.put("progress", progress);
+            append(pipelineId, record);
+            return;
+        }
         FileStoreJob pipelineJob = lock(pipelineId);
         for (Job job1 : pipelineJob.getJobs()) {
             if(job1.getId().equals(jobId)){
@@ -316,16 +740,170 @@ public class FileJobStore implements JobStore{
     }
 
     @Override
-    public void save(Job job){
-        FileStoreJob pipelineJob = lock(job.getPipelineId());
-        int index = 0;
+    public void update(String pipelineId, String jobId, List<Message> messages, Integer progress) {
+        if(messages.isEmpty() && progress == null) return;
+        if(journal){
+            List<Map<String, Object>> records = new ArrayList<Map<String, Object>>();
+            for (Message message : messages) {
+                Map<String, Object> record = createRecord(jobId, "message");
+                record.put("message", DefaultMessage.toMap(message));
+                records.add(record);
+            }
+            if(progress != null){
+                Map<String, Object> record = createRecord(jobId, "progress");
+                record.put("progress", progress);
+                records.add(record);
+            }
+            append(pipelineId, records);
+            return;
+        }
+        FileStoreJob pipelineJob = lock(pipelineId);
         for (Job job1 : pipelineJob.getJobs()) {
-            if(job1.getId().equals(job.getId())){
-                pipelineJob.getJobs().set(index, job);
+            if(job1.getId().equals(jobId)){
+                job1.getMessages().addAll(messages);
+                if(progress != null){
+                    job1.setProgress(progress);
+                }
                 pipelineJob.saveAndRelease();
                 return;
             }
-            index++;
+        }
+        pipelineJob.release();
+    }
+
+    /**
+     * Create a new journal record for the given job
+     *
+     * @param jobId the job id
+     * @param type the record type
+     * @return record the new record
+     */
+    private static Map<String, Object> createRecord(String jobId, String type){
+        Map<String, Object> record = new HashMap<String, Object>();
+        record.put("job", jobId);
+        record.put("type", type);
+        return record;
+    }
+
+    /**
+     * Append a record to the pipeline journal and compact the journal
+     * if it grew beyond the compaction size
+     *
+     * @param pipelineId the pipeline job id
+     * @param record the record
+     */
+    private void append(String pipelineId, Map<String, Object> record){
+        append(pipelineId, Collections.singletonList(record));
+    }
+
+    /**
+     * Append records to the pipeline journal with a single lock and compact
+     * the journal if it grew beyond the compaction size
+     *
+     * @param pipelineId the pipeline job id
+     * @param records the records
+     */
+    private void append(String pipelineId, List<Map<String, Object>> records){
+        File file = getJobFile(pipelineId);
+        if(!file.exists()){
+            throw new RuntimeException("Storage file for job " + pipelineId + " not found !");
+        }
+        long length;
+        FileJobJournal journal = FileJobJournal.lock(getJournalFile(file, pipelineId));
+        try {
+            length = 0;
+            for (Map<String, Object> record : records) {
+                length = journal.append(codec.encode(record));
+            }
+        } finally {
+            journal.release();
+        }
+        if(length > compactionSize){
+            log.debug("Compacting journal of pipeline job {}", pipelineId);
+            compact(pipelineId);
+        }
+    }
+
+    /**
+     * Apply journal records to jobs. Records of other jobs are ignored.
+     *
+     * @param pipelineJobs the jobs
+     * @param records the encoded journal records
+     */
+    private void replay(Collection<? extends Job> pipelineJobs, List<byte[]> records){
+        if(records.isEmpty()) return;
+        Map<String, Job> jobs = new HashMap<String, Job>();
+        for (Job job : pipelineJobs) {
+            jobs.put(job.getId(), job);
+        }
+        for (byte[] data : records) {
+            Map record = getDecoder(data).decode(data);
+            Job job = jobs.get(record.get("job"));
+            if(job == null) continue;
+            String type = (String) record.get("type");
+            if(type.equals("state")){
+                applyState(job,
+                        JobState.valueOf((String) record.get("state")),
+                        (String) record.get("reason"),
+                        new Date(((Number) record.get("date")).longValue()));
+            }else if(type.equals("message")){
+                job.getMessages().add(new DefaultMessage((Map) record.get("message")));
+            }else if(type.equals("progress")){
+                job.setProgress(((Number) record.get("progress")).intValue());
+            }else{
+                log.warn("Ignoring unknown journal record type {}", type);
+            }
+        }
+    }
+
+    /**
+     * Set the state of a job and update its start and end dates
+     *
+     * @param job the job
+     * @param state the new state
+     * @param reason the state reason
+     * @param date the date of the state change
+     */
+    private static void applyState(Job job, JobState state, String reason, Date date){
+        job.setState(state);
+        job.setStateReason(reason);
+        if(state == JobState.Running){
+            job.getJobStats().setStartDate(date);
+            job.getJobStats().setEndDate(null);
+        }else if(state == JobState.Submitted ||state == JobState.Queued ){
+            job.getJobStats().setStartDate(null);
+            job.getJobStats().setEndDate(null);
+        }else if(state.isDoneState()){
+            job.getJobStats().setEndDate(date);
+        }
+    }
+
+    @Override
+    public void save(Job job){
+        save(Collections.singletonList(job));
+    }
+
+    @Override
+    public void save(List<Job> jobs){
+        if(jobs.isEmpty()) return;
+        Map<String, Job> updates = new HashMap<String, Job>();
+        for (Job job : jobs) {
+            updates.put(job.getId(), job);
+        }
+        FileStoreJob pipelineJob = lock(jobs.get(0).getPipelineId());
+        boolean found = false;
+        List<Job> pipelineJobs = pipelineJob.getJobs();
+        for (int i = 0; i < pipelineJobs.size(); i++) {
+            Job job = updates.get(pipelineJobs.get(i).getId());
+            if(job != null){
+                pipelineJobs.set(i, job);
+                found = true;
+            }
+        }
+        if(found){
+            pipelineJob.saveAndRelease();
+        }else{
+            pipelineJob.release();
         }
     }
 
@@ -336,18 +914,17 @@ public class FileJobStore implements JobStore{
      */
     private class FileStoreJob extends DefaultPipelineJob{
         /**
-         * The file lock
+         * The job file
          */
-        FileLock lock;
+        File file;
         /**
-         * The file channel
+         * The exclusive lock
          */
-        FileChannel channel;
-
+        FileLocks.Handle lock;
         /**
-         * Random access
+         * The locked journal or null
          */
-        RandomAccessFile rw;
+        FileJobJournal journal;
 
         public FileStoreJob(String id) {
             super(id);
@@ -361,51 +938,39 @@ public class FileJobStore implements JobStore{
             super(config);
         }
 
+        /**
+         * Publish a new snapshot and clear the journal
+         */
+        public void save(){
+            if(lock == null) return;
+            writeAtomic(file, codec.encode(DefaultPipelineJob.toMap(this)));
+            if(journal != null){
+                journal.truncate();
+            }
+            writeSummary(file, new DefaultPipelineSummary(this));
+        }
 
         public void saveAndRelease(){
-            if(lock == null || channel == null) return;
+            if(lock == null) return;
             try {
-                Map<String, Object> data = DefaultPipelineJob.toMap(this);
-                Gson gson = new Gson();
-                // to the beginning
-                rw.seek(0);
-                rw.setLength(0);
-                rw.writeChars(gson.toJson(data));
+                save();
             } catch (Exception e) {
-                log.error("Error while writing job file", e.getMessage(), e);
+                log.error("Error while writing job file {}", e.getMessage(), e);
                 throw new RuntimeException(e);
             } finally {
-                // Release the lock
-                if (rw != null) {
-                    try {rw.close();} catch (IOException ignore) {}
-                }
-                // Release the lock
-                if (lock != null) {
-                    try {lock.release();} catch (IOException ignore) {}
-                }
-                // Close the file
-                if (channel != null) {
-                    try {channel.close();} catch (IOException ignore) {}
-                }
-
+                release();
             }
-
         }
 
         public void release(){
-            if(lock == null || channel == null) return;
-            // Release the lock
-            if (rw != null) {
-                try {rw.close();} catch (IOException ignore) {}
+            if (journal != null) {
+                journal.release();
             }
-            // Release the lock
             if (lock != null) {
-                try {lock.release();} catch (IOException ignore) {}
-            }
-            // Close the file
-            if (channel != null) {
-                try {channel.close();} catch (IOException ignore) {}
+                lock.release();
             }
+            journal = null;
+            lock = null;
         }
 
     }
@@ -441,4 +1006,34 @@ public class FileJobStore implements JobStore{
             throw new UnsupportedOperationException();
         }
     }
+
+    private class SummaryIterable implements Iterable<PipelineSummary>, Iterator<PipelineSummary> {
+        private final Iterator<File> iterator;
+
+        public SummaryIterable(File[] files) {
+            this.iterator = Arrays.asList(files).iterator();
+        }
+
+        @Override
+        public Iterator<PipelineSummary> iterator() {
+            return this;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return iterator.hasNext();
+        }
+
+        @Override
+        public PipelineSummary next() {
+            File file = iterator.next();
+            String name = file.getName();
+            return getSummary(file, name.substring(0, name.length() - 4));
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
 }
@@ -0,0 +1,228 @@
+package jip.jobs;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Shared and exclusive file locks that work across processes and across
+ * threads of the same process.
+ * <p>
+ * File locks are held on behalf of the whole virtual machine, so two threads
+ * can not lock the same file independently, and closing any channel of a
+ * file might release all locks on it. This class therefore keeps a single
+ * channel per locked file and combines the file lock with a read write lock
+ * for the threads of this process. Shared holders in this process share one
+ * shared file lock. All access to a locked file should go through
+ * the channel of its handle.
+ * </p>
+ *
+ * @author Thasso Griebel <thasso.griebel@gmail.com>
+ */
+class FileLocks {
+    /**
+     * The logger
+     */
+    private static Logger log = LoggerFactory.getLogger(FileLocks.class);
+    /**
+     * Lock entries by absolute path
+     */
+    private static final Map<String, Entry> entries = new HashMap<String, Entry>();
+
+    private FileLocks() {
+    }
+
+    /**
+     * Block until an exclusive lock is acquired. The file is created if it
+     * does not exist
+     *
+     * @param file the file
+     * @return handle the lock handle that must be released
+     */
+    static Handle exclusive(File file){
+        return acquire(file, false);
+    }
+
+    /**
+     * Block until a shared lock is acquired. The file is created if it
+     * does not exist
+     *
+     * @param file the file
+     * @return handle the lock handle that must be released
+     */
+    static Handle shared(File file){
+        return acquire(file, true);
+    }
+
+    private static Handle acquire(File file, boolean shared){
+        Entry entry;
+        synchronized (entries){
+            String key = file.getAbsolutePath();
+            entry = entries.get(key);
+            if(entry == null){
+                entry = new Entry(key);
+                entries.put(key, entry);
+            }
+            entry.references++;
+        }
+        try {
+            if(shared){
+                entry.lock.readLock().lock();
+                try {
+                    synchronized (entry){
+                        if(entry.readers == 0){
+                            entry.open(true);
+                        }
+                        entry.readers++;
+                    }
+                } catch (IOException e) {
+                    entry.lock.readLock().unlock();
+                    throw e;
+                }
+            }else{
+                entry.lock.writeLock().lock();
+                try {
+                    entry.open(false);
+                } catch (IOException e) {
+                    entry.lock.writeLock().unlock();
+                    throw e;
+                }
+            }
+            return new Handle(entry, shared);
+        } catch (Exception e) {
+            log.error("Unable to lock {}", file, e);
+            dereference(entry);
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void dereference(Entry entry){
+        synchronized (entries){
+            if(--entry.references == 0){
+                entries.remove(entry.path);
+            }
+        }
+    }
+
+    /**
+     * A lock on a file
+     */
+    static class Handle {
+        /**
+         * The entry
+         */
+        private Entry entry;
+        /**
+         * Shared lock
+         */
+        private boolean shared;
+
+        private Handle(Entry entry, boolean shared) {
+            this.entry = entry;
+            this.shared = shared;
+        }
+
+        /**
+         * Get the channel of the locked file. Shared holders should only
+         * use positional reads as the channel is shared between threads
+         *
+         * @return channel the channel
+         */
+        FileChannel getChannel(){
+            if(entry == null) throw new IllegalStateException("Lock was already released");
+            return entry.channel;
+        }
+
+        /**
+         * Release the lock. Releasing a lock twice has no effect
+         */
+        void release(){
+            if(entry == null) return;
+            if(shared){
+                synchronized (entry){
+                    if(--entry.readers == 0){
+                        entry.close();
+                    }
+                }
+                entry.lock.readLock().unlock();
+            }else{
+                entry.close();
+                entry.lock.writeLock().unlock();
+            }
+            dereference(entry);
+            entry = null;
+        }
+    }
+
+    /**
+     * Lock state of a single file
+     */
+    private static class Entry {
+        /**
+         * The absolute path
+         */
+        final String path;
+        /**
+         * Lock for the threads of this process
+         */
+        final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        /**
+         * Number of handles and threads waiting for a handle
+         */
+        int references;
+        /**
+         * Number of shared holders
+         */
+        int readers;
+        /**
+         * The open file
+         */
+        RandomAccessFile file;
+        /**
+         * The channel
+         */
+        FileChannel channel;
+        /**
+         * The file lock
+         */
+        FileLock fileLock;
+
+        Entry(String path) {
+            this.path = path;
+        }
+
+        void open(boolean shared) throws IOException {
+            file = new RandomAccessFile(path, "rw");
+            try {
+                channel = file.getChannel();
+                fileLock = channel.lock(0L, Long.MAX_VALUE, shared);
+            } catch (IOException e) {
+                close();
+                throw e;
+            }
+        }
+
+        void close(){
+            if (fileLock != null) {
+                try {fileLock.release();} catch (IOException ignore) {}
+            }
+            if (channel != null) {
+                try {channel.close();} catch (IOException ignore) {}
+            }
+            if (file != null) {
+                try {file.close();} catch (IOException ignore) {}
+            }
+            fileLock = null;
+            channel = null;
+            file = null;
+        }
+    }
+}
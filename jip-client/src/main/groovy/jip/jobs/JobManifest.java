@@ -0,0 +1,360 @@
+package jip.jobs;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import jip.graph.FileParameter;
+import jip.tools.Parameter;
+import jip.tools.Tool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.*;
+
+/**
+ * Manifest of the jobs that finished in a working directory, used to skip
+ * jobs whose outputs are up to date. Each record identifies a job by a
+ * fingerprint of its tool name and configuration and stores the size and
+ * modification time of the job's input and output files, taken from the file
+ * parameters of the tool. A job is up to date if a record for its
+ * fingerprint exists, all outputs exist and no recorded file changed.
+ * <p>
+ * Records are appended to a {@link FileJobJournal} in the working directory,
+ * so jobs running concurrently on different hosts can record themselves.
+ * The last record of a fingerprint wins.
+ * </p>
+ *
+ * @author Thasso Griebel <thasso.griebel@gmail.com>
+ */
+public class JobManifest {
+    /**
+     * The logger
+     */
+    private static Logger log = LoggerFactory.getLogger(JobManifest.class);
+    /**
+     * Name of the manifest file in the working directory
+     */
+    public static final String FILE_NAME = ".jip-manifest";
+    /**
+     * Minimum number of records before a manifest is compacted
+     */
+    private static final int COMPACTION_RECORDS = 1024;
+
+    /**
+     * The manifest file
+     */
+    private File file;
+    /**
+     * The codec
+     */
+    private JobCodec codec = new BinaryJobCodec();
+    /**
+     * The recorded files by fingerprint, loaded on first access
+     */
+    private Map<String, Map<String, Object>> records;
+
+    /**
+     * Create the manifest of a working directory
+     *
+     * @param directory the working directory
+     */
+    public JobManifest(File directory) {
+        if(directory == null) throw new NullPointerException("NULL directory not permitted");
+        this.file = new File(directory, FILE_NAME);
+    }
+
+    /**
+     * Get the manifest file
+     *
+     * @return file the manifest file
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Returns true if the manifest file exists. Jobs are only recorded
+     * in existing manifests
+     *
+     * @return exists true if the manifest exists
+     */
+    public boolean exists() {
+        return file.exists();
+    }
+
+    /**
+     * Create the manifest file if it does not exist
+     */
+    public void create() {
+        try {
+            if(!file.exists() && !file.createNewFile() && !file.exists()){
+                throw new IOException("Unable to create " + file);
+            }
+        } catch (IOException e) {
+            log.error("Unable to create job manifest {}", file, e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Returns true if the job was recorded with the same fingerprint and
+     * none of its files changed since
+     *
+     * @param job the job
+     * @param tool the tool of the job
+     * @return upToDate true if the job does not have to be run
+     */
+    public boolean isUpToDate(Job job, Tool tool) {
+        String key = fingerprint(job);
+        if(key == null) return false;
+        Map<String, Object> recorded = getRecords().get(key);
+        if(recorded == null) return false;
+
+        List<File> outputs = getFiles(job, tool, true);
+        if(outputs.isEmpty()) return false;
+        for (File output : outputs) {
+            if(!output.exists()) return false;
+        }
+        Map<String, Object> current = stamp(outputs);
+        current.putAll(stamp(getFiles(job, tool, false)));
+        return current.equals(recorded);
+    }
+
+    /**
+     * Stamp the inputs of a job before it runs
+     *
+     * @param job the job
+     * @param tool the tool of the job
+     * @return pending the pending record or null if the job can not be recorded
+     */
+    public Pending start(Job job, Tool tool) {
+        String key = fingerprint(job);
+        if(key == null) return null;
+        return new Pending(key, job, tool, stamp(getFiles(job, tool, false)));
+    }
+
+    /**
+     * Stamp the outputs of a finished job and record it
+     *
+     * @param pending the pending record
+     * @return recorded true if the job was recorded, false if the job has no outputs or outputs are missing
+     */
+    public boolean record(Pending pending) {
+        List<File> outputs = getFiles(pending.job, pending.tool, true);
+        if(outputs.isEmpty()) return false;
+        for (File output : outputs) {
+            if(!output.exists()){
+                log.debug("Not recording {}, output {} does not exist", pending.job.getId(), output);
+                return false;
+            }
+        }
+        Map<String, Object> files = stamp(outputs);
+        files.putAll(pending.inputs);
+        Map<String, Object> record = new HashMap<String, Object>();
+        record.put("key", pending.key);
+        record.put("files", files);
+        FileJobJournal.append(file, codec.encode(record));
+        if(records != null){
+            records.put(pending.key, normalizeStamps(files));
+        }
+        return true;
+    }
+
+    /**
+     * Load the records, compacting the manifest if it contains
+     * more outdated than current records
+     *
+     * @return records the files by fingerprint
+     */
+    private Map<String, Map<String, Object>> getRecords() {
+        if(records != null) return records;
+        records = new HashMap<String, Map<String, Object>>();
+        if(!file.exists()) return records;
+        FileJobJournal journal = FileJobJournal.lock(file);
+        try {
+            List<byte[]> data = journal.read();
+            for (byte[] bytes : data) {
+                try {
+                    Map<String, Object> record = codec.decode(bytes);
+                    records.put((String) record.get("key"), normalizeStamps((Map<String, Object>) record.get("files")));
+                } catch (Exception e) {
+                    log.warn("Ignoring broken record in job manifest {} : {}", file, e.getMessage());
+                }
+            }
+            if(data.size() >= COMPACTION_RECORDS && data.size() > 2 * records.size()){
+                log.info("Compacting job manifest {}", file);
+                journal.truncate();
+                for (Map.Entry<String, Map<String, Object>> entry : records.entrySet()) {
+                    Map<String, Object> record = new HashMap<String, Object>();
+                    record.put("key", entry.getKey());
+                    record.put("files", entry.getValue());
+                    journal.append(codec.encode(record));
+                }
+            }
+        } finally {
+            journal.release();
+        }
+        return records;
+    }
+
+    /**
+     * Compute the fingerprint of a job
+     *
+     * @param job the job
+     * @return fingerprint the fingerprint or null if the configuration contains values that can not be fingerprinted
+     */
+    static String fingerprint(Job job) {
+        Hasher hasher = Hashing.sha1().newHasher();
+        hasher.putString(job.getToolName(), Charsets.UTF_8).putByte((byte) 0);
+        if(!hash(hasher, job.getConfiguration())) return null;
+        return hasher.hash().toString();
+    }
+
+    /**
+     * Hash a configuration value. Numbers are hashed by value, so configurations
+     * loaded by a codec that does not keep number types have the same fingerprint
+     *
+     * @param hasher the hasher
+     * @param value the value
+     * @return hashed false if the value contains values that can not be hashed
+     */
+    static boolean hash(Hasher hasher, Object value) {
+        if(value == null){
+            hasher.putByte((byte) 'n');
+        }else if(value instanceof Boolean){
+            hasher.putByte((byte) 'b').putBoolean((Boolean) value);
+        }else if(value instanceof Number){
+            String number = value.toString();
+            try {
+                number = new BigDecimal(number).stripTrailingZeros().toPlainString();
+            } catch (NumberFormatException ignore) {
+                // NaN and infinity
+            }
+            hasher.putByte((byte) 'd').putString(number, Charsets.UTF_8).putByte((byte) 0);
+        }else if(value instanceof CharSequence || value instanceof FileParameter || value instanceof Enum){
+            hasher.putByte((byte) 's').putString(value.toString(), Charsets.UTF_8).putByte((byte) 0);
+        }else if(value instanceof Map){
+            TreeMap<String, Object> sorted = new TreeMap<String, Object>();
+            for (Map.Entry<?, ?> e : ((Map<?, ?>) value).entrySet()) {
+                sorted.put(String.valueOf(e.getKey()), e.getValue());
+            }
+            hasher.putByte((byte) 'm').putInt(sorted.size());
+            for (Map.Entry<String, Object> e : sorted.entrySet()) {
+                hasher.putString(e.getKey(), Charsets.UTF_8).putByte((byte) 0);
+                if(!hash(hasher, e.getValue())) return false;
+            }
+        }else if(value instanceof Collection || value instanceof Object[]){
+            Collection<?> source = value instanceof Collection ? (Collection<?>) value : Arrays.asList((Object[]) value);
+            hasher.putByte((byte) 'l').putInt(source.size());
+            for (Object element : source) {
+                if(!hash(hasher, element)) return false;
+            }
+        }else{
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Get the input or output files of a job. Relative paths are resolved
+     * against the working directory of the job
+     *
+     * @param job the job
+     * @param tool the tool of the job
+     * @param outputs return the outputs if true, otherwise all other file parameters
+     * @return files the files
+     */
+    static List<File> getFiles(Job job, Tool tool, boolean outputs) {
+        List<File> files = new ArrayList<File>();
+        Map configuration = job.getConfiguration();
+        if(configuration == null || tool == null || tool.getParameter() == null) return files;
+        for (Parameter parameter : tool.getParameter().values()) {
+            if(!parameter.isFile() || parameter.isOutput() != outputs) continue;
+            Object value = configuration.get(parameter.getName());
+            if(value == null) continue;
+            Collection<?> values;
+            if(value instanceof Collection){
+                values = (Collection<?>) value;
+            }else if(value instanceof Object[]){
+                values = Arrays.asList((Object[]) value);
+            }else{
+                values = Collections.singletonList(value);
+            }
+            for (Object element : values) {
+                if(element == null) continue;
+                File path = new File(element.toString());
+                if(!path.isAbsolute() && job.getWorkingDirectory() != null){
+                    path = new File(job.getWorkingDirectory(), element.toString());
+                }
+                files.add(path);
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Get the size and modification time of files. Missing files are stamped
+     * with a size of -1
+     *
+     * @param files the files
+     * @return stamps the stamps by absolute path
+     */
+    private static Map<String, Object> stamp(List<File> files) {
+        Map<String, Object> stamps = new HashMap<String, Object>();
+        for (File f : files) {
+            List<Long> stamp = f.exists() ? Arrays.asList(f.length(), f.lastModified()) : Arrays.asList(-1L, 0L);
+            stamps.put(f.getAbsolutePath(), stamp);
+        }
+        return stamps;
+    }
+
+    /**
+     * Convert decoded stamps to lists of longs so they can be compared
+     *
+     * @param stamps the decoded stamps
+     * @return stamps the stamps with long values
+     */
+    private static Map<String, Object> normalizeStamps(Map<String, Object> stamps) {
+        Map<String, Object> normalized = new HashMap<String, Object>();
+        for (Map.Entry<String, Object> e : stamps.entrySet()) {
+            List<Long> values = new ArrayList<Long>();
+            for (Object v : (Collection<?>) e.getValue()) {
+                values.add(((Number) v).longValue());
+            }
+            normalized.put(e.getKey(), values);
+        }
+        return normalized;
+    }
+
+    /**
+     * A job whose inputs were stamped before it started
+     */
+    public static class Pending {
+        /**
+         * The fingerprint
+         */
+        private String key;
+        /**
+         * The job
+         */
+        private Job job;
+        /**
+         * The tool
+         */
+        private Tool tool;
+        /**
+         * The input stamps
+         */
+        private Map<String, Object> inputs;
+
+        private Pending(String key, Job job, Tool tool, Map<String, Object> inputs) {
+            this.key = key;
+            this.job = job;
+            this.tool = tool;
+            this.inputs = inputs;
+        }
+    }
+}
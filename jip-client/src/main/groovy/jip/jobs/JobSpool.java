@@ -0,0 +1,267 @@
+package jip.jobs;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Message channel between a running job script and the process that
+ * executes the job. The job script helpers append one line per message
+ * to the spool file, using only shell builtins, and a background thread
+ * of the executing process drains the file periodically and sends the
+ * updates to the job store in batches. Consecutive progress updates
+ * are collapsed to the latest value.
+ * <p>
+ * Lines have the form <code>&lt;type&gt; &lt;text&gt;</code> where type is
+ * one of info, warn, error or progress. Backslashes and newlines in the
+ * text are escaped as <code>\\</code> and <code>\n</code>.
+ * </p>
+ *
+ * @author Thasso Griebel <thasso.griebel@gmail.com>
+ */
+public class JobSpool {
+    /**
+     * The logger
+     */
+    private static Logger log = LoggerFactory.getLogger(JobSpool.class);
+    /**
+     * Default drain interval in milliseconds
+     */
+    public static final long DEFAULT_INTERVAL = 1000;
+    /**
+     * UTF-8 charset
+     */
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    /**
+     * Open spools by pipeline and job id
+     */
+    private static final Map<String, JobSpool> spools = new HashMap<String, JobSpool>();
+
+    /**
+     * The job
+     */
+    private Job job;
+    /**
+     * The job store
+     */
+    private JobStore store;
+    /**
+     * The spool file
+     */
+    private File file;
+    /**
+     * Number of bytes already drained
+     */
+    private long position;
+    /**
+     * The drain thread
+     */
+    private Thread drainer;
+    /**
+     * Closed flag
+     */
+    private volatile boolean closed;
+    /**
+     * Monitor used to wake the drain thread when the spool is closed. The
+     * thread is never interrupted, an interrupt during a store update would
+     * close the lock channels shared by all jobs of the pipeline.
+     */
+    private final Object signal = new Object();
+
+    private JobSpool(Job job, JobStore store, File file) {
+        this.job = job;
+        this.store = store;
+        this.file = file;
+    }
+
+    /**
+     * Create a spool for the given job that is drained every second
+     *
+     * @param job the job
+     * @param store the job store that receives the updates
+     * @return spool the open spool that must be closed
+     */
+    public static JobSpool open(Job job, JobStore store){
+        return open(job, store, DEFAULT_INTERVAL);
+    }
+
+    /**
+     * Create a spool for the given job
+     *
+     * @param job the job
+     * @param store the job store that receives the updates
+     * @param interval the drain interval in milliseconds
+     * @return spool the open spool that must be closed
+     */
+    public static JobSpool open(Job job, JobStore store, final long interval){
+        File file;
+        try {
+            file = File.createTempFile("jip-" + job.getPipelineId() + "-" + job.getId() + "-", ".spool");
+        } catch (IOException e) {
+            log.error("Unable to create spool file for {}-{}", job.getPipelineId(), job.getId());
+            throw new RuntimeException(e);
+        }
+        final JobSpool spool = new JobSpool(job, store, file);
+        synchronized (spools){
+            spools.put(key(job), spool);
+        }
+        spool.drainer = new Thread("jip-spool-" + job.getPipelineId() + "-" + job.getId()){
+            @Override
+            public void run() {
+                while(true){
+                    synchronized (spool.signal){
+                        if(spool.closed) return;
+                        try {
+                            spool.signal.wait(interval);
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                        if(spool.closed) return;
+                    }
+                    spool.drain();
+                }
+            }
+        };
+        spool.drainer.setDaemon(true);
+        spool.drainer.start();
+        return spool;
+    }
+
+    /**
+     * Get the spool file of an open spool
+     *
+     * @param job the job
+     * @return file the spool file or null if no spool is open for the job
+     */
+    public static File getFile(Job job){
+        synchronized (spools){
+            JobSpool spool = spools.get(key(job));
+            return spool == null ? null : spool.file;
+        }
+    }
+
+    private static String key(Job job){
+        return job.getPipelineId() + "-" + job.getId();
+    }
+
+    /**
+     * Get the spool file
+     *
+     * @return file the spool file
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Stop the drain thread, send remaining updates and delete the spool file
+     */
+    public void close(){
+        synchronized (signal){
+            if(closed) return;
+            closed = true;
+            signal.notifyAll();
+        }
+        try {
+            drainer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        drain();
+        synchronized (spools){
+            spools.remove(key(job));
+        }
+        file.delete();
+    }
+
+    /**
+     * Read all complete lines that were appended since the last call and
+     * send them to the job store with a single update
+     */
+    synchronized void drain(){
+        byte[] data;
+        RandomAccessFile in = null;
+        try {
+            in = new RandomAccessFile(file, "r");
+            long length = in.length();
+            if(length <= position) return;
+            data = new byte[(int) (length - position)];
+            in.seek(position);
+            in.readFully(data);
+        } catch (IOException e) {
+            log.warn("Unable to read spool file {} : {}", file, e.getMessage());
+            return;
+        } finally {
+            if(in != null){
+                try {in.close();} catch (IOException ignore) {}
+            }
+        }
+        // only consume complete lines, the script might still be writing
+        int end = data.length;
+        while(end > 0 && data[end - 1] != '\n') end--;
+        if(end == 0) return;
+
+        List<Message> messages = new ArrayList<Message>();
+        Integer progress = null;
+        Date date = new Date();
+        for (String line : new String(data, 0, end, UTF8).split("\n")) {
+            if(line.length() == 0) continue;
+            int split = line.indexOf(' ');
+            String type = split < 0 ? line : line.substring(0, split);
+            String text = split < 0 ? "" : unescape(line.substring(split + 1));
+            if(type.equals("progress")){
+                try {
+                    progress = Integer.parseInt(text.trim());
+                } catch (NumberFormatException e) {
+                    log.warn("Ignoring invalid progress {} of {}-{}", new Object[]{text, job.getPipelineId(), job.getId()});
+                }
+            }else if(type.equals("info")){
+                messages.add(new DefaultMessage(date, MessageType.Info, text));
+            }else if(type.equals("warn")){
+                messages.add(new DefaultMessage(date, MessageType.Warn, text));
+            }else if(type.equals("error")){
+                messages.add(new DefaultMessage(date, MessageType.Error, text));
+            }else{
+                log.warn("Ignoring unknown spool entry {} of {}-{}", new Object[]{line, job.getPipelineId(), job.getId()});
+            }
+        }
+        try {
+            store.update(job.getPipelineId(), job.getId(), messages, progress);
+            // failed updates are sent again with the next drain
+            position += end;
+        } catch (Exception e) {
+            // updates are informative and must not fail the job
+            log.error("Unable to store updates of {}-{} : {}", new Object[]{job.getPipelineId(), job.getId(), e.getMessage()});
+        }
+    }
+
+    /**
+     * Reverse the escaping of the job script helpers
+     *
+     * @param text the escaped text
+     * @return text the text with backslashes and newlines restored
+     */
+    static String unescape(String text){
+        if(text.indexOf('\\') < 0) return text;
+        StringBuilder b = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if(c == '\\' && i + 1 < text.length()){
+                char next = text.charAt(++i);
+                b.append(next == 'n' ? '\n' : next);
+            }else{
+                b.append(c);
+            }
+        }
+        return b.toString();
+    }
+}
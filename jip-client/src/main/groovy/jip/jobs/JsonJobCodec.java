@@ -0,0 +1,61 @@
+package jip.jobs;
+
+import com.google.gson.Gson;
+import jip.plugin.Extension;
+
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * UTF-8 JSON codec. The codec also decodes the UTF-16 documents
+ * that were written by older versions of the job store.
+ *
+ * @author Thasso Griebel <thasso.griebel@gmail.com>
+ */
+@Extension
+public class JsonJobCodec implements JobCodec{
+    /**
+     * The codec name
+     */
+    public static final String NAME = "json";
+    /**
+     * UTF-8 charset
+     */
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    /**
+     * UTF-16 charset used by <code>RandomAccessFile.writeChars()</code>
+     */
+    private static final Charset UTF16 = Charset.forName("UTF-16BE");
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public boolean canDecode(byte[] data) {
+        return data.length > 0 && data[0] == '{' || isUtf16(data);
+    }
+
+    @Override
+    public byte[] encode(Map<String, Object> data) {
+        return new Gson().toJson(data).getBytes(UTF8);
+    }
+
+    @Override
+    public Map<String, Object> decode(byte[] data) {
+        String content = new String(data, isUtf16(data) ? UTF16 : UTF8);
+        return new Gson().fromJson(content, HashMap.class);
+    }
+
+    /**
+     * Returns true if the data is a UTF-16 encoded JSON document
+     *
+     * @param data the data
+     * @return utf16 true if the data is UTF-16 encoded
+     */
+    static boolean isUtf16(byte[] data){
+        return data.length > 1 && data[0] == 0 && data[1] == '{';
+    }
+}
@@ -0,0 +1,368 @@
+package jip.jobs;
+
+import jip.graph.CompactGraph;
+import jip.tools.ExecuteEnvironment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Executes the jobs of a pipeline on the local machine. A job is dispatched
+ * as soon as all its dependencies that are part of the execution finished
+ * successfully and at most <code>parallelism</code> jobs run at the same time.
+ * <p>
+ * If a job fails, all jobs that depend on it directly or indirectly are
+ * canceled, while independent branches of the pipeline continue to run.
+ * </p>
+ * <p>
+ * Jobs are packed onto the machine by the threads and memory declared in
+ * their {@link ExecuteEnvironment}. The memory is per thread, as it is for
+ * the cluster, so a job reserves its maximum memory times its threads. A ready
+ * job is only started if its threads and memory fit into what is left of the
+ * machine capacity, otherwise
+ * it is queued and later ready jobs that fit may start first. Jobs that request
+ * more than the whole machine are limited to the capacity and run alone.
+ * </p>
+ * <p>
+ * To keep large jobs from starving behind a stream of small ones, a queued job
+ * that was passed by <code>bypassLimit</code> dispatched jobs reserves the
+ * capacity that is freed and no job behind it is started until it runs.
+ * </p>
+ *
+ * @author Thasso Griebel <thasso.griebel@gmail.com>
+ */
+public class LocalExecutor {
+    /**
+     * The logger
+     */
+    private static Logger log = LoggerFactory.getLogger(LocalExecutor.class);
+    /**
+     * Default number of jobs that may pass a queued job
+     */
+    public static final int DEFAULT_BYPASS_LIMIT = 8;
+
+    /**
+     * Maximum number of concurrent jobs
+     */
+    private int parallelism;
+
+    /**
+     * Number of threads available to jobs
+     */
+    private int threads;
+
+    /**
+     * Memory in megabytes available to jobs
+     */
+    private long memory;
+
+    /**
+     * Number of jobs that may be dispatched while a job waits for resources
+     * before the job reserves the capacity
+     */
+    private int bypassLimit = DEFAULT_BYPASS_LIMIT;
+
+    /**
+     * Create a new executor that only limits the number of concurrent jobs
+     *
+     * @param parallelism maximum number of concurrent jobs, values less than 1
+     *                    use the number of available processors
+     */
+    public LocalExecutor(int parallelism) {
+        this(parallelism < 1 ? Runtime.getRuntime().availableProcessors() : parallelism, Integer.MAX_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * Create a new executor that schedules jobs by their declared
+     * threads and memory
+     *
+     * @param parallelism maximum number of concurrent jobs, values less than 1 do not
+     *                    limit the number of jobs
+     * @param threads number of threads available to jobs, values less than 1 use the
+     *                number of available processors
+     * @param memory memory in megabytes available to jobs, values less than 1 use the
+     *               physical memory of the machine
+     */
+    public LocalExecutor(int parallelism, int threads, long memory) {
+        this.parallelism = parallelism < 1 ? Integer.MAX_VALUE : parallelism;
+        this.threads = threads < 1 ? Runtime.getRuntime().availableProcessors() : threads;
+        this.memory = memory < 1 ? getPhysicalMemory() : memory;
+    }
+
+    /**
+     * Detect the physical memory of the machine
+     *
+     * @return memory the memory in megabytes or Long.MAX_VALUE if it can not be detected
+     */
+    static long getPhysicalMemory(){
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if(os instanceof com.sun.management.OperatingSystemMXBean){
+            long bytes = ((com.sun.management.OperatingSystemMXBean) os).getTotalPhysicalMemorySize();
+            if(bytes > 0) return bytes / (1024 * 1024);
+        }
+        log.warn("Unable to detect physical memory, jobs are not limited by memory");
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * Get the maximum number of concurrent jobs
+     *
+     * @return parallelism the maximum number of concurrent jobs
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Get the number of threads available to jobs
+     *
+     * @return threads the number of threads
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Get the memory available to jobs
+     *
+     * @return memory the memory in megabytes
+     */
+    public long getMemory() {
+        return memory;
+    }
+
+    /**
+     * Get the number of jobs that may pass a job that waits for resources
+     *
+     * @return bypassLimit the number of jobs
+     */
+    public int getBypassLimit() {
+        return bypassLimit;
+    }
+
+    /**
+     * Set the number of jobs that may pass a job that waits for resources
+     * before no other job is started until it runs
+     *
+     * @param bypassLimit the number of jobs, values less than 0 never reserve capacity
+     */
+    public void setBypassLimit(int bypassLimit) {
+        this.bypassLimit = bypassLimit;
+    }
+
+    /**
+     * Execute the given jobs and block until all jobs are finished or
+     * canceled. Dependencies that are not part of the given jobs are
+     * considered finished. Ready jobs that fit into the free resources
+     * are dispatched in iteration order unless an earlier job reserved the
+     * capacity.
+     *
+     * @param jobs the jobs in topological order
+     * @param runner the job runner
+     * @return states the final state of every job, either Done, Failed or Canceled
+     * @throws InterruptedException if the calling thread is interrupted while waiting
+     */
+    public Map<Job, JobState> execute(Iterable<Job> jobs, final JobRunner runner) throws InterruptedException {
+        CompactGraph.Builder<Job> builder = new CompactGraph.Builder<Job>();
+        for (Job job : jobs) {
+            builder.addNode(job);
+        }
+        for (Job job : jobs) {
+            for (Job before : job.getDependenciesBefore()) {
+                if(builder.contains(before)) builder.addEdge(before, job);
+            }
+        }
+        return execute(builder.build(), runner);
+    }
+
+    /**
+     * Execute the jobs of the given graph and block until all jobs are finished
+     * or canceled. Ready jobs that fit into the free resources are dispatched
+     * in topological order unless an earlier job reserved the capacity.
+     *
+     * @param graph the job graph
+     * @param runner the job runner
+     * @return states the final state of every job, either Done, Failed or Canceled
+     * @throws InterruptedException if the calling thread is interrupted while waiting
+     */
+    public Map<Job, JobState> execute(CompactGraph<Job> graph, final JobRunner runner) throws InterruptedException {
+        int size = graph.size();
+        Map<Job, JobState> states = new LinkedHashMap<Job, JobState>();
+        JobState[] finished = new JobState[size];
+        int[] waiting = new int[size];
+        // ready jobs in the order they became ready
+        int[] ready = new int[size];
+        int readyCount = 0;
+        for (int i = 0; i < size; i++) {
+            waiting[i] = graph.inDegree(i);
+            if(waiting[i] == 0) ready[readyCount++] = i;
+        }
+        // resources are computed once per job, -1 marks jobs without a request
+        int[] requestThreads = new int[size];
+        long[] requestMemory = new long[size];
+        Arrays.fill(requestThreads, -1);
+        // number of dispatched jobs when a job was first queued for resources, -1 if never
+        int[] queuedAt = new int[size];
+        Arrays.fill(queuedAt, -1);
+        int dispatched = 0;
+
+        final LinkedBlockingQueue<Result> done = new LinkedBlockingQueue<Result>();
+        // the number of running jobs is limited by the scheduling below
+        ExecutorService pool = Executors.newCachedThreadPool();
+        int freeThreads = threads;
+        long freeMemory = memory;
+        int running = 0;
+        try {
+            while(running > 0 || readyCount > 0){
+                int kept = 0;
+                boolean reserved = false;
+                for (int r = 0; r < readyCount; r++) {
+                    final int node = ready[r];
+                    if(running >= parallelism || reserved){
+                        ready[kept++] = node;
+                        continue;
+                    }
+                    if(requestThreads[node] < 0){
+                        requestResources(graph.get(node), node, requestThreads, requestMemory);
+                    }
+                    if(requestThreads[node] > freeThreads || requestMemory[node] > freeMemory){
+                        if(queuedAt[node] < 0) queuedAt[node] = dispatched;
+                        // the job waited long enough, keep the capacity for it
+                        reserved = bypassLimit >= 0 && dispatched - queuedAt[node] >= bypassLimit;
+                        ready[kept++] = node;
+                        continue;
+                    }
+                    freeThreads -= requestThreads[node];
+                    freeMemory -= requestMemory[node];
+                    running++;
+                    dispatched++;
+                    final Job job = graph.get(node);
+                    pool.submit(new Runnable() {
+                        @Override
+                        public void run() {
+                            boolean success = false;
+                            try {
+                                success = runner.run(job);
+                            } catch (Throwable e) {
+                                log.error("Job execution for {}-{} failed : {}", new Object[]{job.getPipelineId(), job.getId(), e.getMessage()});
+                            } finally {
+                                done.add(new Result(node, success));
+                            }
+                        }
+                    });
+                }
+                readyCount = kept;
+
+                Result result = done.take();
+                int node = result.node;
+                running--;
+                freeThreads += requestThreads[node];
+                freeMemory += requestMemory[node];
+                if(result.success){
+                    finished[node] = JobState.Done;
+                    states.put(graph.get(node), JobState.Done);
+                    for (int i = 0; i < graph.outDegree(node); i++) {
+                        int after = graph.successor(node, i);
+                        if(finished[after] == null && --waiting[after] == 0) ready[readyCount++] = after;
+                    }
+                }else{
+                    finished[node] = JobState.Failed;
+                    states.put(graph.get(node), JobState.Failed);
+                    cancel(graph, node, finished, states, runner);
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return states;
+    }
+
+    /**
+     * Get the resources of a job, limited to the capacity of the machine
+     */
+    private void requestResources(Job job, int node, int[] requestThreads, long[] requestMemory){
+        ExecuteEnvironment env = job.getExecuteEnvironment();
+        int jobThreads = env == null ? 1 : Math.max(1, env.getThreads());
+        // the maximum memory is per thread
+        long jobMemory = env == null ? 0 : Math.max(0, env.getMaxMemory()) * jobThreads;
+        if(jobThreads > threads || jobMemory > memory){
+            log.warn("{}-{} requests more resources than available and will run alone", job.getPipelineId(), job.getId());
+        }
+        requestThreads[node] = Math.min(jobThreads, threads);
+        requestMemory[node] = Math.min(jobMemory, memory);
+    }
+
+    /**
+     * Cancel all jobs that depend on the given failed job
+     */
+    private void cancel(CompactGraph<Job> graph, int failed, JobState[] finished, Map<Job, JobState> states, JobRunner runner){
+        Job failedJob = graph.get(failed);
+        int[] queue = new int[graph.size()];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = failed;
+        while(head < tail){
+            int node = queue[head++];
+            for (int i = 0; i < graph.outDegree(node); i++) {
+                int after = graph.successor(node, i);
+                if(finished[after] != null) continue;
+                Job job = graph.get(after);
+                log.info("Canceling {}-{}, dependency {} failed", new Object[]{job.getPipelineId(), job.getId(), failedJob.getId()});
+                finished[after] = JobState.Canceled;
+                states.put(job, JobState.Canceled);
+                runner.canceled(job, failedJob);
+                queue[tail++] = after;
+            }
+        }
+    }
+
+    /**
+     * Runs single jobs for the executor. Implementations must be thread safe
+     */
+    public static interface JobRunner {
+        /**
+         * Run the job
+         *
+         * @param job the job
+         * @return success true if the job finished successfully
+         * @throws Exception in case the job failed
+         */
+        boolean run(Job job) throws Exception;
+
+        /**
+         * Called from the executing thread when a job is canceled
+         * because one of its dependencies failed
+         *
+         * @param job the canceled job
+         * @param cause the failed job
+         */
+        void canceled(Job job, Job cause);
+    }
+
+    /**
+     * Result of a single job execution
+     */
+    private static class Result {
+        /**
+         * The job node
+         */
+        int node;
+        /**
+         * Success flag
+         */
+        boolean success;
+
+        Result(int node, boolean success) {
+            this.node = node;
+            this.success = success;
+        }
+    }
+}
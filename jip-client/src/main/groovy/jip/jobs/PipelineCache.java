@@ -0,0 +1,246 @@
+package jip.jobs;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+import jip.graph.FileParameter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+
+/**
+ * Content addressed cache of created pipelines. An entry is identified by
+ * the tool name, the working directory, the normalized configuration,
+ * the digests of all evaluated tool definitions, the targets and the JIP build, and
+ * stores the jobs of the pipeline, including their configurations and
+ * dependencies, encoded with the {@link BinaryJobCodec}.
+ * <p>
+ * Configuration values are normalized to strings, numbers, booleans, maps
+ * and lists. File parameters are stored as their path, the same way they
+ * are passed to a tool that runs a job loaded from the job store.
+ * Configurations that contain any other values, for example closures,
+ * can not be cached.
+ * </p>
+ *
+ * @author Thasso Griebel <thasso.griebel@gmail.com>
+ */
+public class PipelineCache {
+    /**
+     * The logger
+     */
+    private static Logger log = LoggerFactory.getLogger(PipelineCache.class);
+    /**
+     * Marks values that can not be cached
+     */
+    private static final Object UNCACHEABLE = new Object();
+    /**
+     * The build properties, part of every key
+     */
+    private static byte[] buildInfo;
+
+    /**
+     * The cache directory
+     */
+    private File directory;
+    /**
+     * The codec
+     */
+    private JobCodec codec = new BinaryJobCodec();
+
+    /**
+     * Create a new cache that stores entries in the given directory
+     *
+     * @param directory the cache directory
+     */
+    public PipelineCache(File directory) {
+        if(directory == null) throw new NullPointerException("NULL cache directory not permitted");
+        this.directory = directory;
+    }
+
+    /**
+     * Get the cache directory
+     *
+     * @return directory the cache directory
+     */
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Compute the cache key of a pipeline
+     *
+     * @param toolName the tool name
+     * @param cfg the absolute configuration
+     * @param cwd the working directory
+     * @param definitions digests of the evaluated tool definitions
+     * @param targets the targets the pipeline is pruned to or null
+     * @return key the key or null if the configuration can not be cached
+     */
+    public String key(String toolName, Map cfg, File cwd, Collection<String> definitions, Collection<String> targets) {
+        Object configuration = normalize(cfg == null ? Collections.emptyMap() : cfg);
+        if(configuration == UNCACHEABLE) return null;
+
+        Hasher hasher = Hashing.sha1().newHasher();
+        hasher.putString(toolName, Charsets.UTF_8).putByte((byte) 0);
+        hasher.putString(cwd.getAbsolutePath(), Charsets.UTF_8).putByte((byte) 0);
+        // definitions are sorted so the load order does not matter
+        for (String definition : new TreeSet<String>(definitions)) {
+            hasher.putString(definition, Charsets.UTF_8).putByte((byte) 0);
+        }
+        hasher.putByte((byte) 1);
+        if(targets != null){
+            for (String target : new TreeSet<String>(targets)) {
+                hasher.putString(target, Charsets.UTF_8).putByte((byte) 0);
+            }
+        }
+        hasher.putBytes(getBuildInfo());
+        hasher.putBytes(codec.encode((Map<String, Object>) configuration));
+        return hasher.hash().toString();
+    }
+
+    /**
+     * Returns true if an entry exists for the given key
+     *
+     * @param key the cache key
+     * @return exists true if the entry exists
+     */
+    public boolean contains(String key) {
+        return getFile(key).exists();
+    }
+
+    /**
+     * Load a cached pipeline and assign it to the given pipeline id
+     *
+     * @param key the cache key
+     * @param pipelineId the new pipeline id
+     * @return pipeline the pipeline or null if no entry exists
+     */
+    public PipelineJob get(String key, String pipelineId) {
+        File file = getFile(key);
+        if(!file.exists()) return null;
+        Map<String, Object> data;
+        try {
+            data = codec.decode(Files.toByteArray(file));
+        } catch (Exception e) {
+            // a broken entry is a miss and gets replaced
+            log.warn("Unable to read cached pipeline {} : {}", file, e.getMessage());
+            return null;
+        }
+        data.put("id", pipelineId);
+        for (Map job : (List<Map>) data.get("jobs")) {
+            job.put("pipelineId", pipelineId);
+        }
+        return new DefaultPipelineJob(data);
+    }
+
+    /**
+     * Store a pipeline
+     *
+     * @param key the cache key
+     * @param pipelineJob the pipeline
+     * @return stored true if the pipeline was stored, false if the job configurations can not be cached
+     */
+    public boolean put(String key, PipelineJob pipelineJob) {
+        Map<String, Object> data = DefaultPipelineJob.toMap(pipelineJob);
+        for (Map job : (List<Map>) data.get("jobs")) {
+            Object configuration = normalize(job.get("configuration"));
+            if(configuration == UNCACHEABLE) return false;
+            job.put("configuration", configuration);
+        }
+        File file = getFile(key);
+        File tmp = null;
+        try {
+            if(!directory.exists() && !directory.mkdirs() && !directory.exists()){
+                throw new IOException("Unable to create cache directory " + directory);
+            }
+            // concurrent writers store the same content, the last rename wins
+            tmp = File.createTempFile("." + key, ".tmp", directory);
+            Files.write(codec.encode(data), tmp);
+            if(!tmp.renameTo(file)){
+                file.delete();
+                if(!tmp.renameTo(file)){
+                    throw new IOException("Unable to rename " + tmp + " to " + file);
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            // the cache is an optimization, failing to write is not fatal
+            log.warn("Unable to cache pipeline {} : {}", key, e.getMessage());
+            if(tmp != null) tmp.delete();
+            return false;
+        }
+    }
+
+    /**
+     * Get the file of an entry
+     *
+     * @param key the key
+     * @return file the entry file
+     */
+    private File getFile(String key) {
+        return new File(directory, key);
+    }
+
+    /**
+     * Convert a value to strings, numbers, booleans, sorted maps and lists
+     *
+     * @param value the value
+     * @return normalized the normalized value or {@link #UNCACHEABLE}
+     */
+    private static Object normalize(Object value) {
+        if(value == null || value instanceof String || value instanceof Boolean || value instanceof Number){
+            return value;
+        }
+        if(value instanceof CharSequence || value instanceof FileParameter){
+            return value.toString();
+        }
+        if(value instanceof Map){
+            TreeMap<String, Object> map = new TreeMap<String, Object>();
+            for (Map.Entry<?, ?> e : ((Map<?, ?>) value).entrySet()) {
+                Object v = normalize(e.getValue());
+                if(v == UNCACHEABLE) return UNCACHEABLE;
+                map.put(String.valueOf(e.getKey()), v);
+            }
+            return map;
+        }
+        if(value instanceof Collection || value instanceof Object[]){
+            Collection<?> source = value instanceof Collection ? (Collection<?>) value : Arrays.asList((Object[]) value);
+            ArrayList<Object> list = new ArrayList<Object>(source.size());
+            for (Object element : source) {
+                Object v = normalize(element);
+                if(v == UNCACHEABLE) return UNCACHEABLE;
+                list.add(v);
+            }
+            return list;
+        }
+        return UNCACHEABLE;
+    }
+
+    /**
+     * Get the content of the build properties
+     *
+     * @return build the build properties or an empty array
+     */
+    private static synchronized byte[] getBuildInfo() {
+        if(buildInfo == null){
+            buildInfo = new byte[0];
+            InputStream in = PipelineCache.class.getResourceAsStream("/jip-client-build.properties");
+            if(in != null){
+                try {
+                    buildInfo = ByteStreams.toByteArray(in);
+                } catch (IOException e) {
+                    log.warn("Unable to read build properties : {}", e.getMessage());
+                } finally {
+                    try { in.close(); } catch (IOException ignore) {}
+                }
+            }
+        }
+        return buildInfo;
+    }
+}
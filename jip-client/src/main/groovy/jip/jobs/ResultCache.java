@@ -0,0 +1,427 @@
+package jip.jobs;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import jip.tools.Parameter;
+import jip.tools.Tool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Content addressed cache of job outputs that can be shared between
+ * pipelines and users. An entry is identified by the tool name and version,
+ * the configuration of the job and the content of its input files. Input file
+ * parameters are replaced by the SHA-1 of the file content and output file
+ * parameters by their extension, so jobs that write the same result to
+ * different paths share an entry.
+ * <p>
+ * Each entry is a directory that holds a read only copy of every output.
+ * Outputs are restored as writable copies. If linking is enabled they are
+ * restored as hard links instead, unless the cache and the working directory
+ * are on different file systems. Linked outputs share the read only file of
+ * the cache, so tools that later write to the same path in place fail until
+ * the output is removed. Restoring an entry updates
+ * its modification time, and the least recently used entries are evicted
+ * when the cache grows beyond its maximum size.
+ * </p>
+ * <p>
+ * Content hashes are expensive for large inputs like shared references, so they
+ * are remembered by path, size and modification time in the <code>hashes</code>
+ * journal of the cache directory.
+ * </p>
+ *
+ * @author Thasso Griebel <thasso.griebel@gmail.com>
+ */
+public class ResultCache {
+    /**
+     * The logger
+     */
+    private static Logger log = LoggerFactory.getLogger(ResultCache.class);
+    /**
+     * Name of the content hash journal
+     */
+    private static final String HASHES = "hashes";
+    /**
+     * Minimum number of content hash records before the journal is compacted
+     */
+    private static final int COMPACTION_RECORDS = 4096;
+
+    /**
+     * The cache directory
+     */
+    private File directory;
+    /**
+     * Maximum size of all entries in bytes
+     */
+    private long maxSize;
+    /**
+     * Restore outputs as hard links
+     */
+    private boolean link;
+    /**
+     * The codec
+     */
+    private JobCodec codec = new BinaryJobCodec();
+    /**
+     * Content hashes by path, each entry holds size, modification time and hash
+     */
+    private Map<String, Object[]> hashes;
+
+    /**
+     * Create a new cache
+     *
+     * @param directory the cache directory
+     * @param maxSize the maximum size of all entries in bytes, values less than 1 do not limit the size
+     */
+    public ResultCache(File directory, long maxSize) {
+        if(directory == null) throw new NullPointerException("NULL cache directory not permitted");
+        this.directory = directory;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Get the cache directory
+     *
+     * @return directory the cache directory
+     */
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Returns true if outputs are restored as hard links
+     *
+     * @return link true if outputs are linked
+     */
+    public boolean isLink() {
+        return link;
+    }
+
+    /**
+     * Restore outputs as hard links if possible, otherwise copy them
+     *
+     * @param link link outputs
+     */
+    public void setLink(boolean link) {
+        this.link = link;
+    }
+
+    /**
+     * Compute the key of a job. All inputs must exist
+     *
+     * @param job the job
+     * @param tool the tool of the job
+     * @return key the key or null if the job can not be cached
+     */
+    public String key(Job job, Tool tool) {
+        if(tool == null || tool.getParameter() == null || job.getConfiguration() == null) return null;
+        if(JobManifest.getFiles(job, tool, true).isEmpty()) return null;
+        Map<String, Object> configuration = new HashMap<String, Object>(job.getConfiguration());
+        try {
+            for (Parameter parameter : tool.getParameter().values()) {
+                if(!parameter.isFile() || configuration.get(parameter.getName()) == null) continue;
+                List<Object> values = new ArrayList<Object>();
+                for (Object value : values(configuration.get(parameter.getName()))) {
+                    if(value == null){
+                        values.add(null);
+                    }else if(parameter.isOutput()){
+                        values.add("output:" + Files.getFileExtension(value.toString()));
+                    }else{
+                        File file = resolve(job, value);
+                        if(!file.isFile()) return null;
+                        values.add("input:" + contentHash(file));
+                    }
+                }
+                configuration.put(parameter.getName(), values);
+            }
+        } catch (Exception e) {
+            // a cache that can not be used only means that nothing is cached
+            log.warn("Unable to hash inputs of {} : {}", job.getId(), e.getMessage());
+            return null;
+        }
+        Hasher hasher = Hashing.sha1().newHasher();
+        hasher.putString(tool.getName(), Charsets.UTF_8).putByte((byte) 0);
+        hasher.putString(tool.getVersion() == null ? "" : tool.getVersion(), Charsets.UTF_8).putByte((byte) 0);
+        if(!JobManifest.hash(hasher, configuration)) return null;
+        return hasher.hash().toString();
+    }
+
+    /**
+     * Restore the outputs of a job
+     *
+     * @param key the key
+     * @param job the job
+     * @param tool the tool of the job
+     * @return restored true if all outputs were restored
+     */
+    public boolean restore(String key, Job job, Tool tool) {
+        File entry = new File(directory, key);
+        if(!entry.isDirectory()) return false;
+        // mark the entry as used before it is read so it is not evicted
+        entry.setLastModified(System.currentTimeMillis());
+        try {
+            for (Map.Entry<File, File> output : getOutputs(entry, job, tool).entrySet()) {
+                if(!output.getKey().isFile()) return false;
+                restore(output.getKey(), output.getValue());
+            }
+            return true;
+        } catch (Exception e) {
+            log.warn("Unable to restore cached outputs of {} : {}", job.getId(), e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Store the outputs of a finished job
+     *
+     * @param key the key
+     * @param job the job
+     * @param tool the tool of the job
+     * @return stored true if the outputs were stored, false if outputs are missing or the cache can not be written
+     */
+    public boolean put(String key, Job job, Tool tool) {
+        File entry = new File(directory, key);
+        if(entry.isDirectory()) return true;
+        File tmp = new File(directory, "." + key + "-" + UUID.randomUUID());
+        try {
+            if(!tmp.mkdirs()) throw new IOException("Unable to create " + tmp);
+            for (Map.Entry<File, File> output : getOutputs(tmp, job, tool).entrySet()) {
+                if(!output.getValue().isFile()){
+                    log.debug("Not caching {}, output {} is not a file", job.getId(), output.getValue());
+                    return false;
+                }
+                Files.copy(output.getValue(), output.getKey());
+                // restored outputs might be linked, so they must not be changed
+                output.getKey().setWritable(false, false);
+            }
+            // concurrent writers store the same content, the first rename wins
+            if(!tmp.renameTo(entry) && !entry.isDirectory()){
+                throw new IOException("Unable to rename " + tmp + " to " + entry);
+            }
+        } catch (Exception e) {
+            log.warn("Unable to cache outputs of {} : {}", job.getId(), e.getMessage());
+            return false;
+        } finally {
+            if(tmp.exists()) delete(tmp);
+        }
+        evict();
+        return true;
+    }
+
+    /**
+     * Delete the least recently used entries until the cache size is below
+     * the maximum size
+     */
+    void evict() {
+        if(maxSize < 1) return;
+        File[] entries = directory.listFiles();
+        if(entries == null) return;
+        List<File> used = new ArrayList<File>();
+        final Map<File, Long> modified = new HashMap<File, Long>();
+        long size = 0;
+        for (File entry : entries) {
+            if(!entry.isDirectory() || entry.getName().startsWith(".")) continue;
+            used.add(entry);
+            modified.put(entry, entry.lastModified());
+            size += size(entry);
+        }
+        if(size <= maxSize) return;
+        Collections.sort(used, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                return modified.get(a).compareTo(modified.get(b));
+            }
+        });
+        for (File entry : used) {
+            if(size <= maxSize) break;
+            log.info("Evicting cached result {}", entry.getName());
+            size -= size(entry);
+            delete(entry);
+        }
+    }
+
+    /**
+     * Map the files of a cache entry to the outputs of a job
+     *
+     * @param entry the entry directory
+     * @param job the job
+     * @param tool the tool of the job
+     * @return outputs the output files by entry file
+     */
+    private Map<File, File> getOutputs(File entry, Job job, Tool tool) {
+        Map<File, File> outputs = new LinkedHashMap<File, File>();
+        for (Parameter parameter : tool.getParameter().values()) {
+            if(!parameter.isFile() || !parameter.isOutput()) continue;
+            Object value = job.getConfiguration().get(parameter.getName());
+            if(value == null) continue;
+            int index = 0;
+            for (Object element : values(value)) {
+                if(element != null){
+                    outputs.put(new File(entry, parameter.getName() + "-" + index), resolve(job, element));
+                }
+                index++;
+            }
+        }
+        return outputs;
+    }
+
+    /**
+     * Link or copy a cached file to its target
+     *
+     * @param source the cached file
+     * @param target the target
+     * @throws IOException in case the file could not be copied
+     */
+    private void restore(File source, File target) throws IOException {
+        if(target.getParentFile() != null) target.getParentFile().mkdirs();
+        if(target.exists() && !target.delete()){
+            throw new IOException("Unable to replace " + target);
+        }
+        if(link){
+            try {
+                Process process = new java.lang.ProcessBuilder("ln", source.getAbsolutePath(), target.getAbsolutePath())
+                        .redirectErrorStream(true).start();
+                process.getInputStream().close();
+                if(process.waitFor() == 0) return;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while linking " + target);
+            }
+            log.debug("Unable to link {}, copying the cached file", target);
+        }
+        Files.copy(source, target);
+    }
+
+    /**
+     * Get the SHA-1 of the content of a file
+     *
+     * @param file the file
+     * @return hash the content hash
+     * @throws IOException in case the file could not be read
+     */
+    private synchronized String contentHash(File file) throws IOException {
+        String path = file.getAbsolutePath();
+        long length = file.length();
+        long modified = file.lastModified();
+        Object[] known = getHashes().get(path);
+        if(known != null && (Long) known[0] == length && (Long) known[1] == modified){
+            return (String) known[2];
+        }
+        String hash = Files.hash(file, Hashing.sha1()).toString();
+        hashes.put(path, new Object[]{length, modified, hash});
+        Map<String, Object> record = new HashMap<String, Object>();
+        record.put("path", path);
+        record.put("length", length);
+        record.put("modified", modified);
+        record.put("hash", hash);
+        // remembering the hash is optional, the cache might be read only
+        try {
+            if(directory.isDirectory() || directory.mkdirs()){
+                FileJobJournal.append(new File(directory, HASHES), codec.encode(record));
+            }
+        } catch (RuntimeException e) {
+            log.debug("Unable to remember the content hash of {} : {}", path, e.getMessage());
+        }
+        return hash;
+    }
+
+    /**
+     * Load the known content hashes, compacting the journal if it
+     * contains more outdated than current records
+     *
+     * @return hashes the known hashes
+     */
+    private Map<String, Object[]> getHashes() {
+        if(hashes != null) return hashes;
+        hashes = new HashMap<String, Object[]>();
+        File file = new File(directory, HASHES);
+        if(!file.exists()) return hashes;
+        FileJobJournal journal;
+        try {
+            journal = FileJobJournal.lock(file);
+        } catch (RuntimeException e) {
+            log.warn("Unable to read content hashes from {} : {}", file, e.getMessage());
+            return hashes;
+        }
+        try {
+            List<byte[]> data = journal.read();
+            for (byte[] bytes : data) {
+                try {
+                    Map<String, Object> record = codec.decode(bytes);
+                    hashes.put((String) record.get("path"), new Object[]{
+                            ((Number) record.get("length")).longValue(),
+                            ((Number) record.get("modified")).longValue(),
+                            record.get("hash")});
+                } catch (Exception e) {
+                    log.warn("Ignoring broken record in {} : {}", file, e.getMessage());
+                }
+            }
+            if(data.size() >= COMPACTION_RECORDS && data.size() > 2 * hashes.size()){
+                journal.truncate();
+                for (Map.Entry<String, Object[]> entry : hashes.entrySet()) {
+                    Map<String, Object> record = new HashMap<String, Object>();
+                    record.put("path", entry.getKey());
+                    record.put("length", entry.getValue()[0]);
+                    record.put("modified", entry.getValue()[1]);
+                    record.put("hash", entry.getValue()[2]);
+                    journal.append(codec.encode(record));
+                }
+            }
+        } finally {
+            journal.release();
+        }
+        return hashes;
+    }
+
+    /**
+     * Resolve a path against the working directory of a job
+     */
+    private static File resolve(Job job, Object value) {
+        File file = new File(value.toString());
+        if(!file.isAbsolute() && job.getWorkingDirectory() != null){
+            file = new File(job.getWorkingDirectory(), value.toString());
+        }
+        return file;
+    }
+
+    /**
+     * Get the values of a single or list parameter
+     */
+    private static Collection<?> values(Object value) {
+        if(value instanceof Collection) return (Collection<?>) value;
+        if(value instanceof Object[]) return Arrays.asList((Object[]) value);
+        return Collections.singletonList(value);
+    }
+
+    /**
+     * Get the size of all files in a directory
+     */
+    private static long size(File directory) {
+        long size = 0;
+        File[] files = directory.listFiles();
+        if(files == null) return 0;
+        for (File file : files) {
+            size += file.length();
+        }
+        return size;
+    }
+
+    /**
+     * Delete an entry directory
+     */
+    private static void delete(File directory) {
+        File[] files = directory.listFiles();
+        if(files != null){
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+}
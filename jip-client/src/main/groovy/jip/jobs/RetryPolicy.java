@@ -0,0 +1,170 @@
+package jip.jobs;
+
+import jip.tools.ExecuteEnvironment;
+
+import java.util.*;
+
+/**
+ * Decides if a job that failed on a cluster is resubmitted. A policy is
+ * created from the <code>jobs.retry</code> configuration
+ * <ul>
+ *     <li>attempts: the maximum number of retries, 0 disables retries</li>
+ *     <li>on: the final cluster states that are retried, for example TIMEOUT</li>
+ *     <li>backoff: the delay in seconds before the first retry, doubled for every further retry</li>
+ *     <li>memory: factor applied to the maximum memory after OUT_OF_MEMORY</li>
+ *     <li>time: factor applied to the maximum time after TIMEOUT</li>
+ * </ul>
+ * The settings in <code>clusters.&lt;cluster name&gt;</code> override the
+ * defaults, and the settings in <code>tools.&lt;tool name&gt;</code>
+ * override both.
+ *
+ * @author Thasso Griebel <thasso.griebel@gmail.com>
+ */
+public class RetryPolicy {
+    /**
+     * The maximum number of retries
+     */
+    private int attempts;
+    /**
+     * The retried cluster states
+     */
+    private Set<String> states = new HashSet<String>();
+    /**
+     * The delay before the first retry in seconds
+     */
+    private long backoff;
+    /**
+     * Memory factor applied after out of memory failures
+     */
+    private double memory = 1;
+    /**
+     * Time factor applied after timeouts
+     */
+    private double time = 1;
+
+    /**
+     * Create the policy for a tool on a cluster
+     *
+     * @param configuration the <code>jobs.retry</code> configuration, might be null
+     * @param cluster the cluster name
+     * @param tool the tool name
+     * @return policy the retry policy
+     */
+    public static RetryPolicy create(Map<String, Object> configuration, String cluster, String tool) {
+        RetryPolicy policy = new RetryPolicy();
+        if(configuration == null) return policy;
+        policy.apply(configuration);
+        policy.apply(getSection(configuration, "clusters", cluster));
+        policy.apply(getSection(configuration, "tools", tool));
+        return policy;
+    }
+
+    private static Map<String, Object> getSection(Map<String, Object> configuration, String section, String name) {
+        Object sections = configuration.get(section);
+        if(name == null || !(sections instanceof Map)) return null;
+        Object settings = ((Map) sections).get(name);
+        return settings instanceof Map ? (Map<String, Object>) settings : null;
+    }
+
+    private void apply(Map<String, Object> settings) {
+        if(settings == null) return;
+        if(settings.get("attempts") instanceof Number) attempts = ((Number) settings.get("attempts")).intValue();
+        if(settings.get("backoff") instanceof Number) backoff = ((Number) settings.get("backoff")).longValue();
+        if(settings.get("memory") instanceof Number) memory = ((Number) settings.get("memory")).doubleValue();
+        if(settings.get("time") instanceof Number) time = ((Number) settings.get("time")).doubleValue();
+        if(settings.get("on") instanceof Collection){
+            states.clear();
+            for (Object state : (Collection) settings.get("on")) {
+                states.add(state.toString());
+            }
+        }
+    }
+
+    /**
+     * Returns true if a job that failed with the given state is retried
+     *
+     * @param state the final cluster state
+     * @param attempt the number of failed attempts, including this one
+     * @return retry true if the job is resubmitted
+     */
+    public boolean isRetried(String state, int attempt) {
+        return state != null && states.contains(state) && attempt <= attempts;
+    }
+
+    /**
+     * Get the delay before a retry
+     *
+     * @param attempt the number of failed attempts
+     * @return delay the delay in milliseconds
+     */
+    public long getDelay(int attempt) {
+        // cap the exponent so large attempt counts do not overflow
+        return backoff * 1000L << Math.min(Math.max(attempt - 1, 0), 20);
+    }
+
+    /**
+     * Increase the resources of a job that failed with the given state.
+     * Unlimited resources stay unlimited.
+     *
+     * @param state the final cluster state
+     * @param environment the execute environment of the job
+     */
+    public void escalate(String state, ExecuteEnvironment environment) {
+        if(environment == null) return;
+        environment.setMaxMemory(getMemory(state, environment.getMaxMemory()));
+        environment.setMaxTime(getTime(state, environment.getMaxTime()));
+    }
+
+    /**
+     * Apply the resources of failed attempts to a job again. Cluster
+     * configuration scripts run before every submission and might reset
+     * the escalated resources, so this is applied after them. Resources
+     * are only increased, and unlimited resources stay unlimited.
+     *
+     * @param attempts the failed attempts of the job
+     * @param environment the execute environment of the job
+     */
+    public void escalate(List<JobAttempt> attempts, ExecuteEnvironment environment) {
+        if(environment == null) return;
+        for (JobAttempt attempt : attempts) {
+            long memory = getMemory(attempt.getReason(), attempt.getMaxMemory());
+            if(environment.getMaxMemory() > 0 && environment.getMaxMemory() < memory){
+                environment.setMaxMemory(memory);
+            }
+            long time = getTime(attempt.getReason(), attempt.getMaxTime());
+            if(environment.getMaxTime() > 0 && environment.getMaxTime() < time){
+                environment.setMaxTime(time);
+            }
+        }
+    }
+
+    private long getMemory(String state, long maxMemory) {
+        if(!"OUT_OF_MEMORY".equals(state) || maxMemory <= 0) return maxMemory;
+        return (long) Math.ceil(maxMemory * memory);
+    }
+
+    private long getTime(String state, long maxTime) {
+        if(!"TIMEOUT".equals(state) || maxTime <= 0) return maxTime;
+        return (long) Math.ceil(maxTime * time);
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public Set<String> getStates() {
+        return Collections.unmodifiableSet(states);
+    }
+
+    public long getBackoff() {
+        return backoff;
+    }
+
+    public double getMemory() {
+        return memory;
+    }
+
+    public double getTime() {
+        return time;
+    }
+}
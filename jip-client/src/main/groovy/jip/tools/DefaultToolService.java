@@ -1,5 +1,8 @@
 package jip.tools;
 
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import groovy.lang.Closure;
@@ -12,6 +15,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.*;
 
 /**
@@ -48,6 +52,21 @@ public class DefaultToolService implements ToolService {
      */
     private boolean initialized;
 
+    /**
+     * The definition files of the tools loaded from tool folders
+     */
+    private Map<String, File> sources = new HashMap<String, File>();
+
+    /**
+     * Tools loaded by {@link #loadTool(String)} before the service was initialized
+     */
+    private Map<String, Tool> loaded = new HashMap<String, Tool>();
+
+    /**
+     * Name of the tool index in the users JIP directory
+     */
+    static final String INDEX_FILE = "tools.index";
+
     /**
      * Creates a new instance of the tools service. The
      * instance is not initialized yet. Initialization
@@ -70,10 +89,150 @@ public class DefaultToolService implements ToolService {
      */
     @Override
     public Tool getTool(String name) {
-        if(!initialized) initialize();
+        if(!initialized){
+            Tool tool = loaded.get(name);
+            if(tool != null) return tool;
+            initialize();
+        }
         return toolContext.getTools().get(name);
     }
 
+    /**
+     * Load a single tool without initializing the service. Only the default
+     * tools and the definition file listed for the tool in the tool index are
+     * evaluated. The index is written by every full initialization. Tools that
+     * are not indexed, whose definition file changed, or that are pipelines and
+     * might need other tools, are loaded by initializing the service. So are all
+     * tools if a definition file was added to, removed from or changed in one of
+     * the tool folders, because it might define or no longer define the tool.
+     *
+     * @param name the tool name
+     * @return tool the tool or null
+     */
+    public synchronized Tool loadTool(String name) {
+        if(initialized || loaded.containsKey(name)) return getTool(name);
+        Tool tool = null;
+        try {
+            tool = loadIndexed(name);
+        } catch (Exception e) {
+            log.warn("Unable to load tool {} from the tool index : {}", name, e.getMessage());
+        }
+        if(tool == null || tool.getPipeline() != null){
+            log.info("Tool {} not indexed, loading all tools", name);
+            return getTool(name);
+        }
+        loaded.put(name, tool);
+        return tool;
+    }
+
+    /**
+     * Evaluate the default tools and the indexed definition file of a tool
+     * in a new context
+     *
+     * @param name the tool name
+     * @return tool the tool or null
+     * @throws IOException in case the index could not be read
+     */
+    private Tool loadIndexed(String name) throws IOException {
+        JipDSLContext context = new JipDSLContext(runtime);
+        Closure defaultTools = (Closure) DefaultTools.tools.clone();
+        defaultTools.setDelegate(context);
+        defaultTools.call();
+        if(context.getTools().containsKey(name)) return context.getTools().get(name);
+        if(runtime == null) return null;
+
+        File index = new File(runtime.getJipHome(true), INDEX_FILE);
+        if(!index.exists()) return null;
+        Map<String, String> folders = new HashMap<String, String>();
+        File file = null;
+        for (String line : Files.readLines(index, Charsets.UTF_8)) {
+            String[] fields = line.split("\t");
+            if(fields[0].equals("folder") && fields.length == 3){
+                // listing hash and path of a tool folder
+                folders.put(fields[2], fields[1]);
+            }else if(fields[0].equals("tool") && fields.length == 5 && fields[1].equals(name)){
+                // name, length, modification time and path of the definition file
+                file = new File(fields[4]);
+                if(file.length() != Long.parseLong(fields[2]) || file.lastModified() != Long.parseLong(fields[3])){
+                    return null;
+                }
+            }
+        }
+        if(file == null) return null;
+        for (File folder : getToolFolders()) {
+            if(!listing(folder).equals(folders.get(folder.getAbsolutePath()))){
+                log.debug("Tool folder {} changed since the index was written", folder);
+                return null;
+            }
+        }
+        log.info("Loading tool {} from {}", name, file.getAbsolutePath());
+        new JipDSL(context).evaluateToolDefinition(file, Collections.emptyMap());
+        return context.getTools().get(name);
+    }
+
+    /**
+     * Get the tool folders, <code>tools</code> in the JIP home and in the users
+     * JIP directory
+     *
+     * @return folders the tool folders
+     */
+    private List<File> getToolFolders() {
+        return Arrays.asList(new File(runtime.getJipHome(false), "tools"), new File(runtime.getJipHome(true), "tools"));
+    }
+
+    /**
+     * Get the SHA-1 of the names and modification times of the definition
+     * files in a tool folder
+     *
+     * @param folder the tool folder
+     * @return hash the listing hash
+     */
+    static String listing(File folder) {
+        StringBuilder b = new StringBuilder();
+        String[] names = folder.list();
+        if(names != null){
+            Arrays.sort(names);
+            for (String name : names) {
+                if(!name.endsWith(".groovy")) continue;
+                File file = new File(folder, name);
+                b.append(name).append('\t').append(file.lastModified()).append('\n');
+                if(file.isDirectory()){
+                    b.append(new File(file, "jip-tool.groovy").lastModified()).append('\n');
+                }
+            }
+        }
+        return Hashing.sha1().hashString(b.toString(), Charsets.UTF_8).toString();
+    }
+
+    /**
+     * Write the tool index if it changed
+     */
+    private void writeIndex() {
+        File index = new File(runtime.getJipHome(true), INDEX_FILE);
+        StringBuilder b = new StringBuilder();
+        for (File folder : getToolFolders()) {
+            b.append("folder\t").append(listing(folder)).append('\t').append(folder.getAbsolutePath()).append('\n');
+        }
+        for (Map.Entry<String, File> e : new TreeMap<String, File>(sources).entrySet()) {
+            File file = e.getValue();
+            b.append("tool\t").append(e.getKey()).append('\t').append(file.length()).append('\t')
+                    .append(file.lastModified()).append('\t').append(file.getAbsolutePath()).append('\n');
+        }
+        try {
+            String content = b.toString();
+            if(index.exists() && Files.toString(index, Charsets.UTF_8).equals(content)) return;
+            if(!index.getParentFile().exists() && !index.getParentFile().mkdirs()) return;
+            // written atomically, other processes might read it
+            File tmp = File.createTempFile(".tools", ".index", index.getParentFile());
+            Files.write(content, tmp, Charsets.UTF_8);
+            if(!tmp.renameTo(index)){
+                tmp.delete();
+            }
+        } catch (IOException e) {
+            log.warn("Unable to write tool index {} : {}", index.getAbsolutePath(), e.getMessage());
+        }
+    }
+
     /**
      * Load tools from different locations. This checks:
      * <pre>
@@ -109,15 +268,11 @@ public class DefaultToolService implements ToolService {
         // 4. $USER_HOME/tools/*/jip-tool.groovy
         // 5. $USER_HOME/tools/*.groovy
         if(runtime != null){
-            String jipHome = runtime.getJipHome(false).getAbsolutePath();
-            String userHome = runtime.getJipHome(true).getAbsolutePath();
             JipDSL dsl = new JipDSL(toolContext);
-            if(jipHome != null){
-                collectTools(dsl, new File(jipHome, "tools"));
-            }
-            if(userHome != null){
-                collectTools(dsl, new File(userHome, "tools"));
+            for (File folder : getToolFolders()) {
+                collectTools(dsl, folder);
             }
+            writeIndex();
         }
     }
 
@@ -146,18 +301,36 @@ public class DefaultToolService implements ToolService {
         for (File file : files) {
             if(file.getName().endsWith(".groovy")){
                 log.info("Loading tools from {}", file.getAbsolutePath());
+                Set<String> before = new HashSet<String>(toolContext.getTools().keySet());
                 dsl.evaluateToolDefinition(file, Collections.emptyMap());
+                addSources(before, file);
                 if(file.isDirectory()){
                     File jiptoolsFile = new File(file, "jip-tool.groovy");
                     if(jiptoolsFile.exists()){
                         log.info("Loading tools from {}", jiptoolsFile.getAbsolutePath());
+                        before = new HashSet<String>(toolContext.getTools().keySet());
                         dsl.evaluateToolDefinition(jiptoolsFile, Collections.emptyMap());
+                        addSources(before, jiptoolsFile);
                     }
                 }
             }
         }
     }
 
+    /**
+     * Remember the definition file of the tools that were added by it
+     *
+     * @param before the tool names before the file was evaluated
+     * @param file the definition file
+     */
+    private void addSources(Set<String> before, File file) {
+        for (String name : toolContext.getTools().keySet()) {
+            if(!before.contains(name)){
+                sources.put(name, file);
+            }
+        }
+    }
+
     @Override
     public Collection<Tool> getTools() {
         if(!initialized) initialize();
@@ -1,6 +1,7 @@
 package jip.utils
 
 import jip.jobs.Job
+import jip.jobs.JobSpool
 import jip.tools.Tool
 
 
@@ -90,6 +91,11 @@ class ExecuteDelegate {
         pb.name(name)
         pb.dir(cwd)
         pb.extendEnvironment(env)
+        // job script helpers write messages to the spool of the executing process
+        File spool = job != null ? JobSpool.getFile(job) : null
+        if(spool != null){
+            pb.environment("JIP_SPOOL", spool.getAbsolutePath())
+        }
         pb.arguments(args)
         pb.interpreter(interpreter)
         pb.interpreterArguments(interpreterArgs)
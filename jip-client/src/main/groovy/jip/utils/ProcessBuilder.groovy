@@ -120,6 +120,11 @@ class ProcessBuilder {
         return this
     }
 
+    public ProcessBuilder environment(String name, String value){
+        this.environment[name] = value
+        return this
+    }
+
     public ProcessBuilder environment(Closure environment){
         def delegate = new EnvironmentDelegate(this.environment)
         environment.delegate = delegate
@@ -5,6 +5,7 @@ import jip.jobs.Job;
 import jip.plugin.ExtensionPoint;
 
 import java.io.File;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -31,6 +32,17 @@ public interface Cluster {
      */
     void submit(Job job) throws Exception;
 
+    /**
+     * Submit a group of split jobs that share the tool, the dependencies and
+     * the execute environment and only differ by their split index. Clusters
+     * that support job arrays submit the group as a single array job, others
+     * submit the jobs one by one. The remote id of every job is set.
+     *
+     * @param jobs the jobs to be submitted
+     * @throws Exception in case the jobs could not be submitted
+     */
+    void submit(List<Job> jobs) throws Exception;
+
     /**
      * Submits the given list of jobs
      *
@@ -47,6 +59,16 @@ public interface Cluster {
      */
     Map<String, ClusterJobState> list() throws Exception;
 
+    /**
+     * Get the final state of jobs that left the queue, for example
+     * <code>TIMEOUT</code>, <code>NODE_FAIL</code> or <code>OUT_OF_MEMORY</code>
+     *
+     * @param remoteIds the remote ids
+     * @return states the final cluster states by remote id, unknown jobs are not included
+     * @throws Exception in case the states could not be fetched
+     */
+    Map<String, String> getFinalStates(Collection<String> remoteIds) throws Exception;
+
     /**
      * Get cluster/grid engine identifier to simplify configuration
      *
@@ -4,7 +4,6 @@ import com.google.inject.Inject;
 import jip.CLIHelper;
 import jip.jobs.Job;
 import jip.jobs.JobStore;
-import jip.jobs.PipelineJob;
 import jip.jobs.RunService;
 import jip.plugin.Extension;
 import jip.tools.Tool;
@@ -71,28 +70,18 @@ public class ExecuteCommand implements JipCommand{
 
         log.info("Executing {}-{}", pipelineJobId, jobId);
 
-        PipelineJob pipelineJob = jobStore.get(pipelineJobId);
-        if(pipelineJob == null){
-            throw new RuntimeException("Pipeline " + pipelineJobId + " not found !");
-        }
-        log.debug("Loaded pipeline from store : {}", pipelineJob);
-
-        boolean found = false;
-        for (Job job : pipelineJob.getJobs()) {
-            if(job.getId().equals(jobId)){
-                try {
-                    runService.execute(job, true);
-                } catch (Exception e) {
-                    log.error("Error while executing job {}", jobId, e);
-                    throw new RuntimeException(e);
-                }
-                found = true;
-                break;
-            }
-        }
-        if(!found){
+        // only the job is loaded, not the full pipeline
+        Job job = jobStore.getJob(pipelineJobId, jobId);
+        if(job == null){
             throw new RuntimeException("Job " + jobId + " not found !");
         }
+        log.debug("Loaded job from store : {}", job);
+        try {
+            runService.execute(job, true);
+        } catch (Exception e) {
+            log.error("Error while executing job {}", jobId, e);
+            throw new RuntimeException(e);
+        }
     }
 
     @Override
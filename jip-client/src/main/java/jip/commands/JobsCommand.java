@@ -71,11 +71,13 @@ public class JobsCommand implements JipCommand{
         List<Object> jobIdList = parsed.getList("job");
         List<Object> deleteList = parsed.getList("delete");
         List<Object> cancelList = parsed.getList("cancel");
+        List<Object> resumeList = parsed.getList("resume");
 
 
         if(jobIdList != null && jobIdList.size() > 0
            || deleteList != null && deleteList.size() > 0
-           || cancelList != null && cancelList.size() > 0){
+           || cancelList != null && cancelList.size() > 0
+           || resumeList != null && resumeList.size() > 0){
 
             if(jobIdList != null && jobIdList.size() > 0){
                 showJobDetails(CLIHelper.parseRange(jobIdList));
@@ -87,9 +89,12 @@ public class JobsCommand implements JipCommand{
             if(cancelList != null && cancelList.size() > 0){
                 cancelJobs(CLIHelper.parseRange(cancelList));
             }
+            if(resumeList != null && resumeList.size() > 0){
+                resumeJobs(CLIHelper.parseRange(resumeList));
+            }
         }else{
             // list jobs
-            Iterable<PipelineJob> jobList = jobStore.list(parsed.getBoolean("list-archived"));
+            Iterable<PipelineSummary> jobList = jobStore.listSummaries(parsed.getBoolean("list-archived"));
             SimpleTablePrinter jobTable = new SimpleTablePrinter(Arrays.asList(
                     "ID",
                     "Name",
@@ -97,46 +102,31 @@ public class JobsCommand implements JipCommand{
                     "Progress",
                     "Time",
                     "Last Message"));
-            for (PipelineJob pipelineJob : jobList) {
-                Map<JobState, Integer> counts = getJobStateMap(pipelineJob);
+            for (PipelineSummary summary : jobList) {
+                Map<JobState, Integer> counts = summary.getStateCounts();
                 JobState state = getState(counts);
                 jobTable.addRow(
-                        pipelineJob.getId(),
-                        pipelineJob.getName(),
+                        summary.getId(),
+                        summary.getName(),
                         state,
-                        counts.get(JobState.Done)+"/"+pipelineJob.getJobs().size(),
-                        getPipelineJobTime(pipelineJob, state),
-                        getLastMessage(pipelineJob)
+                        counts.get(JobState.Done)+"/"+summary.getJobCount(),
+                        getPipelineJobTime(summary, state),
+                        summary.getLastMessage() != null ? summary.getLastMessage().getMessage() : ""
                 );
             }
             System.out.println(jobTable.toString());
         }
     }
 
-    private String getLastMessage(PipelineJob pipelineJob) {
-        List<Message> messages = new ArrayList<Message>();
-        for (Job job : pipelineJob.getJobs()) {
-            messages.addAll(job.getMessages());
+    private String getPipelineJobTime(PipelineSummary summary, JobState state) {
+        boolean useStart = state.isDoneState() || state == JobState.Running;
+        long start = summary.getCreateDate().getTime()/1000;
+        if(useStart && summary.getStartDate() != null){
+            start = summary.getStartDate().getTime()/1000;
         }
-        Collections.sort(messages);
-        if(messages.size() == 0) return "";
-        return messages.get(messages.size()-1).getMessage();
-    }
-
-    private String getPipelineJobTime(PipelineJob pipelineJob, JobState state) {
-        long start = Long.MAX_VALUE;
         long end = System.currentTimeMillis()/1000;
-        boolean useStart = state.isDoneState() || state == JobState.Running;
-        for (Job job : pipelineJob.getJobs()) {
-            JobStats jobStats = job.getJobStats();
-            if(jobStats.getStartDate() != null){
-                start = Math.min(start, (useStart ? jobStats.getStartDate().getTime() : jobStats.getCreateDate().getTime())/1000);
-            }else{
-                start = jobStats.getCreateDate().getTime()/1000;
-            }
-            if(jobStats.getEndDate() != null){
-                end = jobStats.getEndDate().getTime()/1000;
-            }
+        if(state.isDoneState() && summary.getEndDate() != null){
+            end = summary.getEndDate().getTime()/1000;
         }
         return new Time(end-start).toString();
     }
@@ -190,6 +180,18 @@ public class JobsCommand implements JipCommand{
         }
     }
 
+    private void resumeJobs(List<Long> ids) {
+        for (Long id : ids) {
+            try {
+                List<Job> jobs = runService.resume(id + "");
+                System.out.println(id + " resumed, " + jobs.size() + " job(s) resubmitted");
+            } catch (Exception e) {
+                log.error("Error resuming {} : {}", id, e.getMessage());
+                throw new RuntimeException(e.getMessage(), e);
+            }
+        }
+    }
+
     private void addPipelineJobToTable(String pipelineJobId, SimpleTablePrinter table) {
         PipelineJob pipelineJob = jobStore.get(pipelineJobId);
         for (Job job : pipelineJob.getJobs()) {
@@ -248,6 +250,7 @@ public class JobsCommand implements JipCommand{
         parser.addArgument("-j", "--job").dest("job").nargs("*").type(String.class).help("List of job ids");
         parser.addArgument("-d", "--delete").dest("delete").nargs("*").type(String.class).help("Delete jobs");
         parser.addArgument("-c", "--cancel").dest("cancel").nargs("*").type(String.class).help("Cancel Jobs");
+        parser.addArgument("-r", "--resume").dest("resume").nargs("*").type(String.class).help("Resubmit failed and canceled jobs and the jobs that depend on them");
         parser.addArgument("--list-archived").dest("list-archived").action(storeTrue()).setDefault(false).help("List archived jobs");
         parser.addArgument("--check").dest("check-jobs").action(storeTrue()).setDefault(false).help("Check remote jobs and perform cleanup");
     }
@@ -0,0 +1,52 @@
+package jip.jobs;
+
+import java.util.Date;
+
+/**
+ * A failed attempt to run a job that was retried
+ *
+ * @author Thasso Griebel <thasso.griebel@gmail.com>
+ */
+public interface JobAttempt {
+    /**
+     * Get the remote id of the attempt
+     *
+     * @return remoteId the remote id
+     */
+    String getRemoteId();
+
+    /**
+     * Get the reason the attempt failed, i.e. the final cluster state like TIMEOUT
+     *
+     * @return reason the failure reason
+     */
+    String getReason();
+
+    /**
+     * Get the date the failure was detected
+     *
+     * @return endDate the end date
+     */
+    Date getEndDate();
+
+    /**
+     * Get the date the job is resubmitted
+     *
+     * @return retryDate the retry date
+     */
+    Date getRetryDate();
+
+    /**
+     * Get the maximum memory in MB of the attempt
+     *
+     * @return maxMemory the maximum memory
+     */
+    long getMaxMemory();
+
+    /**
+     * Get the maximum wall clock time in seconds of the attempt
+     *
+     * @return maxTime the maximum time
+     */
+    long getMaxTime();
+}
@@ -0,0 +1,48 @@
+package jip.jobs;
+
+import jip.plugin.ExtensionPoint;
+
+import java.util.Map;
+
+/**
+ * Encodes and decodes the map representations of pipeline jobs
+ * (see <code>DefaultPipelineJob.toMap()</code>) to and from their persisted
+ * form. Codecs are identified by name and must be able to detect their
+ * own format so that stores can read documents written by other codecs.
+ *
+ * @author Thasso Griebel <thasso.griebel@gmail.com>
+ */
+@ExtensionPoint
+public interface JobCodec {
+    /**
+     * Get the name of the codec. This is used to select the codec
+     * in the configuration
+     *
+     * @return name the name of the codec
+     */
+    public String getName();
+
+    /**
+     * Returns true if the given data was written by this codec
+     *
+     * @param data the data
+     * @return canDecode true if this codec can decode the data
+     */
+    public boolean canDecode(byte[] data);
+
+    /**
+     * Encode the given map
+     *
+     * @param data the data
+     * @return encoded the encoded data
+     */
+    public byte[] encode(Map<String, Object> data);
+
+    /**
+     * Decode the given data
+     *
+     * @param data the encoded data
+     * @return map the decoded map
+     */
+    public Map<String, Object> decode(byte[] data);
+}
@@ -1,6 +1,7 @@
 package jip.jobs;
 
 import java.util.Date;
+import java.util.List;
 
 /**
  *
@@ -29,6 +30,13 @@ public interface JobStats {
      */
     Date getEndDate();
 
+    /**
+     * Get the failed attempts that were retried, oldest first
+     *
+     * @return attempts the failed attempts
+     */
+    List<JobAttempt> getAttempts();
+
     void setCreateDate(Date createDate);
 
     void setStartDate(Date startDate);
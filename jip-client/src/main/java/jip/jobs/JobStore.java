@@ -2,6 +2,8 @@ package jip.jobs;
 
 import jip.plugin.ExtensionPoint;
 
+import java.util.List;
+
 /**
  * Job store implementations persists pipeline runs and jobs
  *
@@ -50,6 +52,17 @@ public interface JobStore {
      */
     public PipelineJob get(String id);
 
+    /**
+     * Load a single job of a pipeline without its dependencies. This avoids
+     * creating the full pipeline if only one job is needed, for example to
+     * execute it.
+     *
+     * @param pipelineId the pipeline id
+     * @param jobId the job id
+     * @return job the job or null if the pipeline does not contain the job
+     */
+    public Job getJob(String pipelineId, String jobId);
+
     /**
      * List pipeline jobs stored in this store
      *
@@ -58,12 +71,28 @@ public interface JobStore {
      */
     public Iterable<PipelineJob> list(boolean archived);
 
+    /**
+     * List the summaries of the pipeline jobs stored in this store. In contrast
+     * to {@link #list(boolean)}, this does not load the jobs of a pipeline.
+     *
+     * @param archived if true, archived jobs are listed
+     * @return summaries iterable over the pipeline summaries
+     */
+    public Iterable<PipelineSummary> listSummaries(boolean archived);
+
     /**
      * Save a full job
      * @param job the job
      */
     void save(Job job);
 
+    /**
+     * Save multiple jobs of the same pipeline with a single update
+     *
+     * @param jobs the jobs
+     */
+    void save(List<Job> jobs);
+
     /**
      * Add a message to a job
      *
@@ -82,4 +111,14 @@ public interface JobStore {
      * @param progress the current progress
      */
     void setProgress(String pipelineId, String jobId, int progress);
+
+    /**
+     * Add messages and set the progress of a job with a single update
+     *
+     * @param pipelineId the pipeline id
+     * @param jobId the job id
+     * @param messages the messages in the order they were sent
+     * @param progress the current progress or null to keep the progress
+     */
+    void update(String pipelineId, String jobId, List<Message> messages, Integer progress);
 }
@@ -1,5 +1,6 @@
 package jip.jobs;
 
+import jip.graph.CompactGraph;
 import org.jgrapht.experimental.dag.DirectedAcyclicGraph;
 
 import java.util.List;
@@ -39,6 +40,14 @@ public interface PipelineJob {
      */
     public ExecutionGraph getGraph();
 
+    /**
+     * Get a read only graph of the jobs and their dependencies with
+     * the jobs in topological order
+     *
+     * @return graph the compact job graph
+     */
+    public CompactGraph<Job> getCompactGraph();
+
     class ExecutionGraph extends DirectedAcyclicGraph<Job, String> implements Iterable<Job>{
 
         public ExecutionGraph() {
@@ -3,6 +3,7 @@ package jip.jobs;
 import jip.tools.Tool;
 
 import java.io.File;
+import java.util.Collection;
 import java.util.Map;
 
 /**
@@ -24,4 +25,19 @@ public interface PipelineService {
      * @throws Exception in case the tool can not be transformed
      */
     PipelineJob create(String tool, Map configuration, File workingDir) throws Exception;
+
+    /**
+     * Transform the given tool into a pipeline job that contains only the
+     * jobs needed to create the given targets. Targets are node ids, node ids
+     * with an output parameter in the form <code>node.parameter</code> or
+     * tool names.
+     *
+     * @param tool the tool
+     * @param configuration the tool configuration
+     * @param workingDir the working directory
+     * @param targets the targets, null or empty to create all jobs
+     * @return pipeline job
+     * @throws Exception in case the tool can not be transformed
+     */
+    PipelineJob create(String tool, Map configuration, File workingDir, Collection<String> targets) throws Exception;
 }
@@ -0,0 +1,69 @@
+package jip.jobs;
+
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * Summary of a pipeline job that contains everything needed
+ * to list pipelines without loading all jobs
+ *
+ * @author Thasso Griebel <thasso.griebel@gmail.com>
+ */
+public interface PipelineSummary {
+    /**
+     * Get the pipeline job id
+     *
+     * @return id the pipeline job id
+     */
+    String getId();
+
+    /**
+     * Get the pipeline job name
+     *
+     * @return name the name of the pipeline job
+     */
+    String getName();
+
+    /**
+     * Get the number of jobs in the pipeline
+     *
+     * @return count the number of jobs
+     */
+    int getJobCount();
+
+    /**
+     * Get the number of jobs per state. The map contains
+     * all states.
+     *
+     * @return counts number of jobs per state
+     */
+    Map<JobState, Integer> getStateCounts();
+
+    /**
+     * Get the create date of the first job
+     *
+     * @return createDate the create date
+     */
+    Date getCreateDate();
+
+    /**
+     * Get the first start date of a job of the pipeline
+     *
+     * @return startDate the first start date or null
+     */
+    Date getStartDate();
+
+    /**
+     * Get the last end date of a job of the pipeline
+     *
+     * @return endDate the last end date or null
+     */
+    Date getEndDate();
+
+    /**
+     * Get the last message send by any of the jobs
+     *
+     * @return message the last message or null
+     */
+    Message getLastMessage();
+}
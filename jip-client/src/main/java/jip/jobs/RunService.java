@@ -5,6 +5,8 @@ import jip.tools.ExecuteEnvironment;
 import jip.tools.Tool;
 
 import java.io.File;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -29,6 +31,16 @@ public interface RunService {
      */
     public void submit(Job job, Cluster cluster) throws Exception;
 
+    /**
+     * Submit a group of split jobs that share tool, dependencies and
+     * execute environment to a cluster
+     *
+     * @param jobs the jobs
+     * @param cluster the cluster
+     * @throws Exception in case the jobs could not be submitted
+     */
+    public void submit(List<Job> jobs, Cluster cluster) throws Exception;
+
     /**
      * Run a tool
      *
@@ -39,6 +51,17 @@ public interface RunService {
      */
     public void run(String tool, Map configuration, File directory) throws Exception;
 
+    /**
+     * Run the jobs of a tool that are needed to create the given targets
+     *
+     * @param tool the tool
+     * @param configuration the tool configuration
+     * @param directory the tool directory
+     * @param targets the targets, null or empty to run all jobs
+     * @throws Exception in case something went wrong
+     */
+    public void run(String tool, Map configuration, File directory, Collection<String> targets) throws Exception;
+
     /**
      * Run a tool on a cluster
      *
@@ -51,6 +74,47 @@ public interface RunService {
      */
     public PipelineJob submit(String tool, Map configuration, File directory, String cluster, ExecuteEnvironment executeEnvironment) throws Exception;
 
+    /**
+     * Submit the jobs of a tool that are needed to create the given targets
+     *
+     * @param tool the tool
+     * @param configuration the tool configuration
+     * @param directory the tool directory
+     * @param cluster the cluster name
+     * @param executeEnvironment the execute environment
+     * @param targets the targets, null or empty to submit all jobs
+     * @throws Exception in case something went wrong
+     */
+    public PipelineJob submit(String tool, Map configuration, File directory, String cluster, ExecuteEnvironment executeEnvironment, Collection<String> targets) throws Exception;
+
+    /**
+     * Resume a stored pipeline job on the default cluster. Done jobs are kept
+     * and jobs that are still queued or running on the cluster are kept if
+     * none of their dependencies is resubmitted. All other jobs, i.e. failed,
+     * canceled and lost jobs and everything that depends on them, are
+     * resubmitted with dependencies on the jobs that are still in flight.
+     *
+     * @param id the pipeline job id
+     * @return jobs the resubmitted jobs
+     * @throws Exception in case the jobs could not be resubmitted
+     */
+    public List<Job> resume(String id) throws Exception;
+
+    /**
+     * Returns true if jobs whose outputs are up to date are skipped
+     *
+     * @return incremental true if up to date jobs are skipped
+     */
+    boolean isIncremental();
+
+    /**
+     * Skip jobs whose outputs are up to date. Skipped jobs are marked done
+     * and not run or submitted
+     *
+     * @param incremental skip up to date jobs
+     */
+    void setIncremental(boolean incremental);
+
     /**
      * Cancel teh given pipeline job
      *
@@ -0,0 +1,75 @@
+package jip
+
+import com.google.common.io.Files
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+
+/**
+ *
+ * @author Thasso Griebel <thasso.griebel@gmail.com>
+ */
+class JipDaemonTest {
+    File dir
+    File file
+    JipDaemon daemon
+    Thread thread
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDir()
+        file = new File(dir, "daemon")
+        daemon = new JipDaemon(null, file, ["jobs"]) {
+            @Override
+            int execute(String[] args) {
+                println "out ${args.join(',')}"
+                System.err.print("err")
+                return args.length
+            }
+        }
+        daemon.start(0, dir)
+        thread = Thread.start { daemon.serve() }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        daemon.close()
+        thread.join(5000)
+        dir.deleteDir()
+    }
+
+    @Test
+    public void testExecute() throws Exception {
+        def fields = file.text.trim().split(" ")
+        assert fields[0] == "${daemon.port}".toString()
+        assert fields[2] == dir.canonicalPath
+
+        assert request(fields[1], ["jobs", "a b", "c"]) == ["1 out jobs,a b,c", "2 err", "0 3"]
+        // commands that are not enabled run in the client
+        assert request(fields[1], ["run", "a"]) == ["f"]
+        assert request(fields[1], []) == ["f"]
+        // invalid tokens are rejected without a response
+        assert request("invalid", ["jobs"]) == []
+    }
+
+    @Test
+    public void testStop() throws Exception {
+        assert JipDaemon.isRunning(file)
+        assert JipDaemon.stop(file)
+        thread.join(5000)
+        assert !thread.alive
+        assert !file.exists()
+        assert !JipDaemon.stop(file)
+    }
+
+    private List<String> request(String token, List<String> args) {
+        def socket = new Socket("127.0.0.1", daemon.port)
+        try {
+            socket.outputStream.write((([token, args.size()] + args).join("\n") + "\n").getBytes("UTF-8"))
+            socket.outputStream.flush()
+            return socket.inputStream.readLines("UTF-8")
+        } finally {
+            socket.close()
+        }
+    }
+}
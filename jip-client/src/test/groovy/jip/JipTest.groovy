@@ -31,4 +31,14 @@ class JipTest {
         ''')
         assert second.second.a == o.test.a
     }
+
+    @Test
+    public void testExecuteJobArguments() throws Exception {
+        assert Jip.getExecuteJob(["execute", "-p", "1", "-j", "a"] as String[]) == ["1", "a"] as String[]
+        assert Jip.getExecuteJob(["execute", "--job", "a", "--pipeline", "1"] as String[]) == ["1", "a"] as String[]
+        assert Jip.getExecuteJob(["execute", "-p", "1", "-p", "a"] as String[]) == null
+        assert Jip.getExecuteJob(["execute", "-p", "1", "--help", "a"] as String[]) == null
+        assert Jip.getExecuteJob(["jobs", "-p", "1", "-j", "a"] as String[]) == null
+        assert Jip.getExecuteJob(["execute", "-p", "1"] as String[]) == null
+    }
 }
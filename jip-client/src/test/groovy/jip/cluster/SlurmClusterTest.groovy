@@ -0,0 +1,173 @@
+package jip.cluster
+
+import com.google.common.io.Files
+import jip.JipEnvironment
+import jip.jobs.DefaultJob
+import jip.jobs.DefaultRunService
+import jip.jobs.Job
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+
+/**
+ *
+ * @author Thasso Griebel <thasso.griebel@gmail.com>
+ */
+class SlurmClusterTest {
+    File dir
+
+    private SlurmCluster createCluster(Map configuration){
+        // fake sbatch that records its arguments
+        def sbatch = new File(dir, "sbatch")
+        sbatch.text = """#!/bin/bash
+for a in "\$@"; do echo "\$a"; done >> ${dir.absolutePath}/calls
+echo "---" >> ${dir.absolutePath}/calls
+echo "Submitted batch job \$(wc -l < ${dir.absolutePath}/calls)"
+"""
+        sbatch.setExecutable(true)
+        def cluster = new SlurmCluster()
+        def environment = [getJipHome: { boolean user -> new File("/opt/jip") }] as JipEnvironment
+        cluster.configure(environment, [sbatch: sbatch.absolutePath] + configuration)
+        return cluster
+    }
+
+    private List<List<String>> calls(){
+        def calls = []
+        def current = []
+        new File(dir, "calls").eachLine {
+            if(it == "---"){
+                calls << current
+                current = []
+            }else{
+                current << it
+            }
+        }
+        return calls
+    }
+
+    private static List<Job> splitJobs(Job before, int count){
+        (0..<count).collect {
+            def job = new DefaultJob("1", "wc_split_${it}", "/data")
+            job.toolName = "wc"
+            job.dependenciesBefore << before
+            job
+        }
+    }
+
+    @Test
+    public void testSubmitSplitJobsAsArray() throws Exception {
+        def cluster = createCluster([maxArraySize: 3])
+        def split = new DefaultJob("1", "split", "/data")
+        split.remoteId = "7"
+        def jobs = splitJobs(split, 5)
+        cluster.submit(jobs)
+
+        def calls = calls()
+        assert calls.size() == 2
+        assert calls[0].contains("--array=0-2")
+        assert calls[0].contains("afterok:7")
+        assert calls[0].last() == '/opt/jip/bin/jip execute -p 1 -j wc_split_$((0+SLURM_ARRAY_TASK_ID))'
+        assert calls[1].contains("--array=0-1")
+        assert calls[1].last() == '/opt/jip/bin/jip execute -p 1 -j wc_split_$((3+SLURM_ARRAY_TASK_ID))'
+
+        def arrayId = calls[0].size() + 1
+        assert jobs[0].remoteId == "${arrayId}_0"
+        assert jobs[2].remoteId == "${arrayId}_2"
+        assert jobs[3].remoteId.endsWith("_0")
+        assert jobs[4].remoteId.endsWith("_1")
+        assert jobs[2].log == "/data/jip-1-wc_split-${arrayId}_2.out"
+    }
+
+    @Test
+    public void testSubmitMixedJobsOneByOne() throws Exception {
+        def cluster = createCluster([:])
+        def split = new DefaultJob("1", "split", "/data")
+        def jobs = splitJobs(split, 2)
+        jobs[1].executeEnvironment.threads = 4
+        cluster.submit(jobs)
+        assert calls().size() == 2
+        assert !calls()[0].any { it.startsWith("--array") }
+    }
+
+    @Test
+    public void testGroupSplitJobs() throws Exception {
+        def split = new DefaultJob("1", "split", "/data")
+        def jobs = [split] + splitJobs(split, 3)
+        def merge = new DefaultJob("1", "merge", "/data")
+        jobs.each { merge.dependenciesBefore << it }
+        jobs << merge
+        def groups = DefaultRunService.groupSplitJobs(jobs)
+        assert groups*.size() == [1, 3, 1]
+        assert groups[2][0].id == "merge"
+    }
+
+    @Test
+    public void testDependenciesOnArrays() throws Exception {
+        def cluster = createCluster([maxArraySize: 3])
+        def split = new DefaultJob("1", "split", "/data")
+        split.remoteId = "7"
+        def jobs = splitJobs(split, 5)
+        cluster.submit(jobs)
+        def arrays = calls().collect { it.size() + 1 }
+        arrays[1] += arrays[0]
+
+        // all tasks of both arrays
+        def merge = new DefaultJob("1", "merge", "/data")
+        merge.dependenciesBefore.addAll(jobs)
+        cluster.submit(merge)
+        assert calls()[2].contains("afterok:${arrays[0]}:${arrays[1]}".toString())
+
+        // the first array and a single task of the second
+        def partial = new DefaultJob("1", "partial", "/data")
+        partial.dependenciesBefore.addAll(jobs[0..3])
+        cluster.submit(partial)
+        assert calls()[3].contains("afterok:${arrays[0]}:${arrays[1]}_0".toString())
+
+        // tasks of arrays that were not submitted by this cluster are kept
+        def other = new DefaultJob("1", "other", "/data")
+        other.dependenciesBefore.addAll(splitJobs(split, 2).eachWithIndex { job, i -> job.remoteId = "99_${i}" })
+        cluster.submit(other)
+        assert calls()[4].contains("afterok:99_0:99_1")
+    }
+
+    @Test
+    public void testArraySpecAndExpansion() throws Exception {
+        assert SlurmCluster.toArraySpec([0, 1, 2, 4, 6, 7]) == "0-2,4,6-7"
+        assert SlurmCluster.expandArrayIds("12") == ["12"]
+        assert SlurmCluster.expandArrayIds("12_3") == ["12_3"]
+        assert SlurmCluster.expandArrayIds("12_[0-2,5%2]") == ["12_0", "12_1", "12_2", "12_5"]
+        def states = new SlurmCluster().parseSqueueOutput(new ByteArrayInputStream(
+                "12_[1-2] PENDING n/a 10:00 N/A\n12_0 RUNNING node1 10:00 2013-01-01T00:00:00\n".bytes))
+        assert states == ["12_0": ClusterJobState.Running, "12_1": ClusterJobState.Queued, "12_2": ClusterJobState.Queued]
+    }
+
+    @Test
+    public void testFinalStates() throws Exception {
+        def states = SlurmCluster.parseSacctOutput(new ByteArrayInputStream(
+                "12|TIMEOUT\n13_1|OUT_OF_MEMORY\n14|CANCELLED by 1000\n15|\n".bytes))
+        assert states == ["12": "TIMEOUT", "13_1": "OUT_OF_MEMORY", "14": "CANCELLED"]
+
+        def sacct = new File(dir, "sacct")
+        sacct.text = """#!/bin/bash
+echo "args \$@" > ${dir.absolutePath}/sacct-args
+echo "12|NODE_FAIL"
+"""
+        sacct.setExecutable(true)
+        def cluster = createCluster([sacct: sacct.absolutePath])
+        assert cluster.getFinalStates(["12", "13"]) == ["12": "NODE_FAIL"]
+        assert new File(dir, "sacct-args").text.trim() == "args -n -X -P -o JobID,State -j 12,13"
+        assert cluster.getFinalStates([]) == [:]
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDir()
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (dir != null){
+            assert "rm -Rf ${dir.getAbsolutePath()}".execute().waitFor() == 0
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package jip.jobs
+
+import jip.tools.DefaultParameter
+import jip.tools.DefaultTool
+
+/**
+ * Jobs of a tool that copies its input file to its output file, used to
+ * test job manifests and the result cache
+ *
+ * @author Thasso Griebel <thasso.griebel@gmail.com>
+ */
+class CopyJobs {
+
+    /**
+     * Create the copy tool
+     *
+     * @param before called with the configuration before the file is copied
+     * @return tool the copy tool
+     */
+    static DefaultTool createTool(Closure before = null) {
+        def tool = new DefaultTool("copy")
+        tool.parameter = [
+                input: new DefaultParameter(name: "input", file: true, input: true),
+                output: new DefaultParameter(name: "output", file: true, output: true),
+        ]
+        tool.closure = { cfg ->
+            before?.call(cfg)
+            new File(cfg.output.toString()).text = new File(cfg.input.toString()).text
+        }
+        return tool
+    }
+
+    /**
+     * Create a copy job
+     *
+     * @param dir the working directory
+     * @param id the job id
+     * @param input the input path
+     * @param output the output path
+     * @param extra additional configuration
+     * @return job the job
+     */
+    static Job createJob(File dir, String id, String input, String output, Map extra = [:]) {
+        def job = new DefaultJob("1", id, dir.absolutePath)
+        job.toolName = "copy"
+        job.configuration = [input: input, output: output] + extra
+        return job
+    }
+}
@@ -108,6 +108,21 @@ class DefaultPipelineServiceTest {
         assert wc.getToolName() == "wc"
     }
 
+    @Test
+    public void testPipelineJobWithTargets() throws Exception {
+        def pp = new DefaultPipelineService(context, idservice)
+        PipelineJob pipelineJob = pp.create("ls-wc", [:], dir, ["ls"])
+        assert pipelineJob.getJobs().size() == 1
+        Job ls = pipelineJob.getJobs().get(0)
+        assert ls.getToolName() == "ls"
+        assert ls.getId() == "ls-1"
+        assert ls.getDependenciesAfter().isEmpty()
+
+        // the target node keeps its ancestors
+        pipelineJob = pp.create("ls-wc", [:], dir, ["wc-2.output"])
+        assert pipelineJob.getJobs()*.id == ["ls-1", "wc-2"]
+    }
+
     @Test
     public void testSplittingPipelineJob() throws Exception {
         def pp = new DefaultPipelineService(context, idservice)
@@ -131,4 +146,32 @@ class DefaultPipelineServiceTest {
         assert wc.getDependenciesBefore().get(0) == split
         assert wc.getToolName() == "wc"
     }
+
+    @Test
+    public void testCachedPipelines() throws Exception {
+        def pp = new DefaultPipelineService(context, idservice)
+        pp.pipelineCache = new PipelineCache(new File(dir, "cache"))
+        PipelineJob created = pp.create("split-wc", [:], dir)
+        assert new File(dir, "cache").listFiles().size() == 1
+        PipelineJob cached = pp.create("split-wc", [:], dir)
+        assert new File(dir, "cache").listFiles().size() == 1
+
+        assert cached.id == "1"
+        assert cached.getName() == "split-wc"
+        assert cached.getJobs()*.id == created.getJobs()*.id
+        assert cached.getJobs()*.toolName == created.getJobs()*.toolName
+        cached.getJobs().each { assert it.pipelineId == "1" }
+        Job split = cached.getJobs().get(0)
+        assert split.getConfiguration().input == created.getJobs().get(0).getConfiguration().input.toString()
+        assert split.getDependenciesAfter() == cached.getJobs().subList(1, 4)
+        cached.getJobs().subList(1, 4).each {
+            assert it.getDependenciesBefore() == [split]
+        }
+
+        // other configurations are separate entries
+        pp.create("split", [input: "a.txt", splits: 2], dir)
+        assert new File(dir, "cache").listFiles().size() == 2
+        assert pp.create("split", [input: "b.txt", splits: 2], dir).getJobs().get(0).getConfiguration().input == new File(dir, "b.txt").getAbsolutePath()
+        assert new File(dir, "cache").listFiles().size() == 3
+    }
 }
@@ -0,0 +1,251 @@
+package jip.jobs
+
+import com.google.common.io.Files
+import jip.JipEnvironment
+import jip.cluster.Cluster
+import jip.JipEnvironment
+import jip.cluster.ClusterJobState
+import jip.JipEnvironment
+import jip.cluster.ClusterService
+import jip.cluster.DefaultClusterService
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+
+/**
+ *
+ * @author Thasso Griebel <thasso.griebel@gmail.com>
+ */
+class DefaultRunServiceTest {
+    File dir
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDir()
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        dir.deleteDir()
+    }
+
+    @Test
+    public void testResume() throws Exception {
+        def store = new FileJobStore(new File(dir, "store"))
+        def pipelineJob = new DefaultPipelineJob("1", "test")
+        def jobs = [:]
+        ["a", "b", "c", "d", "f", "g"].each { id ->
+            jobs[id] = new DefaultJob("1", id, dir.absolutePath)
+            pipelineJob.jobs << jobs[id]
+        }
+        jobs.b.dependenciesBefore << jobs.a
+        jobs.c.dependenciesBefore << jobs.b
+        jobs.f.dependenciesBefore << jobs.d
+        jobs.a.state = JobState.Done
+        jobs.b.state = JobState.Failed
+        // queued, but waits for the failed job
+        jobs.c.state = JobState.Queued
+        jobs.c.remoteId = "3"
+        // still running
+        jobs.d.state = JobState.Running
+        jobs.d.remoteId = "4"
+        // lost on the cluster
+        jobs.f.state = JobState.Queued
+        jobs.f.remoteId = "5"
+        // never submitted
+        jobs.g.state = JobState.Submitted
+        store.save(pipelineJob)
+
+        def submitted = []
+        def canceled = []
+        int remoteId = 100
+        Cluster cluster = [
+                list: { ["3": ClusterJobState.Queued, "4": ClusterJobState.Running] },
+                submit: { Job job ->
+                    // dependencies that are done are not part of the remote dependencies
+                    submitted << [job.id, job.dependenciesBefore.findAll { it.state != JobState.Done }*.remoteId]
+                    job.remoteId = "${remoteId++}".toString()
+                },
+                cancel: { List<Job> list -> canceled.addAll(list*.id) }
+        ] as Cluster
+        def runService = new DefaultRunService(null, null,
+                [getDefault: { cluster }, applyConfiguration: { Job job, Cluster c -> }] as ClusterService,
+                store, null)
+
+        def resubmitted = runService.resume("1")
+        assert resubmitted*.id == ["b", "c", "f", "g"]
+        assert canceled == ["c"]
+        assert submitted == [["b", []], ["c", ["100"]], ["f", ["4"]], ["g", []]]
+
+        def loaded = store.get("1")
+        assert loaded.jobs.collectEntries { [it.id, it.state] } == [
+                a: JobState.Done, b: JobState.Queued, c: JobState.Queued,
+                d: JobState.Running, f: JobState.Queued, g: JobState.Queued]
+        assert loaded.jobs.find { it.id == "f" }.remoteId == "102"
+
+        // nothing to do if all jobs are done
+        loaded.jobs.each { it.state = JobState.Done }
+        store.save(loaded)
+        assert runService.resume("1").isEmpty()
+    }
+
+    @Test
+    public void testRetryWithEscalatedResources() throws Exception {
+        def store = new FileJobStore(new File(dir, "store"))
+        def pipelineJob = new DefaultPipelineJob("1", "test")
+        def a = new DefaultJob("1", "a", dir.absolutePath)
+        def b = new DefaultJob("1", "b", dir.absolutePath)
+        a.toolName = "bwa"
+        a.executeEnvironment.maxTime = 600
+        a.executeEnvironment.maxMemory = 1000
+        b.dependenciesBefore << a
+        [a, b].each {
+            it.state = JobState.Queued
+            pipelineJob.jobs << it
+        }
+        a.remoteId = "1"
+        b.remoteId = "2"
+        store.save(pipelineJob)
+
+        def queue = ["2": ClusterJobState.Queued]
+        def finalStates = ["1": "TIMEOUT"]
+        def submitted = []
+        def canceled = []
+        int remoteId = 100
+        Cluster cluster = [
+                list: { queue },
+                getFinalStates: { Collection ids -> finalStates.subMap(ids) },
+                submit: { Job job ->
+                    submitted << job.id
+                    job.remoteId = "${remoteId++}".toString()
+                },
+                cancel: { List<Job> list -> canceled.addAll(list*.id) }
+        ] as Cluster
+        def configuration = [
+                cluster: [name: "cluster"],
+                jobs: [retry: [attempts: 1, on: ["TIMEOUT", "NODE_FAIL"], backoff: 0, time: 2,
+                        tools: [bwa: [attempts: 2]]]]]
+        def runService = new DefaultRunService(null, null,
+                [getDefault: { cluster }, applyConfiguration: { Job job, Cluster c -> }] as ClusterService,
+                store, [getConfiguration: { configuration }] as JipEnvironment)
+
+        // the timeout puts the job on hold with more time
+        runService.checkJobs()
+        def loaded = store.get("1").jobs.find { it.id == "a" }
+        assert loaded.state == JobState.Hold
+        assert loaded.executeEnvironment.maxTime == 1200
+        assert loaded.executeEnvironment.maxMemory == 1000
+        assert loaded.jobStats.attempts.size() == 1
+        assert loaded.jobStats.attempts[0].remoteId == "1"
+        assert loaded.jobStats.attempts[0].reason == "TIMEOUT"
+        assert loaded.jobStats.attempts[0].maxTime == 600
+        assert submitted.isEmpty()
+
+        // the retry is due and resubmits the job and the queued job that depends on it
+        runService.checkJobs()
+        assert submitted == ["a", "b"]
+        assert canceled == ["b"]
+        assert store.get("1").jobs.collectEntries { [it.id, it.state] } == [a: JobState.Queued, b: JobState.Queued]
+
+        // the second failure uses the last attempt of the tool policy
+        queue = ["101": ClusterJobState.Queued]
+        finalStates = ["100": "NODE_FAIL"]
+        runService.checkJobs()
+        runService.checkJobs()
+        assert submitted == ["a", "b", "a", "b"]
+        loaded = store.get("1").jobs.find { it.id == "a" }
+        assert loaded.jobStats.attempts*.reason == ["TIMEOUT", "NODE_FAIL"]
+        assert loaded.executeEnvironment.maxTime == 1200
+
+        // no attempts left
+        queue = ["103": ClusterJobState.Queued]
+        finalStates = ["102": "TIMEOUT"]
+        runService.checkJobs()
+        loaded = store.get("1").jobs.find { it.id == "a" }
+        assert loaded.state == JobState.Failed
+        assert loaded.stateReason == "TIMEOUT"
+    }
+
+    @Test
+    public void testRetryResourcesSurviveClusterScripts() throws Exception {
+        def store = new FileJobStore(new File(dir, "store"))
+        def pipelineJob = new DefaultPipelineJob("1", "test")
+        def a = new DefaultJob("1", "a", dir.absolutePath)
+        a.executeEnvironment.maxTime = 600
+        a.executeEnvironment.maxMemory = 1000
+        a.state = JobState.Queued
+        a.remoteId = "1"
+        pipelineJob.jobs << a
+        store.save(pipelineJob)
+
+        // the user configuration resets the resources on every submission
+        def home = new File(dir, "home")
+        new File(home, "conf").mkdirs()
+        new File(home, "conf/cluster.groovy").text = """
+            job.executeEnvironment.maxTime = 600
+            job.executeEnvironment.maxMemory = 1000
+        """
+        def configuration = [
+                cluster: [name: "cluster"],
+                jobs: [retry: [attempts: 2, on: ["TIMEOUT", "OUT_OF_MEMORY"], backoff: 0, time: 2, memory: 3]]]
+        def environment = [getConfiguration: { configuration }, getJipHome: { boolean user -> user ? home : new File(dir, "global") }] as JipEnvironment
+
+        def finalStates = ["1": "TIMEOUT"]
+        def submitted = []
+        int remoteId = 100
+        Cluster cluster = [
+                getType: { "test" },
+                list: { [:] },
+                getFinalStates: { Collection ids -> finalStates.subMap(ids) },
+                submit: { Job job ->
+                    submitted << [job.executeEnvironment.maxTime, job.executeEnvironment.maxMemory]
+                    job.remoteId = "${remoteId++}".toString()
+                },
+                cancel: { List<Job> list -> }
+        ] as Cluster
+        def clusterService = new DefaultClusterService(null, environment)
+        def runService = new DefaultRunService(null, null,
+                [getDefault: { cluster }, applyConfiguration: { Job job, Cluster c -> clusterService.applyConfiguration(job, c) }] as ClusterService,
+                store, environment)
+
+        // hold and resubmit after the timeout
+        runService.checkJobs()
+        runService.checkJobs()
+        assert submitted == [[1200, 1000]]
+
+        // the memory is escalated as well and the time is kept
+        finalStates = ["100": "OUT_OF_MEMORY"]
+        runService.checkJobs()
+        runService.checkJobs()
+        assert submitted == [[1200, 1000], [1200, 3000]]
+    }
+
+    @Test
+    public void testRetryPolicy() throws Exception {
+        def configuration = [attempts: 1, on: ["TIMEOUT"], backoff: 10, memory: 2,
+                clusters: [slurm: [attempts: 3, on: ["NODE_FAIL", "OUT_OF_MEMORY"]]],
+                tools: [bwa: [backoff: 30]]]
+        def policy = RetryPolicy.create(configuration, "other", "other")
+        assert policy.isRetried("TIMEOUT", 1)
+        assert !policy.isRetried("TIMEOUT", 2)
+        assert !policy.isRetried("NODE_FAIL", 1)
+        assert !policy.isRetried(null, 1)
+        assert policy.getDelay(1) == 10000
+        assert policy.getDelay(3) == 40000
+
+        policy = RetryPolicy.create(configuration, "slurm", "bwa")
+        assert policy.isRetried("NODE_FAIL", 3)
+        assert !policy.isRetried("TIMEOUT", 1)
+        assert policy.getDelay(1) == 30000
+
+        def environment = new jip.tools.DefaultExecuteEnvironment()
+        environment.maxMemory = 1000
+        policy.escalate("OUT_OF_MEMORY", environment)
+        assert environment.maxMemory == 2000
+        // unlimited time stays unlimited
+        policy.escalate("TIMEOUT", environment)
+        assert environment.maxTime == 0
+
+        assert !RetryPolicy.create(null, null, null).isRetried("TIMEOUT", 1)
+    }
+}
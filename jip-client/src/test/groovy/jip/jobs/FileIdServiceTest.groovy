@@ -74,6 +74,37 @@ class FileIdServiceTest {
         din.close()
     }
 
+    @Test
+    public void testLeasingBlocks() throws Exception {
+        def file = new File(dir, "idfile")
+        def first = new FileIdService(file, 10)
+        def second = new FileIdService(file, 10)
+        assert first.next() == "0"
+        assert second.next() == "10"
+        assert first.next() == "1"
+
+        //create FileInputStream object
+        FileInputStream fin = new FileInputStream(file);
+        DataInputStream din = new DataInputStream(fin);
+        assert din.readLong() == 20
+        din.close()
+
+        def ids = Collections.synchronizedSet(new HashSet())
+        def pool = Executors.newFixedThreadPool(4)
+        for(int i=0; i<1000; i++){
+            pool.submit(new Runnable() {
+                @Override
+                void run() {
+                    ids << (i % 2 == 0 ? first : second).next()
+                }
+            })
+        }
+        pool.shutdown()
+        pool.awaitTermination(10, TimeUnit.SECONDS)
+        assert ids.size() == 1000
+        assert !ids.contains("0") && !ids.contains("10") && !ids.contains("1")
+    }
+
     @Before
     public void setUp() throws Exception {
         dir = Files.createTempDir()
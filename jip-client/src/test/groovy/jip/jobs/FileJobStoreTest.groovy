@@ -142,4 +142,230 @@ class FileJobStoreTest {
         }
         assert c == 0;
     }
+
+    @Test
+    public void testJournaledUpdates() throws Exception {
+        def pp = new DefaultPipelineService(context, idservice)
+        PipelineJob pipelineJob = pp.create("split-wc", [:], dir)
+        def store = new FileJobStore(dir, true, 1024 * 1024)
+        store.save(pipelineJob)
+        def jobFile = new File(dir, pipelineJob.getId()+".job")
+        def journalFile = new File(dir, pipelineJob.getId()+".journal")
+        long snapshotLength = jobFile.length()
+
+        store.setState(pipelineJob.id, "split-1", JobState.Running, null)
+        store.addMessage(pipelineJob.id, "split-1", MessageType.Info, "started")
+        store.setProgress(pipelineJob.id, "split-1", 50)
+        store.setState(pipelineJob.id, "wc-2_split_1", JobState.Failed, "broken")
+        assert journalFile.exists()
+        assert jobFile.length() == snapshotLength
+
+        PipelineJob loaded = store.get(pipelineJob.getId())
+        assert loaded.jobs[0].state == JobState.Running
+        assert loaded.jobs[0].jobStats.startDate != null
+        assert loaded.jobs[0].messages.size() == 1
+        assert loaded.jobs[0].messages[0].message == "started"
+        assert loaded.jobs[0].progress == 50
+        assert loaded.jobs[2].state == JobState.Failed
+        assert loaded.jobs[2].stateReason == "broken"
+        assert loaded.jobs[2].jobStats.endDate != null
+
+        // saving a new snapshot supersedes the journal
+        store.save(loaded)
+        assert journalFile.length() == 0
+        loaded = store.get(pipelineJob.getId())
+        assert loaded.jobs[0].messages.size() == 1
+        assert loaded.jobs[0].progress == 50
+    }
+
+    @Test
+    public void testTornJournalRecord() throws Exception {
+        def pp = new DefaultPipelineService(context, idservice)
+        PipelineJob pipelineJob = pp.create("split-wc", [:], dir)
+        def store = new FileJobStore(dir, true, 1024 * 1024)
+        store.save(pipelineJob)
+        store.setState(pipelineJob.id, "split-1", JobState.Running, null)
+        def journalFile = new File(dir, pipelineJob.getId()+".journal")
+        long length = journalFile.length()
+
+        // a writer died after the header and a part of the record
+        journalFile.append([0, 0, 0, 100, 1, 2, 3] as byte[])
+        assert store.get(pipelineJob.id).jobs[0].state == JobState.Running
+
+        store.setState(pipelineJob.id, "split-1", JobState.Done, null)
+        store.setProgress(pipelineJob.id, "split-1", 100)
+        PipelineJob loaded = store.get(pipelineJob.id)
+        assert loaded.jobs[0].state == JobState.Done
+        assert loaded.jobs[0].progress == 100
+        assert journalFile.length() > length
+        assert store.getJob(pipelineJob.id, "split-1").state == JobState.Done
+    }
+
+    @Test
+    public void testJournalWithoutRecordTrailers() throws Exception {
+        // journal of an older version, records have no trailing length
+        def journalFile = new File(dir, "legacy.journal")
+        journalFile.bytes = [0, 0, 0, 2, 7, 8] as byte[]
+        FileJobJournal.append(journalFile, [9] as byte[])
+
+        def journal = FileJobJournal.lockShared(journalFile)
+        try {
+            assert journal.read().collect { it as List } == [[7, 8], [9]]
+        } finally {
+            journal.release()
+        }
+        // magic number and two records with header and trailer
+        assert journalFile.length() == 4 + 10 + 9
+    }
+
+    @Test
+    public void testGetSingleJob() throws Exception {
+        def pp = new DefaultPipelineService(context, idservice)
+        PipelineJob pipelineJob = pp.create("split-wc", [:], dir)
+        def store = new FileJobStore(dir, true, 1024 * 1024)
+        store.save(pipelineJob)
+        store.setState(pipelineJob.id, "split-1", JobState.Running, null)
+        store.setProgress(pipelineJob.id, "wc-2_split_1", 20)
+
+        Job job = store.getJob(pipelineJob.id, "split-1")
+        assert job.id == "split-1"
+        assert job.toolName == pipelineJob.jobs[0].toolName
+        assert job.configuration == pipelineJob.jobs[0].configuration
+        assert job.state == JobState.Running
+        assert job.progress == 0
+        assert job.dependenciesBefore.isEmpty()
+        assert store.getJob(pipelineJob.id, "wc-2_split_1").progress == 20
+        assert store.getJob(pipelineJob.id, "unknown") == null
+    }
+
+    @Test
+    public void testJournalCompaction() throws Exception {
+        def pp = new DefaultPipelineService(context, idservice)
+        PipelineJob pipelineJob = pp.create("split-wc", [:], dir)
+        def store = new FileJobStore(dir, true, 512)
+        store.save(pipelineJob)
+        def journalFile = new File(dir, pipelineJob.getId()+".journal")
+        for(int i = 1; i <= 100; i++){
+            store.setProgress(pipelineJob.id, "wc-2_split_0", i)
+            assert journalFile.length() <= 512
+        }
+        PipelineJob loaded = store.get(pipelineJob.getId())
+        assert loaded.jobs[1].progress == 100
+
+        // the archive contains the compacted snapshot
+        store.setState(pipelineJob.id, "wc-2_split_0", JobState.Done, null)
+        store.archive(loaded)
+        assert !journalFile.exists()
+        assert store.get(pipelineJob.getId()).jobs[1].state == JobState.Done
+    }
+
+    @Test
+    public void testConcurrentReadsAndWrites() throws Exception {
+        def pp = new DefaultPipelineService(context, idservice)
+        PipelineJob pipelineJob = pp.create("split-wc", [:], dir)
+        def store = new FileJobStore(dir, false, FileJobStore.DEFAULT_COMPACTION_SIZE)
+        store.save(pipelineJob)
+        def errors = Collections.synchronizedList([])
+        def threads = (0..<4).collect { int t ->
+            Thread.start {
+                try {
+                    for(int i = 1; i <= 25; i++){
+                        if(t % 2 == 0){
+                            store.setProgress(pipelineJob.id, "wc-2_split_${t}", i)
+                        }
+                        // readers always see a complete snapshot
+                        assert store.get(pipelineJob.id).jobs.size() == 4
+                    }
+                } catch (Throwable e) {
+                    errors << e
+                }
+            }
+        }
+        threads*.join()
+        assert errors.isEmpty()
+        PipelineJob loaded = store.get(pipelineJob.id)
+        assert loaded.jobs[1].progress == 25
+        assert loaded.jobs[3].progress == 25
+        assert !dir.listFiles().any { it.name.endsWith(".tmp") }
+    }
+
+    @Test
+    public void testMigrateLegacyJobFiles() throws Exception {
+        def pp = new DefaultPipelineService(context, idservice)
+        PipelineJob pipelineJob = pp.create("split-wc", [:], dir)
+        def jobFile = new File(dir, pipelineJob.getId()+".job")
+        // write the file the way older versions did
+        def rw = new RandomAccessFile(jobFile, "rw")
+        rw.writeChars(new com.google.gson.Gson().toJson(DefaultPipelineJob.toMap(pipelineJob)))
+        rw.close()
+
+        // legacy files are read, but not rewritten by default
+        def store = new FileJobStore(dir, false, FileJobStore.DEFAULT_COMPACTION_SIZE, new BinaryJobCodec())
+        PipelineJob loaded = store.get(pipelineJob.getId())
+        assert loaded.jobs.size() == 4
+        assert JsonJobCodec.isUtf16(jobFile.bytes)
+
+        store.setMigrate(true)
+        loaded = store.get(pipelineJob.getId())
+        assert loaded.jobs.size() == 4
+        assert loaded.jobs[1].id == "wc-2_split_0"
+        assert loaded.jobs[1].configuration == pipelineJob.jobs[1].configuration
+        assert new BinaryJobCodec().canDecode(jobFile.bytes)
+
+        loaded = store.get(pipelineJob.getId())
+        assert loaded.jobs[0].dependenciesAfter.size() == 3
+        assert loaded.jobs[1].configuration == pipelineJob.jobs[1].configuration
+    }
+
+    @Test
+    public void testSummaryIndex() throws Exception {
+        def pp = new DefaultPipelineService(context, idservice)
+        for (boolean journal : [true, false]) {
+            def store = new FileJobStore(new File(dir, "store-${journal}/jobs"), journal, 1024 * 1024)
+            PipelineJob pipelineJob = pp.create("split-wc", [:], dir)
+            store.save(pipelineJob)
+            store.setState(pipelineJob.id, "split-1", JobState.Running, null)
+            store.setState(pipelineJob.id, "split-1", JobState.Done, null)
+            store.setState(pipelineJob.id, "wc-2_split_0", JobState.Running, null)
+            store.addMessage(pipelineJob.id, "wc-2_split_0", MessageType.Info, "first")
+            store.addMessage(pipelineJob.id, "wc-2_split_0", MessageType.Warn, "last")
+
+            List<PipelineSummary> summaries = store.listSummaries(false).collect {it}
+            assert summaries.size() == 1
+            PipelineSummary summary = summaries[0]
+            assert summary.id == pipelineJob.id
+            assert summary.name == "split-wc"
+            assert summary.jobCount == 4
+            assert summary.stateCounts[JobState.Done] == 1
+            assert summary.stateCounts[JobState.Running] == 1
+            assert summary.stateCounts[JobState.Hold] == 0
+            assert summary.startDate != null
+            assert summary.endDate != null
+            assert summary.lastMessage.message == "last"
+
+            // missing summaries are created from the pipeline
+            def summaryFile = new File(dir, "store-${journal}/jobs/.index/${pipelineJob.id}.summary")
+            assert summaryFile.exists()
+            summaryFile.delete()
+            summary = store.listSummaries(false).iterator().next()
+            assert summaryFile.exists()
+            assert summary.stateCounts[JobState.Done] == 1
+            assert summary.lastMessage.message == "last"
+
+            // journaled updates leave the summary alone until it is listed
+            byte[] written = summaryFile.bytes
+            store.setState(pipelineJob.id, "wc-2_split_0", JobState.Done, null)
+            if(journal){
+                assert summaryFile.bytes == written
+            }
+            summary = store.listSummaries(false).iterator().next()
+            assert summary.stateCounts[JobState.Done] == 2
+            assert summary.stateCounts[JobState.Running] == 0
+            store.setState(pipelineJob.id, "wc-2_split_0", JobState.Running, null)
+
+            store.archive(pipelineJob)
+            assert !store.listSummaries(false).iterator().hasNext()
+            assert store.listSummaries(true).iterator().next().stateCounts[JobState.Running] == 1
+        }
+    }
 }
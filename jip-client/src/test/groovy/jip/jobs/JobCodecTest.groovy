@@ -0,0 +1,70 @@
+package jip.jobs
+
+import org.junit.Test
+
+/**
+ * 
+ * @author Thasso Griebel <thasso.griebel@gmail.com>
+ */
+class JobCodecTest {
+
+    static Map createDocument(){
+        return [
+                id: "12",
+                name: "pipeline",
+                count: 3,
+                created: 1366021212345L,
+                ratio: 0.5d,
+                negative: -42,
+                enabled: true,
+                missing: null,
+                state: JobState.Running,
+                text: "${'multi'}\nline äöü",
+                jobs: [
+                        [id: "a", environment: [PATH: "/bin", HOME: "/home"], list: ["1", "2"]],
+                        [id: "b", environment: [PATH: "/bin", HOME: "/home"], list: []]
+                ]
+        ]
+    }
+
+    @Test
+    public void testBinaryRoundTrip() throws Exception {
+        def codec = new BinaryJobCodec()
+        byte[] data = codec.encode(createDocument())
+        assert codec.canDecode(data)
+        assert !new JsonJobCodec().canDecode(data)
+
+        Map decoded = codec.decode(data)
+        assert decoded.id == "12"
+        assert decoded.count == 3
+        assert decoded.created == 1366021212345L
+        assert decoded.ratio == 0.5d
+        assert decoded.negative == -42
+        assert decoded.enabled == true
+        assert !decoded.containsKey("missing")
+        assert decoded.state == "Running"
+        assert decoded.text == "multi\nline äöü"
+        assert decoded.jobs.size() == 2
+        assert decoded.jobs[1].environment == [PATH: "/bin", HOME: "/home"]
+        assert decoded.jobs[0].list == ["1", "2"]
+        assert decoded.jobs[1].list == []
+    }
+
+    @Test
+    public void testBinaryIsSmallerThanJson() throws Exception {
+        def doc = createDocument()
+        assert new BinaryJobCodec().encode(doc).length < new JsonJobCodec().encode(doc).length
+    }
+
+    @Test
+    public void testJsonDecodesUtf8AndUtf16() throws Exception {
+        def codec = new JsonJobCodec()
+        byte[] utf8 = codec.encode([id: "1", name: "äöü"])
+        byte[] utf16 = '{"id":"1","name":"äöü"}'.getBytes("UTF-16BE")
+        assert codec.canDecode(utf8)
+        assert codec.canDecode(utf16)
+        assert !new BinaryJobCodec().canDecode(utf16)
+        assert codec.decode(utf8) == [id: "1", name: "äöü"]
+        assert codec.decode(utf16) == [id: "1", name: "äöü"]
+    }
+}
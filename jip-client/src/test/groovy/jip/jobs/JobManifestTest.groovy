@@ -0,0 +1,104 @@
+package jip.jobs
+
+import com.google.common.io.Files
+import jip.JipEnvironment
+import jip.tools.Tool
+import jip.tools.ToolService
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+
+import static jip.jobs.CopyJobs.createJob
+
+/**
+ *
+ * @author Thasso Griebel <thasso.griebel@gmail.com>
+ */
+class JobManifestTest {
+    File dir
+    Tool tool
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDir()
+        tool = CopyJobs.createTool()
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        dir.deleteDir()
+    }
+
+    @Test
+    public void testUpToDate() throws Exception {
+        def job = createJob(dir, "copy-1", "a.txt", "b.txt")
+        def manifest = new JobManifest(dir)
+        assert !manifest.exists()
+        manifest.create()
+        assert manifest.exists()
+        assert !manifest.isUpToDate(job, tool)
+
+        new File(dir, "a.txt").text = "a"
+        def pending = manifest.start(job, tool)
+        // missing outputs are not recorded
+        assert !manifest.record(pending)
+        new File(dir, "b.txt").text = "a"
+        assert manifest.record(pending)
+        assert manifest.isUpToDate(job, tool)
+
+        manifest = new JobManifest(dir)
+        assert manifest.isUpToDate(job, tool)
+        // configuration changes and numbers are compared by value
+        assert !manifest.isUpToDate(createJob(dir, "copy-1", "a.txt", "b.txt", [threads: 2]), tool)
+        def numbers = new JobManifest(dir)
+        numbers.record(numbers.start(createJob(dir, "copy-1", "a.txt", "b.txt", [threads: 2]), tool))
+        assert new JobManifest(dir).isUpToDate(createJob(dir, "copy-2", "a.txt", "b.txt", [threads: 2.0d]), tool)
+
+        // changed inputs
+        new File(dir, "a.txt").text = "aa"
+        assert !new JobManifest(dir).isUpToDate(job, tool)
+        new File(dir, "a.txt").text = "a"
+        new File(dir, "a.txt").setLastModified(new File(dir, "a.txt").lastModified() - 10000)
+        assert !new JobManifest(dir).isUpToDate(job, tool)
+
+        // missing outputs
+        manifest = new JobManifest(dir)
+        manifest.record(manifest.start(job, tool))
+        assert new JobManifest(dir).isUpToDate(job, tool)
+        new File(dir, "b.txt").delete()
+        assert !new JobManifest(dir).isUpToDate(job, tool)
+    }
+
+    @Test
+    public void testSkipsUpToDateCone() throws Exception {
+        def pipelineJob = new DefaultPipelineJob("1", "test")
+        def a = createJob(dir, "copy-1", "in.txt", "a.txt")
+        def b = createJob(dir, "copy-2", "a.txt", "b.txt")
+        def c = createJob(dir, "copy-3", "in.txt", "c.txt")
+        def d = createJob(dir, "copy-4", "other.txt", "d.txt")
+        b.dependenciesBefore << a
+        pipelineJob.jobs.addAll([a, b, c, d])
+
+        def runService = new DefaultRunService(
+                [getTool: { String name -> tool }] as ToolService,
+                null, null, null,
+                [getConfiguration: { [jobs: [incremental: true]] }] as JipEnvironment)
+        assert runService.isIncremental()
+        assert runService.findUpToDate(pipelineJob).isEmpty()
+        assert new JobManifest(dir).exists()
+
+        new File(dir, "in.txt").text = "in"
+        new File(dir, "other.txt").text = "other"
+        for (Job job : [a, b, c, d]) {
+            runService.execute(job, false)
+        }
+        assert runService.findUpToDate(pipelineJob) == [a, b, c, d] as Set
+
+        // changing the input of a re-runs a and everything that depends on it
+        new File(dir, "in.txt").text = "changed"
+        assert runService.findUpToDate(pipelineJob) == [d] as Set
+
+        runService.setIncremental(false)
+        assert runService.findUpToDate(pipelineJob).isEmpty()
+    }
+}
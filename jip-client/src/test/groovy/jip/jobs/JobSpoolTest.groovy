@@ -0,0 +1,127 @@
+package jip.jobs
+
+import com.google.common.io.Files
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+
+/**
+ *
+ * @author Thasso Griebel <thasso.griebel@gmail.com>
+ */
+class JobSpoolTest {
+    File dir
+
+    @Test
+    public void testDrainingBatchesUpdates() throws Exception {
+        for (boolean journal : [true, false]) {
+            def store = new FileJobStore(new File(dir, "store-${journal}"), journal, FileJobStore.DEFAULT_COMPACTION_SIZE)
+            def pipelineJob = new DefaultPipelineJob("1", "test")
+            def job = new DefaultJob("1", "job", dir.absolutePath)
+            pipelineJob.jobs << job
+            store.save(pipelineJob)
+
+            def spool = JobSpool.open(job, store, 60000)
+            assert JobSpool.getFile(job) == spool.file
+            spool.file << "info started\n"
+            (1..100).each { spool.file << "progress ${it}\n" }
+            spool.file << "warn almost done\nerror incomplete"
+            spool.drain()
+
+            def loaded = store.get("1").jobs[0]
+            assert loaded.messages*.message == ["started", "almost done"]
+            assert loaded.messages*.type == [MessageType.Info, MessageType.Warn]
+            assert loaded.progress == 100
+
+            // the incomplete line is sent once it is terminated
+            spool.file << "\n"
+            spool.close()
+            assert !spool.file.exists()
+            assert JobSpool.getFile(job) == null
+            loaded = store.get("1").jobs[0]
+            assert loaded.messages*.message == ["started", "almost done", "incomplete"]
+        }
+    }
+
+    @Test
+    public void testFailedUpdatesAreRetried() throws Exception {
+        def updates = []
+        boolean fail = true
+        def interrupted = false
+        def store = [update: { String pipelineId, String jobId, List messages, Integer progress ->
+            interrupted |= Thread.currentThread().isInterrupted()
+            if(fail) throw new RuntimeException("locked")
+            updates << messages*.message
+        }] as JobStore
+        def job = new DefaultJob("1", "job", dir.absolutePath)
+
+        def spool = JobSpool.open(job, store, 10)
+        spool.file << "info first\n"
+        spool.drain()
+        assert updates.isEmpty()
+        fail = false
+        spool.file << "info second\n"
+        spool.close()
+        assert updates.flatten() == ["first", "second"]
+        assert !interrupted
+    }
+
+    @Test
+    public void testJobScriptHelpersWriteToSpool() throws Exception {
+        def store = new FileJobStore(dir)
+        def pipelineJob = new DefaultPipelineJob("1", "test")
+        def job = new DefaultJob("1", "job", dir.absolutePath)
+        pipelineJob.jobs << job
+        store.save(pipelineJob)
+
+        def spool = JobSpool.open(job, store, 60000)
+        def script = new File(dir, "script.sh")
+        script.text = jip.utils.Templates.toJobScript(job, "jip.info hello world\njip.progress 42\n")
+        def process = ["bash", script.absolutePath].execute(["JIP_SPOOL=${spool.file.absolutePath}"], dir)
+        assert process.waitFor() == 0
+        spool.close()
+
+        def loaded = store.get("1").jobs[0]
+        assert loaded.messages*.message == ["hello world"]
+        assert loaded.progress == 42
+    }
+
+    @Test
+    public void testMultiLineMessages() throws Exception {
+        def store = new FileJobStore(dir)
+        def pipelineJob = new DefaultPipelineJob("1", "test")
+        def job = new DefaultJob("1", "job", dir.absolutePath)
+        pipelineJob.jobs << job
+        store.save(pipelineJob)
+
+        def spool = JobSpool.open(job, store, 60000)
+        def script = new File(dir, "script.sh")
+        script.text = jip.utils.Templates.toJobScript(job, '''
+jip.warn "first line
+error second line"
+jip.info 'C:\\new\\dir' done
+jip.progress 42
+''')
+        def process = ["bash", script.absolutePath].execute(["JIP_SPOOL=${spool.file.absolutePath}"], dir)
+        assert process.waitFor() == 0
+        assert spool.file.readLines().size() == 3
+        spool.close()
+
+        def loaded = store.get("1").jobs[0]
+        assert loaded.messages*.message == ["first line\nerror second line", "C:\\new\\dir done"]
+        assert loaded.messages*.type == [MessageType.Warn, MessageType.Info]
+        assert loaded.progress == 42
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDir()
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (dir != null){
+            assert "rm -Rf ${dir.getAbsolutePath()}".execute().waitFor() == 0
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package jip.jobs
+
+import org.junit.Test
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ *
+ * @author Thasso Griebel <thasso.griebel@gmail.com>
+ */
+class LocalExecutorTest {
+
+    private static Job job(String id, Job... before){
+        def job = new DefaultJob("1", id, ".")
+        for (Job b : before) {
+            job.dependenciesBefore << b
+            b.dependenciesAfter << job
+        }
+        return job
+    }
+
+    @Test
+    public void testIndependentBranchesRunInParallel() throws Exception {
+        def split = job("split")
+        def a = job("a", split)
+        def b = job("b", split)
+        def merge = job("merge", a, b)
+        def latch = new CountDownLatch(2)
+        def order = Collections.synchronizedList([])
+
+        def states = new LocalExecutor(4).execute([split, a, b, merge], new LocalExecutor.JobRunner() {
+            @Override
+            boolean run(Job job) throws Exception {
+                if(job.id == "a" || job.id == "b"){
+                    // both branches have to be running at the same time
+                    latch.countDown()
+                    assert latch.await(10, TimeUnit.SECONDS)
+                }
+                order << job.id
+                return true
+            }
+
+            @Override
+            void canceled(Job job, Job cause) {
+                assert false
+            }
+        })
+        assert order[0] == "split"
+        assert order[3] == "merge"
+        assert states.values().every {it == JobState.Done}
+    }
+
+    @Test
+    public void testFailureCancelsOnlyDependentJobs() throws Exception {
+        def split = job("split")
+        def a = job("a", split)
+        def a2 = job("a2", a)
+        def b = job("b", split)
+        def b2 = job("b2", b)
+        def merge = job("merge", a2, b2)
+        def canceled = Collections.synchronizedList([])
+        def executed = Collections.synchronizedList([])
+
+        def states = new LocalExecutor(1).execute([split, a, b, a2, b2, merge], new LocalExecutor.JobRunner() {
+            @Override
+            boolean run(Job job) throws Exception {
+                executed << job.id
+                if(job.id == "a") throw new RuntimeException("broken")
+                return true
+            }
+
+            @Override
+            void canceled(Job job, Job cause) {
+                assert cause.id == "a"
+                canceled << job.id
+            }
+        })
+        assert executed == ["split", "a", "b", "b2"]
+        assert canceled as Set == ["a2", "merge"] as Set
+        assert states[a] == JobState.Failed
+        assert states[b2] == JobState.Done
+        assert states[merge] == JobState.Canceled
+    }
+
+    @Test
+    public void testJobsArePackedByThreadsAndMemory() throws Exception {
+        def jobs = []
+        [[2, 1000], [2, 1000], [2, 3000], [1, 500], [16, 0], [1, 9000]].eachWithIndex { r, i ->
+            def j = job("job-${i}")
+            j.executeEnvironment.threads = r[0]
+            j.executeEnvironment.maxMemory = r[1]
+            jobs << j
+        }
+        def usedThreads = new AtomicInteger()
+        def usedMemory = new AtomicLong()
+        def maxThreads = new AtomicInteger()
+        def maxMemory = new AtomicLong()
+        def executor = new LocalExecutor(0, 4, 4000)
+
+        def states = executor.execute(jobs, new LocalExecutor.JobRunner() {
+            @Override
+            boolean run(Job job) throws Exception {
+                int t = Math.min(4, job.executeEnvironment.threads)
+                long m = Math.min(4000, job.executeEnvironment.maxMemory * job.executeEnvironment.threads)
+                synchronized (maxThreads){
+                    maxThreads.set(Math.max(maxThreads.get(), usedThreads.addAndGet(t)))
+                    maxMemory.set(Math.max(maxMemory.get(), usedMemory.addAndGet(m)))
+                }
+                Thread.sleep(50)
+                usedThreads.addAndGet(-t)
+                usedMemory.addAndGet(-m)
+                return true
+            }
+
+            @Override
+            void canceled(Job job, Job cause) {
+            }
+        })
+        assert states.size() == 6
+        assert states.values().every {it == JobState.Done}
+        assert maxThreads.get() <= 4
+        assert maxMemory.get() <= 4000
+        // the first two jobs fit next to each other
+        assert maxThreads.get() == 4
+    }
+
+    @Test
+    public void testMemoryIsReservedPerThread() throws Exception {
+        def jobs = (0..1).collect { i ->
+            def j = job("job-${i}")
+            j.executeEnvironment.threads = 2
+            j.executeEnvironment.maxMemory = 1500
+            j
+        }
+        def running = new AtomicInteger()
+        def maxRunning = new AtomicInteger()
+        def executor = new LocalExecutor(0, 8, 4000)
+
+        def states = executor.execute(jobs, new LocalExecutor.JobRunner() {
+            @Override
+            boolean run(Job job) throws Exception {
+                synchronized (maxRunning){
+                    maxRunning.set(Math.max(maxRunning.get(), running.incrementAndGet()))
+                }
+                Thread.sleep(50)
+                running.decrementAndGet()
+                return true
+            }
+
+            @Override
+            void canceled(Job job, Job cause) {
+            }
+        })
+        assert states.values().every {it == JobState.Done}
+        // each job reserves 3000 of the 4000 megabytes
+        assert maxRunning.get() == 1
+    }
+
+    @Test
+    public void testLargeJobIsNotStarvedBySmallJobs() throws Exception {
+        def jobs = (0..40).collect { i -> job("job-${i}") }
+        def large = jobs[1]
+        large.executeEnvironment.threads = 4
+        def order = Collections.synchronizedList([])
+        def usedThreads = new AtomicInteger()
+        def maxThreads = new AtomicInteger()
+        def executor = new LocalExecutor(0, 4, 4000)
+        executor.bypassLimit = 4
+
+        def states = executor.execute(jobs, new LocalExecutor.JobRunner() {
+            @Override
+            boolean run(Job job) throws Exception {
+                int t = job.executeEnvironment.threads
+                synchronized (maxThreads){
+                    maxThreads.set(Math.max(maxThreads.get(), usedThreads.addAndGet(t)))
+                }
+                order << job.id
+                Thread.sleep(10)
+                usedThreads.addAndGet(-t)
+                return true
+            }
+
+            @Override
+            void canceled(Job job, Job cause) {
+            }
+        })
+        assert states.values().every {it == JobState.Done}
+        assert maxThreads.get() <= 4
+        // the large job waits behind the first job, reserves the capacity once
+        // four jobs passed it and runs alone before all remaining small jobs
+        assert order.indexOf(large.id) == 5
+    }
+}
@@ -0,0 +1,134 @@
+package jip.jobs
+
+import com.google.common.io.Files
+import jip.JipEnvironment
+import jip.tools.Tool
+import jip.tools.ToolService
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+
+import static jip.jobs.CopyJobs.createJob
+
+/**
+ *
+ * @author Thasso Griebel <thasso.griebel@gmail.com>
+ */
+class ResultCacheTest {
+    File dir
+    Tool tool
+    int runs
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDir()
+        tool = CopyJobs.createTool { runs++ }
+        tool.version = "1.0"
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        dir.deleteDir()
+    }
+
+    @Test
+    public void testKeysUseInputContent() throws Exception {
+        def cache = new ResultCache(new File(dir, "cache"), 0)
+        new File(dir, "a.txt").text = "a"
+        new File(dir, "b.txt").text = "a"
+        new File(dir, "c.txt").text = "c"
+
+        def key = cache.key(createJob(dir, "copy-1", "a.txt", "out/a.out"), tool)
+        assert key != null
+        // output paths and input paths with the same content share the key
+        assert cache.key(createJob(dir, "copy-2", "b.txt", "other.out"), tool) == key
+        assert cache.key(createJob(dir, "copy-1", "c.txt", "out/a.out"), tool) != key
+        assert cache.key(createJob(dir, "copy-1", "a.txt", "out/a.txt"), tool) != key
+        assert cache.key(createJob(dir, "copy-1", "a.txt", "out/a.out", [threads: 2]), tool) != key
+        tool.version = "2.0"
+        assert cache.key(createJob(dir, "copy-1", "a.txt", "out/a.out"), tool) != key
+        // missing inputs can not be cached
+        assert cache.key(createJob(dir, "copy-1", "missing.txt", "out/a.out"), tool) == null
+
+        // hashes are remembered by path, size and modification time
+        assert new File(cache.directory, "hashes").exists()
+        tool.version = "1.0"
+        new File(dir, "a.txt").text = "b"
+        assert new ResultCache(cache.directory, 0).key(createJob(dir, "copy-1", "a.txt", "out/a.out"), tool) != key
+    }
+
+    @Test
+    public void testPutAndRestore() throws Exception {
+        // outputs are copied by default, links share the read only cache file
+        assert !new ResultCache(new File(dir, "cache"), 0).link
+        for (boolean link : [true, false]) {
+            def cache = new ResultCache(new File(dir, "cache-${link}"), 0)
+            cache.link = link
+            new File(dir, "a.txt").text = "content"
+            def job = createJob(dir, "copy-1", "a.txt", "a-${link}.out")
+            def key = cache.key(job, tool)
+            assert !cache.restore(key, job, tool)
+            // missing outputs are not cached
+            assert !cache.put(key, job, tool)
+            assert !new File(cache.directory, key).exists()
+
+            new File(dir, "a-${link}.out").text = "content"
+            assert cache.put(key, job, tool)
+            def other = createJob(dir, "copy-2", "a.txt", "restored/b-${link}.out")
+            assert cache.restore(key, other, tool)
+            assert new File(dir, "restored/b-${link}.out").text == "content"
+            assert !cache.directory.listFiles().any { it.name.startsWith(".") }
+        }
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() throws Exception {
+        def cache = new ResultCache(new File(dir, "cache"), 25)
+        def keys = []
+        (1..3).each { i ->
+            new File(dir, "${i}.txt").text = "${i}" * 10
+            def job = createJob(dir, "copy-${i}", "${i}.txt", "${i}.out")
+            new File(dir, "${i}.out").text = "${i}" * 10
+            keys << cache.key(job, tool)
+            assert cache.put(keys[-1], job, tool)
+            new File(cache.directory, keys[-1]).setLastModified(System.currentTimeMillis() - (10 - i) * 10000)
+            if(i == 2){
+                // use the first entry so the second one is evicted
+                assert cache.restore(keys[0], createJob(dir, "copy-1", "1.txt", "1.out"), tool)
+            }
+        }
+        assert new File(cache.directory, keys[0]).exists()
+        assert !new File(cache.directory, keys[1]).exists()
+        assert new File(cache.directory, keys[2]).exists()
+    }
+
+    @Test
+    public void testRunServiceRestoresResults() throws Exception {
+        def runService = new DefaultRunService(
+                [getTool: { String name -> tool }] as ToolService,
+                null, null, null,
+                [getConfiguration: { [jobs: [results: [cache: true, directory: new File(dir, "cache").absolutePath]]] },
+                 getJipHome: { boolean user -> dir }] as JipEnvironment)
+        new File(dir, "a.txt").text = "a"
+        runService.execute(createJob(dir, "copy-1", "a.txt", "a.out"), false)
+        assert runs == 1
+        runService.execute(createJob(dir, "copy-2", "a.txt", "b.out"), false)
+        assert runs == 1
+        assert new File(dir, "b.out").text == "a"
+    }
+
+    @Test
+    public void testUnusableCacheDoesNotFailJobs() throws Exception {
+        // the hash journal can not be opened
+        new File(dir, "cache/hashes").mkdirs()
+        def runService = new DefaultRunService(
+                [getTool: { String name -> tool }] as ToolService,
+                null, null, null,
+                [getConfiguration: { [jobs: [results: [cache: true, directory: new File(dir, "cache").absolutePath]]] },
+                 getJipHome: { boolean user -> dir }] as JipEnvironment)
+        new File(dir, "a.txt").text = "a"
+        runService.execute(createJob(dir, "copy-1", "a.txt", "a.out"), false)
+        assert runs == 1
+        assert new File(dir, "a.out").text == "a"
+    }
+}
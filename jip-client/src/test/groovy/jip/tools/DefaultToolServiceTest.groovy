@@ -1,5 +1,7 @@
 package jip.tools
 
+import com.google.common.io.Files
+import jip.JipEnvironment
 import jip.dsl.JipDSL
 import org.junit.Test
 
@@ -17,6 +19,46 @@ class DefaultToolServiceTest {
         assert service.getTool("bash") != null
     }
 
+    @Test
+    public void testLoadingSingleTool() throws Exception {
+        def dir = Files.createTempDir()
+        try {
+            new File(dir, "tools").mkdirs()
+            def a = new File(dir, "tools/a.groovy")
+            a.text = 'tool("a"){ exec "echo a" }'
+            new File(dir, "tools/b.groovy").text = 'tool("b"){ exec "echo b" }\ntool("c"){ exec "echo c" }'
+            def environment = [getJipHome: { boolean user -> user ? new File(dir, "user") : dir }, getConfiguration: { [:] }] as JipEnvironment
+
+            // a full initialization writes the index
+            assert new DefaultToolService(null, environment, null).getTool("a") != null
+            def index = new File(dir, "user/" + DefaultToolService.INDEX_FILE)
+            assert index.readLines().findAll { it.startsWith("tool") }.collect { it.split("\t")[1] } == ["a", "b", "c"]
+
+            def service = new DefaultToolService(null, environment, null)
+            assert service.loadTool("c").name == "c"
+            assert service.loadTool("bash").name == "bash"
+            assert service.getTool("c") == service.loadTool("c")
+            assert !service.initialized
+
+            // a new definition file might shadow the indexed one
+            new File(dir, "tools/d.groovy").text = 'tool("d"){ exec "echo d" }'
+            service = new DefaultToolService(null, environment, null)
+            assert service.loadTool("c") != null
+            assert service.initialized
+            service = new DefaultToolService(null, environment, null)
+            assert service.loadTool("c") != null
+            assert !service.initialized
+
+            // changed definitions are loaded by initializing the service
+            a.text = 'tool("a"){ exec "echo changed" }'
+            a.lastModified = a.lastModified() + 2000
+            service = new DefaultToolService(null, environment, null)
+            assert service.loadTool("a") != null
+            assert service.initialized
+        } finally {
+            dir.deleteDir()
+        }
+    }
 
     @Test
     public void testParsingOptions() throws Exception {
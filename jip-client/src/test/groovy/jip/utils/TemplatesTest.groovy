@@ -25,20 +25,46 @@ class TemplatesTest {
 JIP_PIPELINE=1
 JIP_JOB=2
 
+# messages go to the spool of the executing process if there is one,
+# one line per message with backslashes and newlines escaped
+jip.spool(){
+    local bs='\\'
+    local text="\${*:2}"
+    text=\${text//"\$bs"/"\$bs\$bs"}
+    text=\${text//\$'\\n'/"\${bs}n"}
+    printf '%s %s\\n' "\$1" "\$text" >> "\${JIP_SPOOL}"
+}
+
 jip.info(){
-    jip message -p \${JIP_PIPELINE} -j \${JIP_JOB} --info \$@
+    if [ -n "\${JIP_SPOOL}" ]; then
+        jip.spool info "\$@"
+    else
+        jip message -p \${JIP_PIPELINE} -j \${JIP_JOB} --info \$@
+    fi
 }
 
 jip.warn(){
-    jip message -p \${JIP_PIPELINE} -j \${JIP_JOB} --warn \$@
+    if [ -n "\${JIP_SPOOL}" ]; then
+        jip.spool warn "\$@"
+    else
+        jip message -p \${JIP_PIPELINE} -j \${JIP_JOB} --warn \$@
+    fi
 }
 
 jip.error(){
-    jip message -p \${JIP_PIPELINE} -j \${JIP_JOB} --error \$@
+    if [ -n "\${JIP_SPOOL}" ]; then
+        jip.spool error "\$@"
+    else
+        jip message -p \${JIP_PIPELINE} -j \${JIP_JOB} --error \$@
+    fi
 }
 
 jip.progress(){
-    jip message -p \${JIP_PIPELINE} -j \${JIP_JOB} --progress \$1
+    if [ -n "\${JIP_SPOOL}" ]; then
+        jip.spool progress "\$1"
+    else
+        jip message -p \${JIP_PIPELINE} -j \${JIP_JOB} --progress \$1
+    fi
 }
 
 test"""
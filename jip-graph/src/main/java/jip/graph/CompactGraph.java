@@ -0,0 +1,354 @@
+/*
+ * Copyright (C) 2012 Thasso Griebel
+ *
+ * This file is part of JIP.
+ *
+ * JIP is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JIP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JIP.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package jip.graph;
+
+import java.util.*;
+
+/**
+ * Immutable directed acyclic graph for read only access after a graph is prepared.
+ * Nodes are numbered from 0 to {@link #size()}-1 in topological order and the
+ * successors and predecessors of all nodes are stored in two int arrays that are
+ * indexed by offset arrays. Parallel edges are merged.
+ * <p>
+ * Traversals work on the node numbers and do not allocate. Use a {@link Builder}
+ * to create a graph.
+ * </p>
+ *
+ * @param <T> the node type
+ */
+public class CompactGraph<T> implements Iterable<T> {
+    /**
+     * The nodes in topological order
+     */
+    private final Object[] nodes;
+    /**
+     * Start of the successors of node i in {@link #successors}
+     */
+    private final int[] successorOffsets;
+    /**
+     * The successors of all nodes
+     */
+    private final int[] successors;
+    /**
+     * Start of the predecessors of node i in {@link #predecessors}
+     */
+    private final int[] predecessorOffsets;
+    /**
+     * The predecessors of all nodes
+     */
+    private final int[] predecessors;
+    /**
+     * Node numbers by node, compared by identity
+     */
+    private final Map<T, Integer> index;
+
+    private CompactGraph(Object[] nodes, int[] successorOffsets, int[] successors,
+                         int[] predecessorOffsets, int[] predecessors, Map<T, Integer> index) {
+        this.nodes = nodes;
+        this.successorOffsets = successorOffsets;
+        this.successors = successors;
+        this.predecessorOffsets = predecessorOffsets;
+        this.predecessors = predecessors;
+        this.index = index;
+    }
+
+    /**
+     * Get the number of nodes
+     *
+     * @return size the number of nodes
+     */
+    public int size() {
+        return nodes.length;
+    }
+
+    /**
+     * Get the number of edges, without parallel edges
+     *
+     * @return edges the number of edges
+     */
+    public int edgeCount() {
+        return successors.length;
+    }
+
+    /**
+     * Get a node
+     *
+     * @param node the node number
+     * @return node the node
+     */
+    @SuppressWarnings("unchecked")
+    public T get(int node) {
+        return (T) nodes[node];
+    }
+
+    /**
+     * Get the number of a node
+     *
+     * @param node the node
+     * @return number the node number or -1 if the node is not part of this graph
+     */
+    public int indexOf(T node) {
+        Integer i = index.get(node);
+        return i == null ? -1 : i;
+    }
+
+    /**
+     * Get the number of successors of a node
+     *
+     * @param node the node number
+     * @return degree the number of successors
+     */
+    public int outDegree(int node) {
+        return successorOffsets[node + 1] - successorOffsets[node];
+    }
+
+    /**
+     * Get the number of predecessors of a node
+     *
+     * @param node the node number
+     * @return degree the number of predecessors
+     */
+    public int inDegree(int node) {
+        return predecessorOffsets[node + 1] - predecessorOffsets[node];
+    }
+
+    /**
+     * Get a successor of a node
+     *
+     * @param node the node number
+     * @param i the index of the successor, less than {@link #outDegree(int)}
+     * @return successor the node number of the successor
+     */
+    public int successor(int node, int i) {
+        return successors[successorOffsets[node] + i];
+    }
+
+    /**
+     * Get a predecessor of a node
+     *
+     * @param node the node number
+     * @param i the index of the predecessor, less than {@link #inDegree(int)}
+     * @return predecessor the node number of the predecessor
+     */
+    public int predecessor(int node, int i) {
+        return predecessors[predecessorOffsets[node] + i];
+    }
+
+    /**
+     * Get all nodes in topological order
+     *
+     * @return nodes unmodifiable list of nodes
+     */
+    @SuppressWarnings("unchecked")
+    public List<T> getNodes() {
+        return Collections.unmodifiableList((List<T>) Arrays.asList(nodes));
+    }
+
+    /**
+     * Iterate the nodes in topological order
+     *
+     * @return iterator the iterator
+     */
+    @Override
+    public Iterator<T> iterator() {
+        return getNodes().iterator();
+    }
+
+    /**
+     * Builds compact graphs. Nodes are compared by identity.
+     *
+     * @param <T> the node type
+     */
+    public static class Builder<T> {
+        /**
+         * The nodes in insertion order
+         */
+        private final List<T> nodes = new ArrayList<T>();
+        /**
+         * Node numbers by node
+         */
+        private final Map<T, Integer> index = new IdentityHashMap<T, Integer>();
+        /**
+         * Edge sources
+         */
+        private int[] sources = new int[16];
+        /**
+         * Edge targets
+         */
+        private int[] targets = new int[16];
+        /**
+         * Number of edges
+         */
+        private int edges;
+
+        /**
+         * Add a node. Nodes that were already added are ignored
+         *
+         * @param node the node
+         * @return builder this builder
+         */
+        public Builder<T> addNode(T node) {
+            if (!index.containsKey(node)) {
+                index.put(node, nodes.size());
+                nodes.add(node);
+            }
+            return this;
+        }
+
+        /**
+         * Returns true if the node was added to this builder
+         *
+         * @param node the node
+         * @return contained true if the node was added
+         */
+        public boolean contains(T node) {
+            return index.containsKey(node);
+        }
+
+        /**
+         * Add an edge between two nodes that were added before
+         *
+         * @param source the source node
+         * @param target the target node
+         * @return builder this builder
+         */
+        public Builder<T> addEdge(T source, T target) {
+            Integer s = index.get(source);
+            Integer t = index.get(target);
+            if (s == null || t == null) throw new IllegalArgumentException("Edge " + source + " -> " + target + " references an unknown node");
+            if (edges == sources.length) {
+                sources = Arrays.copyOf(sources, edges * 2);
+                targets = Arrays.copyOf(targets, edges * 2);
+            }
+            sources[edges] = s;
+            targets[edges] = t;
+            edges++;
+            return this;
+        }
+
+        /**
+         * Create the graph. If the nodes were added in topological order, the order
+         * is kept, otherwise the nodes are sorted topologically
+         *
+         * @return graph the compact graph
+         * @throws IllegalArgumentException if the graph contains a cycle
+         */
+        public CompactGraph<T> build() {
+            int size = nodes.size();
+            int[] order = topologicalOrder(size);
+            // rank of the original node number in the topological order
+            int[] rank = new int[size];
+            for (int i = 0; i < size; i++) {
+                rank[order[i]] = i;
+            }
+            int[] s = new int[edges];
+            int[] t = new int[edges];
+            for (int e = 0; e < edges; e++) {
+                s[e] = rank[sources[e]];
+                t[e] = rank[targets[e]];
+            }
+            int[][] successors = adjacency(size, s, t);
+            int[][] predecessors = adjacency(size, t, s);
+
+            Object[] sorted = new Object[size];
+            Map<T, Integer> sortedIndex = new IdentityHashMap<T, Integer>(size);
+            for (int i = 0; i < size; i++) {
+                T node = nodes.get(order[i]);
+                sorted[i] = node;
+                sortedIndex.put(node, i);
+            }
+            return new CompactGraph<T>(sorted, successors[0], successors[1], predecessors[0], predecessors[1], sortedIndex);
+        }
+
+        /**
+         * Compute the topological order of the original node numbers
+         */
+        private int[] topologicalOrder(int size) {
+            int[] order = new int[size];
+            boolean sorted = true;
+            for (int e = 0; e < edges && sorted; e++) {
+                sorted = sources[e] < targets[e];
+            }
+            if (sorted) {
+                for (int i = 0; i < size; i++) {
+                    order[i] = i;
+                }
+                return order;
+            }
+            int[][] adjacency = adjacency(size, sources, targets);
+            int[] offsets = adjacency[0];
+            int[] successors = adjacency[1];
+            int[] waiting = new int[size];
+            for (int i = 0; i < successors.length; i++) {
+                waiting[successors[i]]++;
+            }
+            // order doubles as the queue of ready nodes
+            int head = 0;
+            int tail = 0;
+            for (int i = 0; i < size; i++) {
+                if (waiting[i] == 0) order[tail++] = i;
+            }
+            while (head < tail) {
+                int node = order[head++];
+                for (int i = offsets[node]; i < offsets[node + 1]; i++) {
+                    if (--waiting[successors[i]] == 0) order[tail++] = successors[i];
+                }
+            }
+            if (tail != size) throw new IllegalArgumentException("The graph contains a cycle");
+            return order;
+        }
+
+        /**
+         * Create sorted adjacency arrays without parallel edges
+         *
+         * @return adjacency the offsets and the adjacent nodes
+         */
+        private int[][] adjacency(int size, int[] from, int[] to) {
+            int[] offsets = new int[size + 1];
+            for (int e = 0; e < edges; e++) {
+                offsets[from[e] + 1]++;
+            }
+            for (int i = 0; i < size; i++) {
+                offsets[i + 1] += offsets[i];
+            }
+            int[] adjacent = new int[edges];
+            int[] fill = Arrays.copyOf(offsets, size);
+            for (int e = 0; e < edges; e++) {
+                adjacent[fill[from[e]]++] = to[e];
+            }
+            // sort and merge parallel edges
+            int length = 0;
+            int start = 0;
+            for (int i = 0; i < size; i++) {
+                int end = offsets[i + 1];
+                Arrays.sort(adjacent, start, end);
+                offsets[i] = length;
+                for (int j = start; j < end; j++) {
+                    if (j == start || adjacent[j] != adjacent[j - 1]) {
+                        adjacent[length++] = adjacent[j];
+                    }
+                }
+                start = end;
+            }
+            offsets[size] = length;
+            return new int[][]{offsets, Arrays.copyOf(adjacent, length)};
+        }
+    }
+}
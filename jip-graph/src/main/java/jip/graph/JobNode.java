@@ -44,7 +44,10 @@ public class JobNode {
      * The referenced pipelineJob
      */
     private PipelineJob pipelineJob;
-
+    /**
+     * The graphs that index this node or null
+     */
+    private transient List<PipelineGraph.IndexedGraph> owners;
     /**
      * Create a new node
      *
@@ -136,7 +139,39 @@ public class JobNode {
      * @param nodeId th node id
      */
     public void setNodeId(String nodeId) {
+        String oldId = this.nodeId;
         this.nodeId = nodeId;
+        if (owners != null) {
+            for (PipelineGraph.IndexedGraph owner : owners) {
+                owner.rename(this, oldId, nodeId);
+            }
+        }
+    }
+
+    /**
+     * Register a graph that indexes this node
+     *
+     * @param owner the graph
+     */
+    void addOwner(PipelineGraph.IndexedGraph owner) {
+        if (owners == null) owners = new ArrayList<PipelineGraph.IndexedGraph>(1);
+        owners.add(owner);
+    }
+
+    /**
+     * Remove a graph that indexes this node
+     *
+     * @param owner the graph
+     */
+    void removeOwner(PipelineGraph.IndexedGraph owner) {
+        if (owners == null) return;
+        // graphs compare by structure, remove the same instance
+        for (Iterator<PipelineGraph.IndexedGraph> it = owners.iterator(); it.hasNext(); ) {
+            if (it.next() == owner) {
+                it.remove();
+                return;
+            }
+        }
     }
 
     public Parameter getParameterRaw(String name) {
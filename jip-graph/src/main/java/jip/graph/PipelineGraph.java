@@ -29,6 +29,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -58,6 +59,26 @@ public class PipelineGraph {
      */
     private transient ScopeNode context;
 
+    /**
+     * Maximum number of threads used to prepare sub-pipelines
+     */
+    private transient int parallelism = 1;
+
+    /**
+     * Cached topological order of the nodes
+     */
+    private transient List<JobNode> order;
+
+    /**
+     * Cached node levels
+     */
+    private transient List<List<JobNode>> levels;
+
+    /**
+     * Modification count of the graph when the order was cached
+     */
+    private transient int orderModCount = -1;
+
     /**
      * Create the initial graph from the given pipeline
      *
@@ -86,7 +107,7 @@ public class PipelineGraph {
             }
         }
 
-        graph = new DirectedMultigraph<JobNode, JobEdge>(JobEdge.class);
+        graph = new IndexedGraph();
 
         HashMap<String, JobNode> initialNodes = new HashMap<String, JobNode>();
         log.debug("Creating initial execution nodes...");
@@ -184,6 +205,17 @@ public class PipelineGraph {
 
     }
 
+    /**
+     * Create a graph that is filled by the caller
+     *
+     * @param pipeline the pipeline
+     * @param graph the empty graph
+     */
+    private PipelineGraph(Pipeline pipeline, DirectedGraph<JobNode, JobEdge> graph) {
+        this.pipeline = pipeline;
+        this.graph = graph;
+    }
+
     private Object cleanToString(Object value){
         if(value instanceof Collection){
             ArrayList list = new ArrayList();
@@ -222,6 +254,74 @@ public class PipelineGraph {
     }
 
 
+    /**
+     * Remove all nodes that are not needed to create the given targets. A
+     * target is either a node id, a node id and one of its output parameters
+     * in the form <code>node.parameter</code>, or a tool id, which selects all
+     * nodes of that tool. The targets and all their ancestors are kept.
+     * This has to be called before the graph is prepared.
+     *
+     * @param targets the targets
+     * @return removed the number of removed nodes
+     * @throws IllegalArgumentException if a target does not match any node or output parameter
+     */
+    public int prune(Collection<String> targets) {
+        Set<JobNode> keep = Collections.newSetFromMap(new IdentityHashMap<JobNode, Boolean>());
+        Deque<JobNode> queue = new ArrayDeque<JobNode>();
+        for (String target : targets) {
+            List<JobNode> nodes = findTargets(target);
+            if (nodes.isEmpty()) throw new IllegalArgumentException("Unknown target " + target);
+            queue.addAll(nodes);
+        }
+        while (!queue.isEmpty()) {
+            JobNode node = queue.poll();
+            if (!keep.add(node)) continue;
+            for (JobEdge edge : graph.incomingEdgesOf(node)) {
+                queue.add(graph.getEdgeSource(edge));
+            }
+        }
+
+        List<JobNode> remove = new ArrayList<JobNode>();
+        for (JobNode node : graph.vertexSet()) {
+            if (!keep.contains(node)) remove.add(node);
+        }
+        for (JobNode node : remove) {
+            graph.removeVertex(node);
+        }
+        log.debug("Pruned " + remove.size() + " nodes, " + keep.size() + " nodes left");
+        return remove.size();
+    }
+
+    /**
+     * Find the nodes selected by a target
+     *
+     * @param target the target
+     * @return nodes the selected nodes
+     * @throws IllegalArgumentException if the target names a parameter that is not an output
+     */
+    private List<JobNode> findTargets(String target) {
+        JobNode node = findNode(target);
+        if (node != null) return Arrays.asList(node);
+
+        int dot = target.lastIndexOf('.');
+        if (dot > 0) {
+            node = findNode(target.substring(0, dot));
+            if (node != null) {
+                Parameter parameter = node.getParameterRaw(target.substring(dot + 1));
+                if (parameter == null || !parameter.isOutput()) {
+                    throw new IllegalArgumentException("Target " + target + " is not an output of " + node.getNodeId());
+                }
+                return Arrays.asList(node);
+            }
+        }
+
+        List<JobNode> nodes = new ArrayList<JobNode>();
+        for (JobNode candidate : graph.vertexSet()) {
+            if (target.equals(candidate.getPipelineJob().getToolId())) nodes.add(candidate);
+        }
+        return nodes;
+    }
+
     /**
      * Prepare the graph for submission. THis splits many-to-one nodes
      * and configured the properties. You should cal {@link #validate()} afterwards
@@ -236,74 +336,128 @@ public class PipelineGraph {
 
         // clean configuration
         for (JobNode node : getNodes()) {
-            for (String configKey : node.getConfiguration().keySet()) {
-                Object value = node.getConfiguration().get(configKey);
-                if(value instanceof Closure){
-                    node.getConfiguration().put(configKey, ((Closure)value).call(node.getConfiguration()));
-                }
+            resolveClosures(node);
+        }
+    }
+
+    /**
+     * Replace closures in the node configuration with their value
+     *
+     * @param node the node
+     */
+    private void resolveClosures(JobNode node) {
+        for (String configKey : node.getConfiguration().keySet()) {
+            Object value = node.getConfiguration().get(configKey);
+            if(value instanceof Closure){
+                node.getConfiguration().put(configKey, ((Closure)value).call(node.getConfiguration()));
             }
         }
     }
 
+    /**
+     * Get the maximum number of threads used to prepare sub-pipelines
+     *
+     * @return parallelism the number of threads
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Set the maximum number of threads used to prepare the graphs of
+     * sub-pipelines. The sub-pipeline graphs are independent and are
+     * prepared concurrently, but added to this graph in the same order
+     * as in a sequential preparation, so node ids and edges do not depend
+     * on this setting. Sub-pipelines that contain closures or further
+     * sub-pipelines are always prepared sequentially.
+     *
+     * @param parallelism the number of threads, values less than 2 prepare sequentially
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
     /**
      * Call this after graph preparation to remove all edges that represent transient dependencies
      * For example. If we have A->B->C and A->C, the A->C edge can be removed, C has to wait for B and B already
      * waits for A.
      */
     public void reduceDependencies(){
-        for (JobNode node : getNodes()) {
-            // create a subgraph that contains the node
-            // and all its direct predecessors
-            HashSet<JobNode> nodes = new HashSet<JobNode>();
-            nodes.add(node);
+        // the reduction does not change reachability, so one topological
+        // order is valid for the whole reduction
+        List<JobNode> order = getNodes();
+        int size = order.size();
+        Map<JobNode, Integer> positions = new HashMap<JobNode, Integer>(size * 4 / 3 + 1);
+        for (int i = 0; i < size; i++) {
+            positions.put(order.get(i), i);
+        }
+        // visit marks, stamped with the current target position + 1
+        int[] visited = new int[size];
+        int[] stack = new int[size];
+
+        for (int t = 0; t < size; t++) {
+            JobNode node = order.get(t);
+            if (graph.inDegreeOf(node) < 2) continue;
+
+            // distinct direct predecessors
+            LinkedHashSet<JobNode> predecessors = new LinkedHashSet<JobNode>();
+            int min = size;
             for (JobEdge parentEdge : graph.incomingEdgesOf(node)) {
-                nodes.add(graph.getEdgeSource(parentEdge));
-            }
-
-            if(nodes.size() >= 2){
-                // sort in topological order
-                List<JobNode> ordered = new ArrayList<JobNode>(getNodes());
-                // now, reverse teh topological order, so first element is our target node
-                Collections.reverse(ordered);
-                // and iterate the list. if we find a node that has an edge to the target node,
-                // remove all direct predeccors and keep the edge
-                HashSet<JobEdge> toRemove = new HashSet<JobEdge>();
-                List<JobNode> nodeList = new ArrayList<JobNode>(ordered.subList(ordered.indexOf(node) + 1, ordered.size()));
-                while(nodeList.size() > 0){
-                    JobNode next = nodeList.get(0);
-                    Set<JobEdge> allEdges1 = graph.getAllEdges(next, node);
-                    // remove all but one edge
-                    if(allEdges1.size() > 0){
-                        int b = 0;
-                        for (JobEdge jobEdge : allEdges1) {
-                            if(b++ >0) toRemove.add(jobEdge);
-                        }
-                        removePredecessors(node, nodeList, toRemove, next);
+                JobNode source = graph.getEdgeSource(parentEdge);
+                if (predecessors.add(source)) {
+                    min = Math.min(min, positions.get(source));
+                }
+            }
+
+            // mark all ancestors of the predecessors. Nodes before the first
+            // predecessor can not lead to another predecessor and are skipped
+            int stamp = t + 1;
+            int top = 0;
+            for (JobNode predecessor : predecessors) {
+                for (JobEdge incoming : graph.incomingEdgesOf(predecessor)) {
+                    int p = positions.get(graph.getEdgeSource(incoming));
+                    if (p >= min && visited[p] != stamp) {
+                        visited[p] = stamp;
+                        stack[top++] = p;
+                    }
+                }
+            }
+            while (top > 0) {
+                JobNode current = order.get(stack[--top]);
+                for (JobEdge incoming : graph.incomingEdgesOf(current)) {
+                    int p = positions.get(graph.getEdgeSource(incoming));
+                    if (p >= min && visited[p] != stamp) {
+                        visited[p] = stamp;
+                        stack[top++] = p;
                     }
-                    nodeList.remove(next);
                 }
-                // remove all edges that are not keep edges
-                graph.removeAllEdges(toRemove);
             }
-        }
-    }
 
-    private void removePredecessors(JobNode targetNode, List<JobNode> topologicalOrder, HashSet<JobEdge> toRemove, JobNode currentNode) {
-        // and remove all predecessors of the current "next" node from the ordered list
-        for (JobEdge incoming : graph.incomingEdgesOf(currentNode)) {
-            JobNode edgeSource = graph.getEdgeSource(incoming);
-            toRemove.addAll(graph.getAllEdges(edgeSource, targetNode));
-            topologicalOrder.remove(edgeSource);
-            removePredecessors(targetNode, topologicalOrder, toRemove, edgeSource);
+            // predecessors that are ancestors of another predecessor lose all
+            // their edges, the others keep exactly one edge
+            List<JobEdge> toRemove = new ArrayList<JobEdge>();
+            for (JobNode predecessor : predecessors) {
+                boolean transitive = visited[positions.get(predecessor)] == stamp;
+                int b = 0;
+                for (JobEdge jobEdge : graph.getAllEdges(predecessor, node)) {
+                    if (transitive || b++ > 0) toRemove.add(jobEdge);
+                }
+            }
+            graph.removeAllEdges(toRemove);
         }
     }
 
     /**
-     * Find nodes that represent pipelines and expand them
+     * Find nodes that represent pipelines and expand them.
+     * Nodes that embed the same pipeline and differ only in string
+     * parameters share a template graph that is prepared once and
+     * rebound for every node.
      * NOTE that this can only be called after splitting and configuring the graph
      */
     void expandPipelineNodes() {
-        ArrayList<JobNode> toRemove = new ArrayList<JobNode>();
+        List<JobNode> pipelineNodes = new ArrayList<JobNode>();
+        List<Pipeline> subPipelines = new ArrayList<Pipeline>();
+        List<Map<String, Object>> bindings = new ArrayList<Map<String, Object>>();
         for (JobNode jobNode : getNodes()) {
             if (jobNode.getPipelineJob().getPipeline() != null) {
                 log.debug("Expanding pipeline node " + jobNode.getNodeId());
@@ -313,72 +467,324 @@ public class PipelineGraph {
                 //Pipeline subPipeline = null;
 
                 // apply configuration
+                Map<String, Object> binding = new LinkedHashMap<String, Object>();
                 for (Parameter parameter : jobNode.getParameter()) {
-                    subPipeline.getConfiguration().put(parameter.getName(), jobNode.getParameter(parameter.getName()));
+                    Object value = jobNode.getParameter(parameter.getName());
+                    subPipeline.getConfiguration().put(parameter.getName(), value);
+                    binding.put(parameter.getName(), value);
                 }
+                // split clones share the pipeline, keep a copy of this configuration
+                pipelineNodes.add(jobNode);
+                subPipelines.add(new Pipeline(subPipeline));
+                bindings.add(binding);
+            }
+        }
+        if (pipelineNodes.isEmpty()) return;
 
-                PipelineGraph subgraph = new PipelineGraph(subPipeline);
-                subgraph.prepare();
+        PipelineGraph[] prepared = new PipelineGraph[pipelineNodes.size()];
+        stampTemplates(pipelineNodes, subPipelines, bindings, prepared);
+        List<Pipeline> remaining = new ArrayList<Pipeline>();
+        for (int i = 0; i < prepared.length; i++) {
+            if (prepared[i] == null) remaining.add(subPipelines.get(i));
+        }
+        Iterator<PipelineGraph> remainingGraphs = prepareSubgraphs(remaining).iterator();
+        List<PipelineGraph> subgraphs = new ArrayList<PipelineGraph>(prepared.length);
+        for (PipelineGraph subgraph : prepared) {
+            subgraphs.add(subgraph != null ? subgraph : remainingGraphs.next());
+        }
+        for (int i = 0; i < pipelineNodes.size(); i++) {
+            JobNode jobNode = pipelineNodes.get(i);
+            PipelineGraph subgraph = subgraphs.get(i);
+
+            // rename and add all nodes
+            for (JobNode node : subgraph.getNodes()) {
+                JobNode clone = new JobNode(node);
+                clone.setNodeId(jobNode.getNodeId() + "_" + node.getNodeId());
+                // update the node directory
+                graph.addVertex(clone);
+            }
+
+            // add all edges
+            for (JobEdge jobEdge : subgraph.getGraph().edgeSet()) {
+                JobNode source = subgraph.getGraph().getEdgeSource(jobEdge);
+                JobNode target = subgraph.getGraph().getEdgeTarget(jobEdge);
+
+                JobNode newSource = findNode(jobNode.getNodeId() + "_" + source.getNodeId());
+                JobNode newTarget = findNode(jobNode.getNodeId() + "_" + target.getNodeId());
+
+                graph.addEdge(newSource, newTarget, new JobEdge(jobEdge.getType(), newSource.getNodeId(), jobEdge.getTargetProperty(), jobEdge.getValue(), jobEdge.getSourceProperty()));
+            }
 
-                // rename and add all nodes
-                for (JobNode node : subgraph.getNodes()) {
-                    JobNode clone = new JobNode(node);
-                    clone.setNodeId(jobNode.getNodeId() + "_" + node.getNodeId());
-                    // update the node directory
-                    graph.addVertex(clone);
+            // add incoming and outgoing edges
+            // using manual "after" edge
+            // first incoming edges
+            //
+            // first find all nodes in the subgraph that have no
+            // incoming edges or outgoing edges
+            List<JobNode> noIncomingEdges = new ArrayList<JobNode>();
+            List<JobNode> noOutgoingEdges = new ArrayList<JobNode>();
+            for (JobNode node : subgraph.getNodes()) {
+                if (subgraph.getGraph().inDegreeOf(node) == 0) {
+                    noIncomingEdges.add(node);
                 }
+                if (subgraph.getGraph().outDegreeOf(node) == 0) {
+                    noOutgoingEdges.add(node);
+                }
+            }
+            // connect incomings
+            for (JobEdge jobEdge : graph.incomingEdgesOf(jobNode)) {
+                JobNode source = graph.getEdgeSource(jobEdge);
+                for (JobNode noIncomingEdge : noIncomingEdges) {
+                    JobNode target = findNode(jobNode.getNodeId() + "_" + noIncomingEdge.getNodeId());
+                    graph.addEdge(source, target, new JobEdge(source.getNodeId()));
+                }
+            }
+            // connect outgoings
+            for (JobEdge jobEdge : graph.outgoingEdgesOf(jobNode)) {
+                JobNode target = graph.getEdgeTarget(jobEdge);
+                for (JobNode sourceNode : noOutgoingEdges) {
+                    JobNode source = findNode(jobNode.getNodeId() + "_" + sourceNode.getNodeId());
+                    graph.addEdge(source, target, new JobEdge(source.getNodeId()));
+                }
+            }
+        }
+        // remove old nodes
+        for (JobNode jobNode : pipelineNodes) {
+            graph.removeVertex(jobNode);
+        }
+        // the sub-graphs were copied
+        for (PipelineGraph subgraph : subgraphs) {
+            subgraph.discard();
+        }
+    }
 
-                // add all edges
-                for (JobEdge jobEdge : subgraph.getGraph().edgeSet()) {
-                    JobNode source = subgraph.getGraph().getEdgeSource(jobEdge);
-                    JobNode target = subgraph.getGraph().getEdgeTarget(jobEdge);
+    /**
+     * Prepare one template graph for all nodes that embed the same pipeline
+     * with bindings that differ only in string values and create the graphs
+     * of the nodes from the template. The template is prepared with
+     * placeholders for the string values, which are replaced by the values
+     * of each node, including the name, parent and extension of the values
+     * referenced in the sub-pipeline. Groups with a single node, templates
+     * that contain splits and templates with placeholders that can not be
+     * replaced are left to the regular preparation.
+     *
+     * @param pipelineNodes the pipeline nodes
+     * @param subPipelines the configured sub-pipelines
+     * @param bindings the parameter values of the nodes
+     * @param prepared receives the graphs that were created from templates
+     */
+    private void stampTemplates(List<JobNode> pipelineNodes, List<Pipeline> subPipelines, List<Map<String, Object>> bindings, PipelineGraph[] prepared) {
+        Map<TemplateKey, List<Integer>> groups = new LinkedHashMap<TemplateKey, List<Integer>>();
+        for (int i = 0; i < pipelineNodes.size(); i++) {
+            TemplateKey key = TemplateKey.create(pipelineNodes.get(i).getPipelineJob().getPipeline(), bindings.get(i));
+            if (key == null || !isIndependent(subPipelines.get(i))) continue;
+            List<Integer> group = groups.get(key);
+            if (group == null) {
+                group = new ArrayList<Integer>();
+                groups.put(key, group);
+            }
+            group.add(i);
+        }
 
-                    JobNode newSource = findNode(jobNode.getNodeId() + "_" + source.getNodeId());
-                    JobNode newTarget = findNode(jobNode.getNodeId() + "_" + target.getNodeId());
+        for (Map.Entry<TemplateKey, List<Integer>> entry : groups.entrySet()) {
+            List<Integer> group = entry.getValue();
+            if (group.size() < 2) continue;
+            List<String> rebound = entry.getKey().getRebound();
+            boolean[] extensions = new boolean[rebound.size()];
+            for (int k = 0; k < rebound.size(); k++) {
+                extensions[k] = entry.getKey().hasExtension(rebound.get(k));
+            }
 
-                    graph.addEdge(newSource, newTarget, new JobEdge(jobEdge.getType(), newSource.getNodeId(), jobEdge.getTargetProperty(), jobEdge.getValue(), jobEdge.getSourceProperty()));
+            // prepare the template with placeholders for the rebound values
+            Pipeline templatePipeline = new Pipeline(subPipelines.get(group.get(0)));
+            for (int k = 0; k < rebound.size(); k++) {
+                templatePipeline.getConfiguration().put(rebound.get(k), Rebinder.placeholder(k, extensions[k]));
+            }
+            PipelineGraph template = prepareSubgraph(templatePipeline);
+            boolean valid = true;
+            for (JobNode node : template.getNodes()) {
+                valid &= !node.isSplitNode();
+            }
+            if (!valid) {
+                log.debug("Sub-pipeline template contains splits, preparing " + group.size() + " instances separately");
+                template.discard();
+                continue;
+            }
+
+            PipelineGraph[] stamped = new PipelineGraph[group.size()];
+            for (int g = 0; g < group.size() && valid; g++) {
+                Map<String, Object> binding = bindings.get(group.get(g));
+                List<String> values = new ArrayList<String>(rebound.size());
+                for (String name : rebound) {
+                    values.add((String) binding.get(name));
                 }
+                stamped[g] = template.stamp(new Rebinder(values, extensions));
+                valid = stamped[g] != null;
+            }
+            template.discard();
+            if (!valid) {
+                log.debug("Unable to rebind sub-pipeline template, preparing " + group.size() + " instances separately");
+                for (PipelineGraph graph : stamped) {
+                    if (graph != null) graph.discard();
+                }
+                continue;
+            }
+            log.debug("Created " + group.size() + " sub-pipelines from a single template");
+            for (int g = 0; g < group.size(); g++) {
+                prepared[group.get(g)] = stamped[g];
+            }
+        }
+    }
 
-                // add incoming and outgoing edges
-                // using manual "after" edge
-                // first incoming edges
-                //
-                // first find all nodes in the subgraph that have no
-                // incoming edges or outgoing edges
-                List<JobNode> noIncomingEdges = new ArrayList<JobNode>();
-                List<JobNode> noOutgoingEdges = new ArrayList<JobNode>();
-                for (JobNode node : subgraph.getNodes()) {
-                    if (subgraph.getGraph().inDegreeOf(node) == 0) {
-                        noIncomingEdges.add(node);
-                    }
-                    if (subgraph.getGraph().outDegreeOf(node) == 0) {
-                        noOutgoingEdges.add(node);
-                    }
+    /**
+     * Release the node index of a graph that is no longer used, so that its
+     * nodes do not keep the graph alive
+     */
+    private void discard() {
+        if (graph instanceof IndexedGraph) {
+            ((IndexedGraph) graph).release();
+        }
+    }
+
+    /**
+     * Create a copy of this graph with rebound values
+     *
+     * @param rebinder the rebinder
+     * @return graph the copy or null if the values can not be rebound
+     */
+    private PipelineGraph stamp(Rebinder rebinder) {
+        PipelineGraph copy = new PipelineGraph(pipeline, new IndexedGraph());
+        Map<JobNode, JobNode> clones = new IdentityHashMap<JobNode, JobNode>();
+        try {
+            for (JobNode node : graph.vertexSet()) {
+                // the jobs of the template are shared and must not reference placeholders
+                rebinder.rebind(node.getPipelineJob().getConfiguration());
+                JobNode clone = new JobNode(node);
+                for (Map.Entry<String, Object> e : clone.getConfiguration().entrySet()) {
+                    e.setValue(rebinder.rebind(e.getValue()));
                 }
-                // connect incomings
-                for (JobEdge jobEdge : graph.incomingEdgesOf(jobNode)) {
-                    JobNode source = graph.getEdgeSource(jobEdge);
-                    for (JobNode noIncomingEdge : noIncomingEdges) {
-                        JobNode target = findNode(jobNode.getNodeId() + "_" + noIncomingEdge.getNodeId());
-                        graph.addEdge(source, target, new JobEdge(source.getNodeId()));
-                    }
+                clones.put(node, clone);
+                copy.graph.addVertex(clone);
+            }
+            for (JobEdge edge : graph.edgeSet()) {
+                JobEdge clone = new JobEdge(edge.getType(), edge.getSourceNode(), edge.getTargetProperty(), rebinder.rebind(edge.getValue()), edge.getSourceProperty());
+                clone.setIndex(edge.getIndex());
+                copy.graph.addEdge(clones.get(graph.getEdgeSource(edge)), clones.get(graph.getEdgeTarget(edge)), clone);
+            }
+        } catch (IllegalStateException e) {
+            log.debug(e.getMessage());
+            copy.discard();
+            return null;
+        }
+        return copy;
+    }
+
+    /**
+     * Create and prepare the graphs of the given sub-pipelines. The graphs are
+     * prepared concurrently if the parallelism allows it and all pipelines
+     * are independent.
+     *
+     * @param pipelines the configured sub-pipelines
+     * @return graphs the prepared graphs in the same order as the pipelines
+     */
+    private List<PipelineGraph> prepareSubgraphs(List<Pipeline> pipelines) {
+        int threads = Math.min(parallelism, pipelines.size());
+        if (threads > 1) {
+            for (Pipeline subPipeline : pipelines) {
+                if (!isIndependent(subPipeline)) {
+                    log.debug("Sub-pipelines contain closures or pipelines, preparing sequentially");
+                    threads = 1;
+                    break;
                 }
-                // connect outgoings
-                for (JobEdge jobEdge : graph.outgoingEdgesOf(jobNode)) {
-                    JobNode target = graph.getEdgeTarget(jobEdge);
-                    for (JobNode sourceNode : noOutgoingEdges) {
-                        JobNode source = findNode(jobNode.getNodeId() + "_" + sourceNode.getNodeId());
-                        graph.addEdge(source, target, new JobEdge(source.getNodeId()));
+            }
+        }
+        List<PipelineGraph> subgraphs = new ArrayList<PipelineGraph>(pipelines.size());
+        if (threads <= 1) {
+            for (Pipeline subPipeline : pipelines) {
+                subgraphs.add(prepareSubgraph(subPipeline));
+            }
+            return subgraphs;
+        }
+
+        log.debug("Preparing " + pipelines.size() + " sub-pipelines with " + threads + " threads");
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<PipelineGraph>> futures = new ArrayList<Future<PipelineGraph>>(pipelines.size());
+            for (final Pipeline subPipeline : pipelines) {
+                futures.add(executor.submit(new Callable<PipelineGraph>() {
+                    @Override
+                    public PipelineGraph call() throws Exception {
+                        return prepareSubgraph(subPipeline);
                     }
-                }
+                }));
+            }
+            for (Future<PipelineGraph> future : futures) {
+                subgraphs.add(future.get());
+            }
+            return subgraphs;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while preparing sub-pipelines", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new RuntimeException(cause);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Create and prepare the graph of a sub-pipeline
+     *
+     * @param subPipeline the configured sub-pipeline
+     * @return graph the prepared graph
+     */
+    private PipelineGraph prepareSubgraph(Pipeline subPipeline) {
+        PipelineGraph subgraph = new PipelineGraph(subPipeline);
+        subgraph.prepare();
+        return subgraph;
+    }
 
-                toRemove.add(jobNode);
+    /**
+     * Returns true if the graph of the pipeline can be prepared concurrently
+     * with other graphs. This is not the case if the pipeline contains closures,
+     * which might not be thread safe, or sub-pipelines, which are shared
+     * and configured while they are expanded.
+     *
+     * @param subPipeline the pipeline
+     * @return independent true if the pipeline can be prepared concurrently
+     */
+    private static boolean isIndependent(Pipeline subPipeline) {
+        if (containsClosure(subPipeline.getConfiguration().values())) return false;
+        for (Parameter parameter : subPipeline.getParameter()) {
+            if (containsClosure(parameter.getDefaultValue())) return false;
+        }
+        for (PipelineJob execution : subPipeline.getExecutions()) {
+            if (execution.getPipeline() != null) return false;
+            if (containsClosure(execution.getConfiguration().values())) return false;
+            for (Parameter parameter : execution.getParameters()) {
+                if (containsClosure(parameter.getDefaultValue())) return false;
             }
         }
-        // remove old nodes
-        for (JobNode jobNode : toRemove) {
-            graph.removeVertex(jobNode);
+        return true;
+    }
+
+    /**
+     * Returns true if the value is a closure or a collection that contains a closure
+     *
+     * @param value the value
+     * @return closure true if a closure was found
+     */
+    private static boolean containsClosure(Object value) {
+        if (value instanceof Closure) return true;
+        if (value instanceof Collection) {
+            for (Object element : (Collection) value) {
+                if (containsClosure(element)) return true;
+            }
         }
+        return false;
     }
 
 
@@ -397,36 +803,7 @@ public class PipelineGraph {
 
         // validate output
         for (JobNode node : getNodes()) {
-            for (Parameter parameter : node.getParameter()) {
-                if (!parameter.isOutput() || !parameter.isMandatory()) continue;
-                Object outputvalue = node.getConfiguration().get(parameter.getName());
-                if (outputvalue == null){
-                    Object pv = node.getParameter(parameter.getName());
-                    if(pv == null)
-                        throw new NullPointerException("No Output defined for " + node.getNodeId());
-                    else{
-                        outputvalue = pv;
-                        node.getConfiguration().put(parameter.getName(), pv);
-                    }
-                }
-                if (parameter.isList() && !(outputvalue instanceof List)) {
-                    node.getConfiguration().put(parameter.getName(), Arrays.asList(outputvalue));
-                } else if (!parameter.isList() && outputvalue instanceof List) {
-                    // find the index
-                    int i = -1;
-                    for (JobEdge jobEdge : graph.incomingEdgesOf(node)) {
-                        if (jobEdge.getIndex() >= 0) {
-                            if (i < 0) i = jobEdge.getIndex();
-                            else if (i != jobEdge.getIndex())
-                                throw new IllegalArgumentException("Unresolvable output index mapping after node split " + node.getNodeId());
-                        }
-                    }
-                    if (i < 0) {
-                        throw new IllegalArgumentException("Unresolvable output index mapping after node split " + node.getNodeId());
-                    }
-                    node.getConfiguration().put(parameter.getName(), ((List) outputvalue).get(i));
-                }
-            }
+            configureOutputs(node);
         }
 
 
@@ -458,6 +835,46 @@ public class PipelineGraph {
 //        }
     }
 
+    /**
+     * Make sure the mandatory outputs of a node are set and that their
+     * values match the list type of the parameter
+     *
+     * @param node the node
+     */
+    private void configureOutputs(JobNode node) {
+        for (Parameter parameter : node.getParameter()) {
+
+            if (!parameter.isOutput() || !parameter.isMandatory()) continue;
+            Object outputvalue = node.getConfiguration().get(parameter.getName());
+            if (outputvalue == null){
+                Object pv = node.getParameter(parameter.getName());
+                if(pv == null)
+                    throw new NullPointerException("No Output defined for " + node.getNodeId());
+                else{
+                    outputvalue = pv;
+                    node.getConfiguration().put(parameter.getName(), pv);
+                }
+            }
+            if (parameter.isList() && !(outputvalue instanceof List)) {
+                node.getConfiguration().put(parameter.getName(), Arrays.asList(outputvalue));
+            } else if (!parameter.isList() && outputvalue instanceof List) {
+                // find the index
+                int i = -1;
+                for (JobEdge jobEdge : graph.incomingEdgesOf(node)) {
+                    if (jobEdge.getIndex() >= 0) {
+                        if (i < 0) i = jobEdge.getIndex();
+                        else if (i != jobEdge.getIndex())
+                            throw new IllegalArgumentException("Unresolvable output index mapping after node split " + node.getNodeId());
+                    }
+                }
+                if (i < 0) {
+                    throw new IllegalArgumentException("Unresolvable output index mapping after node split " + node.getNodeId());
+                }
+                node.getConfiguration().put(parameter.getName(), ((List) outputvalue).get(i));
+            }
+        }
+    }
+
     /**
      * Create a single contexts that covers all variables/configuration and
      * output for all nodes of this graph.
@@ -668,167 +1085,19 @@ public class PipelineGraph {
             // create new nodes
 
             boolean isSerialExpansion = expansionType != null && expansionType.equals(Parameter.EXPAND_SERIAL);
+            SplitTemplate template = new SplitTemplate(node, isSerialExpansion ? "_seq_" : "_split_", isSerialExpansion, maxSize,
+                    parameterLists, mergedMany2OneValues, mergedMany2OneEdges, new ArrayList<JobEdge>(incoming), otherEdges);
             ArrayListMultimap<String, Object> coveredParameters = ArrayListMultimap.create();
             for (int i = 0; i < maxSize; i++) {
-                String suffix = "_split_";
-                // check for expansion type
-                if (isSerialExpansion) {
-                    suffix = "_seq_";
-                }
-
-                JobNode splits = new JobNode(node);
-                splits.getConfiguration().clear(); // reset configuration
-                splits.setSplitNode(true);
-                splits.setNodeId(node.getNodeId() + suffix + i);
-                graph.addVertex(splits);
-
-
-                // merge list of lists
-                for (Parameter parameter : node.getParameter()) {
-                    Object value = node.getParameter(parameter.getName());
-                    if (!parameterLists.containsKey(parameter.getName()) && parameter.isList() && value != null && value instanceof List) {
-                        List list = (List) value;
-                        if (list.size() > 0) {
-                            Object v1 = list.get(0);
-                            if (v1 instanceof List && ((List) v1).size() == maxSize) {
-                                // this is a list of lists
-                                ArrayList newValue = new ArrayList();
-                                for (Object o : list) {
-                                    List ol = (List) o;
-                                    newValue.add(ol.get(i));
-                                }
-                                splits.getConfiguration().put(parameter.getName(), newValue);
-
-                            }
-                        }
-                    }
-
-                    // pass on sequential parameters for all but the first node
-                    if (isSerialExpansion && i > 0) {
-                        if (parameter.getExpandValue() != null) {
-                            String p = "${" + node.getNodeId() + suffix + (i - 1) + "." + parameter.getExpandValue() + "}";
-                            Object v = getContext().get(p);
-                            if (v instanceof List) {
-                                // resolve by index
-                                v = ((List) v).get(i - 1);
-                            }
-                            splits.getConfiguration().put(parameter.getName(), v);
-                        }
-                    }
-
-                    // update output file names and make them unique within the run
-                    if(parameter.isOutput() && parameter.isFile() && value != null){
-
-                        String extension = splits.getNodeId();
-                        if(parameter.getType() != null){
-                            extension+="."+parameter.getType();
-                        }
-                        if(parameter.isList()){
-                            List c = (List) value;
-                            for (int j = 0; j < c.size(); j++) {
-                                String current = c.get(j).toString();
-                                FileParameter fileParameter = new FileParameter(current);
-                                if(parameter.getType() != null && fileParameter.getExtension().equals(parameter.getType())){
-                                    current = new FileParameter(current).getName();
-                                }
-                                c.set(j, current + "." + extension);
-                            }
-                        }else{
-                            String current = value.toString();
-                            FileParameter fileParameter = new FileParameter(current);
-                            if(parameter.getType() != null && fileParameter.getExtension().equals(parameter.getType())){
-
-                                current = fileParameter.getName();
-                            }
-                            splits.getConfiguration().put(parameter.getName(), current + "." + extension);
-                        }
-                    }
-                }
-
-                // add to context
-                // update configuration
-                for (String key : parameterLists.keySet()) {
-                    List data = parameterLists.get(key);
-                    splits.getConfiguration().put(key, data.get(i));
-                }
-
-                for (String targetParameter : mergedMany2OneValues.keySet()) {
-                    List<Object> data = mergedMany2OneValues.get(targetParameter);
-                    splits.getConfiguration().put(targetParameter, data.get(i));
-                }
-
-                // fill all configuration data that come from the
-                // source node and are not affected by list operations
-                // because we cleared the config before
-                for (String key : node.getConfiguration().keySet()) {
-                    if(!splits.getConfiguration().containsKey(key)){
-                        splits.getConfiguration().put(key, node.getConfiguration().get(key));
-                    }
-                }
-
-
-                ScopeNode childCtx = context.createChild(splits.getNodeId());
-                splits.createContext(childCtx);
-
-
-
-                // resolve configuration dependencies
+                String suffix = template.suffix;
+                JobNode splits = createSplit(template, i, coveredParameters);
                 Map<String, Object> outputEdgeValues = new HashMap<String, Object>();
                 for (String s : parameterLists.keySet()) {
-                    List list = parameterLists.get(s);
-                    Object value = list.get(i);
+                    Object value = parameterLists.get(s).get(i);
                     if(value != null){
-                        splits.getConfiguration().put(s, value);
                         outputEdgeValues.put(s, value);
                     }
                 }
-                for (Parameter parameter : splits.getParameter()) {
-                    String sourceContextKey = "${" + splits.getNodeId() + "." + parameter.getName() + "}";
-                    Object value = getContext().get(sourceContextKey);
-                    if(value != null){
-                        splits.getConfiguration().put(parameter.getName(), value);
-                    }
-                }
-
-                // add edges
-                List<String> coveredProperties = new ArrayList<String>();
-                for (JobEdge jobEdge : incoming) {
-                    if (jobEdge.getType() == JobEdge.Type.Many2One) {
-                        jobEdge = mergedMany2OneEdges.get(jobEdge.getTargetProperty()).get(i);
-                        if(coveredProperties.contains(jobEdge.getTargetProperty())) continue;
-//                        List list = toList(jobEdge.getValue());
-                        List list = mergedMany2OneValues.get(jobEdge.getTargetProperty());
-                        if(list == null || list.size() == 0){
-                            list = toList(jobEdge.getValue());
-                        }
-                        coveredProperties.add(jobEdge.getTargetProperty());
-                        // apply directory configuration to values
-                        Object edgevalue = list.get(i);
-                        // only for file paramters
-
-                        JobNode sourceNode;
-                        if(mergedMany2OneEdges.containsKey(jobEdge.getTargetProperty())){
-                            sourceNode = findNode(mergedMany2OneEdges.get(jobEdge.getTargetProperty()).get(i).getSourceNode());
-                        }else{
-                            sourceNode = findNode(jobEdge.getSourceNode());
-                        }
-                        Parameter parameter = sourceNode.getParameterRaw(jobEdge.getSourceProperty());
-                        if(parameter != null && parameter.isFile()){
-                            edgevalue = jobEdge.addDirectoryToFiles(sourceNode, edgevalue);
-                        }
-                        JobEdge newEdge = new JobEdge(JobEdge.Type.One2One, sourceNode.getNodeId(), jobEdge.getTargetProperty(), edgevalue, jobEdge.getSourceProperty());
-                        coveredParameters.put(jobEdge.getTargetProperty(), "${"+sourceNode.getNodeId()+"."+jobEdge.getSourceProperty()+"}");
-
-                        newEdge.setSourceNode(sourceNode.getNodeId());
-                        newEdge.setIndex(i);
-                        graph.addEdge(sourceNode, splits, newEdge);
-                    } else {
-                        // just relink if its in other edges
-                        if (otherEdges.contains(jobEdge)) {
-                            graph.addEdge(graph.getEdgeSource(jobEdge), splits, new JobEdge(jobEdge.getType(), jobEdge.getSourceNode(), jobEdge.getTargetProperty(), jobEdge.getValue(), jobEdge.getSourceProperty()));
-                        }
-                    }
-                }
 
                 // pick a one-to-one link
                 if (one2onetargets.size() > 0) {
@@ -1071,6 +1340,178 @@ public class PipelineGraph {
         return false;
     }
 
+    /**
+     * Create a single split node of a many-to-one split, add it to the graph
+     * and the context and connect it to its sources
+     *
+     * @param template the split template
+     * @param i the index of the split
+     * @param coveredParameters collects the source references covered by edges, can be null
+     * @return splits the new split node
+     */
+    private JobNode createSplit(SplitTemplate template, int i, ArrayListMultimap<String, Object> coveredParameters) {
+        JobNode node = template.node;
+        String suffix = template.suffix;
+        boolean isSerialExpansion = template.serial;
+        int maxSize = template.size;
+        Map<String, List> parameterLists = template.parameterLists;
+        ArrayListMultimap<String, Object> mergedMany2OneValues = template.mergedMany2OneValues;
+        ArrayListMultimap<String, JobEdge> mergedMany2OneEdges = template.mergedMany2OneEdges;
+
+        JobNode splits = new JobNode(node);
+        splits.getConfiguration().clear(); // reset configuration
+        splits.setSplitNode(true);
+        splits.setNodeId(node.getNodeId() + suffix + i);
+        graph.addVertex(splits);
+
+
+        // merge list of lists
+        for (Parameter parameter : node.getParameter()) {
+            Object value = node.getParameter(parameter.getName());
+            if (!parameterLists.containsKey(parameter.getName()) && parameter.isList() && value != null && value instanceof List) {
+                List list = (List) value;
+                if (list.size() > 0) {
+                    Object v1 = list.get(0);
+                    if (v1 instanceof List && ((List) v1).size() == maxSize) {
+                        // this is a list of lists
+                        ArrayList newValue = new ArrayList();
+                        for (Object o : list) {
+                            List ol = (List) o;
+                            newValue.add(ol.get(i));
+                        }
+                        splits.getConfiguration().put(parameter.getName(), newValue);
+
+                    }
+                }
+            }
+
+            // pass on sequential parameters for all but the first node
+            if (isSerialExpansion && i > 0) {
+                if (parameter.getExpandValue() != null) {
+                    String p = "${" + node.getNodeId() + suffix + (i - 1) + "." + parameter.getExpandValue() + "}";
+                    Object v = getContext().get(p);
+                    if (v instanceof List) {
+                        // resolve by index
+                        v = ((List) v).get(i - 1);
+                    }
+                    splits.getConfiguration().put(parameter.getName(), v);
+                }
+            }
+
+            // update output file names and make them unique within the run
+            if(parameter.isOutput() && parameter.isFile() && value != null){
+
+                String extension = splits.getNodeId();
+                if(parameter.getType() != null){
+                    extension+="."+parameter.getType();
+                }
+                if(parameter.isList()){
+                    List c = (List) value;
+                    for (int j = 0; j < c.size(); j++) {
+                        String current = c.get(j).toString();
+                        FileParameter fileParameter = new FileParameter(current);
+                        if(parameter.getType() != null && fileParameter.getExtension().equals(parameter.getType())){
+                            current = new FileParameter(current).getName();
+                        }
+                        c.set(j, current + "." + extension);
+                    }
+                }else{
+                    String current = value.toString();
+                    FileParameter fileParameter = new FileParameter(current);
+                    if(parameter.getType() != null && fileParameter.getExtension().equals(parameter.getType())){
+
+                        current = fileParameter.getName();
+                    }
+                    splits.getConfiguration().put(parameter.getName(), current + "." + extension);
+                }
+            }
+        }
+
+        // add to context
+        // update configuration
+        for (String key : parameterLists.keySet()) {
+            List data = parameterLists.get(key);
+            splits.getConfiguration().put(key, data.get(i));
+        }
+
+        for (String targetParameter : mergedMany2OneValues.keySet()) {
+            List<Object> data = mergedMany2OneValues.get(targetParameter);
+            splits.getConfiguration().put(targetParameter, data.get(i));
+        }
+
+        // fill all configuration data that come from the
+        // source node and are not affected by list operations
+        // because we cleared the config before
+        for (String key : node.getConfiguration().keySet()) {
+            if(!splits.getConfiguration().containsKey(key)){
+                splits.getConfiguration().put(key, node.getConfiguration().get(key));
+            }
+        }
+
+
+        ScopeNode childCtx = context.createChild(splits.getNodeId());
+        splits.createContext(childCtx);
+
+
+
+        // resolve configuration dependencies
+        for (String s : parameterLists.keySet()) {
+            List list = parameterLists.get(s);
+            Object value = list.get(i);
+            if(value != null){
+                splits.getConfiguration().put(s, value);
+            }
+        }
+        for (Parameter parameter : splits.getParameter()) {
+            String sourceContextKey = "${" + splits.getNodeId() + "." + parameter.getName() + "}";
+            Object value = getContext().get(sourceContextKey);
+            if(value != null){
+                splits.getConfiguration().put(parameter.getName(), value);
+            }
+        }
+
+        // add edges
+        List<String> coveredProperties = new ArrayList<String>();
+        for (JobEdge jobEdge : template.incoming) {
+            if (jobEdge.getType() == JobEdge.Type.Many2One) {
+                jobEdge = mergedMany2OneEdges.get(jobEdge.getTargetProperty()).get(i);
+                if(coveredProperties.contains(jobEdge.getTargetProperty())) continue;
+//                List list = toList(jobEdge.getValue());
+                List list = mergedMany2OneValues.get(jobEdge.getTargetProperty());
+                if(list == null || list.size() == 0){
+                    list = toList(jobEdge.getValue());
+                }
+                coveredProperties.add(jobEdge.getTargetProperty());
+                // apply directory configuration to values
+                Object edgevalue = list.get(i);
+                // only for file paramters
+
+                JobNode sourceNode;
+                if(mergedMany2OneEdges.containsKey(jobEdge.getTargetProperty())){
+                    sourceNode = findNode(mergedMany2OneEdges.get(jobEdge.getTargetProperty()).get(i).getSourceNode());
+                }else{
+                    sourceNode = findNode(jobEdge.getSourceNode());
+                }
+                Parameter parameter = sourceNode.getParameterRaw(jobEdge.getSourceProperty());
+                if(parameter != null && parameter.isFile()){
+                    edgevalue = jobEdge.addDirectoryToFiles(sourceNode, edgevalue);
+                }
+                JobEdge newEdge = new JobEdge(JobEdge.Type.One2One, sourceNode.getNodeId(), jobEdge.getTargetProperty(), edgevalue, jobEdge.getSourceProperty());
+                if (coveredParameters != null) coveredParameters.put(jobEdge.getTargetProperty(), "${"+sourceNode.getNodeId()+"."+jobEdge.getSourceProperty()+"}");
+
+                newEdge.setSourceNode(sourceNode.getNodeId());
+                newEdge.setIndex(i);
+                graph.addEdge(sourceNode, splits, newEdge);
+            } else {
+                // just relink if its in other edges
+                if (template.otherEdges.contains(jobEdge)) {
+                    graph.addEdge(graph.getEdgeSource(jobEdge), splits, new JobEdge(jobEdge.getType(), jobEdge.getSourceNode(), jobEdge.getTargetProperty(), jobEdge.getValue(), jobEdge.getSourceProperty()));
+                }
+            }
+        }
+        return splits;
+    }
+
     private List toList(Object sourceValue) {
         List list = null;
         if (sourceValue instanceof Collection) {
@@ -1353,18 +1794,76 @@ public class PipelineGraph {
 
 
     /**
-     * Get nodes in topological order
+     * Get nodes in topological order. The order is cached until the
+     * structure of the graph changes. The returned list is never modified,
+     * so it is safe to change the graph while iterating it.
      *
-     * @return nodes nodes in topological order
+     * @return nodes unmodifiable list of nodes in topological order
      */
     public List<JobNode> getNodes() {
-        if(graph.vertexSet().size() == 0) return Collections.emptyList();
-        TopologicalOrderIterator<JobNode, JobEdge> topologicalSort = new TopologicalOrderIterator<JobNode, JobEdge>(graph);
-        List<JobNode> ordered = new ArrayList<JobNode>();
-        while (topologicalSort.hasNext()) {
-            ordered.add(topologicalSort.next());
+        int modCount = ((IndexedGraph) graph).getModCount();
+        if (order != null && orderModCount == modCount) return order;
+        if (graph.vertexSet().size() == 0) {
+            order = Collections.emptyList();
+        } else {
+            TopologicalOrderIterator<JobNode, JobEdge> topologicalSort = new TopologicalOrderIterator<JobNode, JobEdge>(graph);
+            List<JobNode> ordered = new ArrayList<JobNode>(graph.vertexSet().size());
+            while (topologicalSort.hasNext()) {
+                ordered.add(topologicalSort.next());
+            }
+            order = Collections.unmodifiableList(ordered);
+        }
+        levels = null;
+        orderModCount = modCount;
+        return order;
+    }
+
+    /**
+     * Get the nodes grouped by level. Level 0 contains all nodes without
+     * incoming edges and every other node is on the level after its deepest
+     * predecessor, so the nodes of one level do not depend on each other and
+     * all their dependencies are on earlier levels. Like the topological
+     * order, the levels are cached until the structure of the graph changes.
+     *
+     * @return levels unmodifiable list of levels, each in topological order
+     */
+    public List<List<JobNode>> getLevels() {
+        List<JobNode> nodes = getNodes();
+        if (levels != null) return levels;
+        Map<JobNode, Integer> depth = new HashMap<JobNode, Integer>(nodes.size() * 2);
+        List<List<JobNode>> result = new ArrayList<List<JobNode>>();
+        for (JobNode node : nodes) {
+            int level = 0;
+            for (JobEdge edge : graph.incomingEdgesOf(node)) {
+                level = Math.max(level, depth.get(graph.getEdgeSource(edge)) + 1);
+            }
+            depth.put(node, level);
+            if (level == result.size()) result.add(new ArrayList<JobNode>());
+            result.get(level).add(node);
         }
-        return ordered;
+        for (int i = 0; i < result.size(); i++) {
+            result.set(i, Collections.unmodifiableList(result.get(i)));
+        }
+        levels = Collections.unmodifiableList(result);
+        return levels;
+    }
+
+    /**
+     * Create a read only copy of the graph structure with the nodes in
+     * topological order. Use this after the graph is prepared and the
+     * dependencies are reduced.
+     *
+     * @return graph the compact graph
+     */
+    public CompactGraph<JobNode> compact() {
+        CompactGraph.Builder<JobNode> builder = new CompactGraph.Builder<JobNode>();
+        for (JobNode node : getNodes()) {
+            builder.addNode(node);
+        }
+        for (JobEdge edge : graph.edgeSet()) {
+            builder.addEdge(graph.getEdgeSource(edge), graph.getEdgeTarget(edge));
+        }
+        return builder.build();
     }
 
     /**
@@ -1374,12 +1873,7 @@ public class PipelineGraph {
      * @return node the node or null
      */
     public JobNode findNode(String nodeId) {
-        for (JobNode jobNode : graph.vertexSet()) {
-            if (jobNode.getNodeId().equals(nodeId)) {
-                return jobNode;
-            }
-        }
-        return null;
+        return ((IndexedGraph) graph).findNode(nodeId);
     }
 
     /**
@@ -1416,4 +1910,408 @@ public class PipelineGraph {
     public ScopeNode getContext() {
         return context;
     }
+
+    /**
+     * The state of a many-to-one split that is needed to create the
+     * individual split nodes
+     */
+    static class SplitTemplate {
+        /**
+         * The node that is split
+         */
+        final JobNode node;
+        /**
+         * Suffix of the split node ids
+         */
+        final String suffix;
+        /**
+         * True for serial expansions
+         */
+        final boolean serial;
+        /**
+         * Number of splits
+         */
+        final int size;
+        /**
+         * Parameter values split by index
+         */
+        final Map<String, List> parameterLists;
+        /**
+         * Merged many-to-one values by target property
+         */
+        final ArrayListMultimap<String, Object> mergedMany2OneValues;
+        /**
+         * Merged many-to-one edges by target property
+         */
+        final ArrayListMultimap<String, JobEdge> mergedMany2OneEdges;
+        /**
+         * Incoming edges of the node
+         */
+        final List<JobEdge> incoming;
+        /**
+         * Incoming edges that are neither many-to-one nor one-to-one
+         */
+        final List<JobEdge> otherEdges;
+
+        SplitTemplate(JobNode node, String suffix, boolean serial, int size, Map<String, List> parameterLists,
+                      ArrayListMultimap<String, Object> mergedMany2OneValues, ArrayListMultimap<String, JobEdge> mergedMany2OneEdges,
+                      List<JobEdge> incoming, List<JobEdge> otherEdges) {
+            this.node = node;
+            this.suffix = suffix;
+            this.serial = serial;
+            this.size = size;
+            this.parameterLists = parameterLists;
+            this.mergedMany2OneValues = mergedMany2OneValues;
+            this.mergedMany2OneEdges = mergedMany2OneEdges;
+            this.incoming = incoming;
+            this.otherEdges = otherEdges;
+        }
+    }
+
+    /**
+     * Identifies sub-pipeline nodes that can share a template. Nodes share a
+     * template if they embed the same pipeline instance, bind the same
+     * parameters to string values and all other parameters to equal values.
+     */
+    static class TemplateKey {
+        /**
+         * Marks rebound string values of the form parent/name.extension
+         */
+        private static final Object REBOUND_FILE = new Object();
+        /**
+         * Marks rebound string values of the form parent/name
+         */
+        private static final Object REBOUND_NAME = new Object();
+        /**
+         * The embedded pipeline
+         */
+        private final Pipeline pipeline;
+        /**
+         * The values that are not rebound
+         */
+        private final Map<String, Object> shape;
+
+        private TemplateKey(Pipeline pipeline, Map<String, Object> shape) {
+            this.pipeline = pipeline;
+            this.shape = shape;
+        }
+
+        /**
+         * Create the key of a binding
+         *
+         * @param pipeline the embedded pipeline
+         * @param binding the parameter values
+         * @return key the key or null if the binding contains values that can not be rebound
+         */
+        static TemplateKey create(Pipeline pipeline, Map<String, Object> binding) {
+            Map<String, Object> shape = new TreeMap<String, Object>();
+            for (Map.Entry<String, Object> e : binding.entrySet()) {
+                Object value = e.getValue();
+                if (value instanceof String) {
+                    String string = (String) value;
+                    // references create edges and placeholders must stay unique
+                    if (string.contains("${") || string.contains(Rebinder.PREFIX)) return null;
+                    // only values that can be assembled from their parts are rebound
+                    String parent = ValueNode.getParent(string);
+                    String name = ValueNode.getName(string);
+                    String extension = ValueNode.getExtension(string);
+                    if (extension.length() > 0 && string.equals(parent + name + "." + extension)) {
+                        value = REBOUND_FILE;
+                    } else if (extension.length() == 0 && string.equals(parent + name)) {
+                        value = REBOUND_NAME;
+                    }
+                } else if (containsClosure(value)) {
+                    return null;
+                }
+                shape.put(e.getKey(), value);
+            }
+            return new TemplateKey(pipeline, shape);
+        }
+
+        /**
+         * Get the names of the rebound parameters
+         *
+         * @return names the parameter names
+         */
+        List<String> getRebound() {
+            List<String> names = new ArrayList<String>();
+            for (Map.Entry<String, Object> e : shape.entrySet()) {
+                if (e.getValue() == REBOUND_FILE || e.getValue() == REBOUND_NAME) names.add(e.getKey());
+            }
+            return names;
+        }
+
+        /**
+         * Returns true if the rebound values of the given parameter have an extension
+         *
+         * @param name the parameter name
+         * @return extension true if the values have an extension
+         */
+        boolean hasExtension(String name) {
+            return shape.get(name) == REBOUND_FILE;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof TemplateKey)) return false;
+            TemplateKey that = (TemplateKey) o;
+            return pipeline == that.pipeline && shape.equals(that.shape);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(pipeline) + shape.hashCode();
+        }
+    }
+
+    /**
+     * Replaces the placeholders of a template with values. The placeholder of
+     * value k has the form <code>parent/name.extension</code> or
+     * <code>parent/name</code> for values without extension, with distinct
+     * tokens for each part, so the parts resolved in the sub-pipeline can be
+     * replaced by the parts of the value.
+     */
+    static class Rebinder {
+        /**
+         * Prefix of all placeholder tokens
+         */
+        static final String PREFIX = "jip-binding-";
+        /**
+         * Tokens and their replacements, applied in order
+         */
+        private final List<String[]> replacements = new ArrayList<String[]>();
+
+        /**
+         * Create a new rebinder
+         *
+         * @param values the values in placeholder order
+         * @param extensions true for the values that have an extension
+         */
+        Rebinder(List<String> values, boolean[] extensions) {
+            // full values first, the tokens of the parts are part of them
+            for (int k = 0; k < values.size(); k++) {
+                replacements.add(new String[]{placeholder(k, extensions[k]), values.get(k)});
+            }
+            for (int k = 0; k < values.size(); k++) {
+                String value = values.get(k);
+                replacements.add(new String[]{token(k, "p") + "/", ValueNode.getParent(value)});
+                replacements.add(new String[]{token(k, "n"), ValueNode.getName(value)});
+                if (extensions[k]) {
+                    replacements.add(new String[]{token(k, "e"), ValueNode.getExtension(value)});
+                }
+            }
+        }
+
+        /**
+         * Get the placeholder of a value
+         *
+         * @param k the index of the value
+         * @param extension true if the value has an extension
+         * @return placeholder the placeholder
+         */
+        static String placeholder(int k, boolean extension) {
+            String placeholder = token(k, "p") + "/" + token(k, "n");
+            return extension ? placeholder + "." + token(k, "e") : placeholder;
+        }
+
+        private static String token(int k, String part) {
+            return PREFIX + k + "-" + part;
+        }
+
+        /**
+         * Replace the placeholders in a value
+         *
+         * @param value the value
+         * @return rebound the value with replaced placeholders
+         * @throws IllegalStateException if a placeholder was transformed and can not be replaced
+         */
+        Object rebind(Object value) {
+            if (value instanceof String) {
+                String string = (String) value;
+                if (!string.contains(PREFIX)) return string;
+                for (String[] replacement : replacements) {
+                    string = string.replace(replacement[0], replacement[1]);
+                }
+                if (string.contains(PREFIX)) throw new IllegalStateException("Unable to rebind " + value);
+                return string;
+            }
+            if (value instanceof List) {
+                List<Object> list = new ArrayList<Object>();
+                for (Object element : (List) value) {
+                    list.add(rebind(element));
+                }
+                return list;
+            }
+            if (value instanceof Map) {
+                Map<Object, Object> map = new HashMap<Object, Object>();
+                for (Map.Entry<?, ?> e : ((Map<?, ?>) value).entrySet()) {
+                    map.put(e.getKey(), rebind(e.getValue()));
+                }
+                return map;
+            }
+            if (value != null && String.valueOf(value).contains(PREFIX)) {
+                throw new IllegalStateException("Unable to rebind " + value);
+            }
+            return value;
+        }
+    }
+
+    /**
+     * Graph that maintains an index from node id to node. Nodes report
+     * changes of their id to the graph they were added to.
+     */
+    static class IndexedGraph extends DirectedMultigraph<JobNode, JobEdge> {
+        private static final long serialVersionUID = 1L;
+        /**
+         * Nodes by node id
+         */
+        private transient Map<String, JobNode> index = new HashMap<String, JobNode>();
+        /**
+         * Number of nodes by node id that share the id with the indexed node
+         */
+        private transient Map<String, Integer> duplicates = new HashMap<String, Integer>();
+        /**
+         * Number of structural modifications
+         */
+        private transient int modCount;
+
+        IndexedGraph() {
+            super(JobEdge.class);
+        }
+
+        /**
+         * Get the number of structural modifications, i.e. added or removed
+         * nodes and edges
+         *
+         * @return modCount the modification count
+         */
+        int getModCount() {
+            return modCount;
+        }
+
+        @Override
+        public boolean addVertex(JobNode node) {
+            if (!super.addVertex(node)) return false;
+            modCount++;
+            node.addOwner(this);
+            index(node, node.getNodeId());
+            return true;
+        }
+
+        @Override
+        public boolean removeVertex(JobNode node) {
+            if (!super.removeVertex(node)) return false;
+            modCount++;
+            node.removeOwner(this);
+            unindex(node, node.getNodeId());
+            return true;
+        }
+
+        @Override
+        public JobEdge addEdge(JobNode source, JobNode target) {
+            JobEdge edge = super.addEdge(source, target);
+            if (edge != null) modCount++;
+            return edge;
+        }
+
+        @Override
+        public boolean addEdge(JobNode source, JobNode target, JobEdge edge) {
+            if (!super.addEdge(source, target, edge)) return false;
+            modCount++;
+            return true;
+        }
+
+        @Override
+        public JobEdge removeEdge(JobNode source, JobNode target) {
+            JobEdge edge = super.removeEdge(source, target);
+            if (edge != null) modCount++;
+            return edge;
+        }
+
+        @Override
+        public boolean removeEdge(JobEdge edge) {
+            if (!super.removeEdge(edge)) return false;
+            modCount++;
+            return true;
+        }
+
+        /**
+         * Update the index after a node id changed
+         *
+         * @param node the node
+         * @param oldId the old node id
+         * @param newId the new node id
+         */
+        void rename(JobNode node, String oldId, String newId) {
+            unindex(node, oldId);
+            index(node, newId);
+        }
+
+        /**
+         * Find a node by its id
+         *
+         * @param nodeId the node id
+         * @return node the node or null
+         */
+        JobNode findNode(String nodeId) {
+            return index.get(nodeId);
+        }
+
+        /**
+         * Returns true if nodes of this graph share an id
+         *
+         * @return duplicates true if there are duplicate node ids
+         */
+        boolean hasDuplicates() {
+            return !duplicates.isEmpty();
+        }
+
+        /**
+         * Stop indexing the nodes of this graph. Call this when the graph
+         * is discarded, so that its nodes do not reference it anymore.
+         */
+        void release() {
+            for (JobNode node : vertexSet()) {
+                node.removeOwner(this);
+            }
+            index.clear();
+            duplicates.clear();
+        }
+
+        private void index(JobNode node, String nodeId) {
+            if (nodeId == null) return;
+            JobNode existing = index.get(nodeId);
+            if (existing != null && existing != node) {
+                // the node that had the id first stays indexed
+                Integer count = duplicates.get(nodeId);
+                duplicates.put(nodeId, count == null ? 1 : count + 1);
+                return;
+            }
+            index.put(nodeId, node);
+        }
+
+        private void unindex(JobNode node, String nodeId) {
+            if (nodeId == null) return;
+            Integer count = duplicates.get(nodeId);
+            if (index.get(nodeId) == node) {
+                index.remove(nodeId);
+                if (count == null) return;
+                // index the next node with the same id
+                for (JobNode jobNode : vertexSet()) {
+                    if (jobNode != node && nodeId.equals(jobNode.getNodeId())) {
+                        index.put(nodeId, jobNode);
+                        break;
+                    }
+                }
+            } else if (count == null) {
+                return;
+            }
+            if (count > 1) {
+                duplicates.put(nodeId, count - 1);
+            } else {
+                duplicates.remove(nodeId);
+            }
+        }
+    }
 }
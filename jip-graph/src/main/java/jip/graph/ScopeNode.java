@@ -44,9 +44,9 @@ public class ScopeNode {
      */
     String name;
     /**
-     * the children
+     * the children by name
      */
-    private List<ScopeNode> children = new ArrayList<ScopeNode>();
+    private Map<String, ScopeNode> children = new LinkedHashMap<String, ScopeNode>();
     /**
      * The parent node
      */
@@ -55,6 +55,18 @@ public class ScopeNode {
      * Value node
      */
     private ValueNode valueNode;
+    /**
+     * State shared by all nodes of the tree
+     */
+    private Tree tree;
+    /**
+     * Value nodes resolved from this scope by variable name
+     */
+    private Map<String, ValueNode> resolvedValues;
+    /**
+     * Modification count of the tree when the resolved values were cached
+     */
+    private int resolvedModCount;
 
     /**
      * Create a new scope node
@@ -65,6 +77,7 @@ public class ScopeNode {
         if (name == null) throw new NullPointerException("NULL name not permitted for scope nodes");
         if (name.contains("\\.")) throw new IllegalArgumentException("'.' are reserved and can not be used in names !");
         this.name = name;
+        this.tree = new Tree();
     }
 
     /**
@@ -75,6 +88,7 @@ public class ScopeNode {
     private ScopeNode(String name, ScopeNode parent) {
         this(name);
         this.parent = parent;
+        this.tree = parent.tree;
     }
 
     /**
@@ -86,12 +100,11 @@ public class ScopeNode {
     public ScopeNode createChild(String name) {
         if (valueNode != null)
             throw new IllegalArgumentException("The scope node has a value assigned and cannot have child nodes");
-        for (ScopeNode child : children) {
-            if (child.name.equals(name))
-                throw new IllegalArgumentException("The scope has already a node with name " + name);
-        }
+        if (children.containsKey(name))
+            throw new IllegalArgumentException("The scope has already a node with name " + name);
         ScopeNode child = new ScopeNode(name, this);
-        children.add(child);
+        children.put(name, child);
+        tree.modCount++;
         return child;
     }
 
@@ -165,19 +178,38 @@ public class ScopeNode {
         if (children.size() > 0)
             throw new IllegalArgumentException("The scope node has child scopes and can not have a value!");
         this.valueNode = new ValueNode(this, value, source, sourceProperty);
+        tree.modCount++;
+    }
+
+    /**
+     * Internal: resolve a variable starting from this scope. Resolved value
+     * nodes are cached until nodes are added to the tree or values are replaced.
+     *
+     * @param variable the compiled variable
+     * @return value the value node or null
+     */
+    ValueNode resolve(Variable variable) {
+        if (resolvedValues == null || resolvedModCount != tree.modCount) {
+            resolvedValues = new HashMap<String, ValueNode>();
+            resolvedModCount = tree.modCount;
+        }
+        ValueNode resolved = resolvedValues.get(variable.name);
+        if (resolved == null) {
+            resolved = resolve(variable, 0);
+            if (resolved != null) resolvedValues.put(variable.name, resolved);
+        }
+        return resolved;
     }
 
     /**
      * INternal: resolve a value
      *
-     * @param fullName the full variable name
+     * @param variable the compiled variable
      * @param index the current search index
-     * @param path the path of nodes already searched
      * @return value the value or null
      */
-    ValueNode resolve(String fullName, int index, List<ValueNode> path) {
-        // split the full name
-        String[] split = fullName.split("\\.");
+    private ValueNode resolve(Variable variable, int index) {
+        String[] split = variable.segments;
         if (index >= split.length) return null;
         String current = split[index];
         String next = null;
@@ -187,57 +219,33 @@ public class ScopeNode {
 
         // strategies to resolve a value
         if (name.equals(current) && valueNode != null) {
-            try {
-                //return valueNode.getValue(path);// throws NPE when no value is set
-                return valueNode;// throws NPE when no value is set
-            } catch (IllegalArgumentException e) {
-                if (e.getMessage().equals("circle")) {
-                    throw new RuntimeException("Variable " + fullName + " has a reference to itself");
-                }
-            }
-            return null;
+            return valueNode;
         } else {
             if (valueNode != null) {
                 // start a search from the root
-                // if path is empty,so no jump to root happend before
-                if (parent == null) throw new NullPointerException("Variable " + fullName + " not found");
-                if (path != null && path.contains(parent))
-                    return null; // parent is searching already and this is no hit
+                if (parent == null) throw new NullPointerException("Variable " + variable.name + " not found");
                 // move up in scope
-                if (path == null) {
-                    path = new ArrayList<ValueNode>();
-                }
-                return moveUp(fullName, path);
+                return moveUp(variable);
             } else {
-                // this is a scope node, if we are in the path already
-                // stop searching
-                if (path != null && path.contains(this))
-                    throw new NullPointerException("Variable " + fullName + " not found");
-                if (path == null) path = new ArrayList<ValueNode>();
-
-
-                ArrayList<ValueNode> pathcopy = new ArrayList<ValueNode>(path);
                 if(current.equals(name)){
-                    for (ScopeNode child : children) {
-                        if (!path.contains(child) && next != null && child.name.equals(next)) {
-                            ValueNode resolved = child.resolve(fullName, index + 1, path);
-                            if (resolved != null) return resolved;
-                        }
+                    ScopeNode child = next != null ? children.get(next) : null;
+                    if (child != null) {
+                        ValueNode resolved = child.resolve(variable, index + 1);
+                        if (resolved != null) return resolved;
                     }
-                    throw new NullPointerException("Variable " + fullName + " not found");
+                    throw new NullPointerException("Variable " + variable.name + " not found");
                 }else{
                     // check first level direct
-                    for (ScopeNode child : children) {
-                        if (child.name.equals(current)) {
-                            ValueNode resolved = child.resolve(fullName, index, pathcopy);
-                            if (resolved != null) return resolved;
-                        }
+                    ScopeNode child = children.get(current);
+                    if (child != null) {
+                        ValueNode resolved = child.resolve(variable, index);
+                        if (resolved != null) return resolved;
                     }
                 }
 
-                if (parent == null) throw new NullPointerException("Variable " + fullName + " not found");
+                if (parent == null) throw new NullPointerException("Variable " + variable.name + " not found");
                 // move up in scope
-                return moveUp(fullName, path);
+                return moveUp(variable);
 
             }
         }
@@ -247,25 +255,22 @@ public class ScopeNode {
      * Helper to find the first node specified in the full path
      * and use it to resolve the variable or return null.
      *
-     * @param fullName the full path
-     * @param path the path
+     * @param variable the compiled variable
      * @return value the value resolved by the full path or nulls
      */
-    private ValueNode moveUp(String fullName, List<ValueNode> path) {
-        if (parent == null || fullName == null) return null;
-        String[] split = fullName.split("\\.");
-        String current = split[0];
+    private ValueNode moveUp(Variable variable) {
+        if (parent == null) return null;
+        String current = variable.segments[0];
 
         // traverse upwards and find a matching node
         ScopeNode n = parent;
         ScopeNode last = this;
         while (n != null && !n.name.equals(current)){
             // check first level direct
-            for (ScopeNode child : n.children) {
-                if (child.name.equals(current)) {
-                    ValueNode resolved = child.resolve(fullName, 0, path);
-                    if (resolved != null) return resolved;
-                }
+            ScopeNode child = n.children.get(current);
+            if (child != null) {
+                ValueNode resolved = child.resolve(variable, 0);
+                if (resolved != null) return resolved;
             }
 
             last = n;
@@ -278,14 +283,14 @@ public class ScopeNode {
             stack.push(last);
             while(!stack.isEmpty()){
                 ScopeNode pop = stack.pop();
-                if(pop.name.equals(current)) return pop.resolve(fullName, 0,path);
-                for (ScopeNode child : pop.children) {
+                if(pop.name.equals(current)) return pop.resolve(variable, 0);
+                for (ScopeNode child : pop.children.values()) {
                     stack.push(child);
                 }
             }
             return null;
         }
-        return n.resolve(fullName, 0, path);
+        return n.resolve(variable, 0);
     }
 
     /**
@@ -310,26 +315,42 @@ public class ScopeNode {
         if (string == null) return;
         if (!string.contains("${"))
             throw new IllegalArgumentException("No variable specified, the string has to be wrapped in ${}");
-        Matcher matcher = SPLITTER.matcher(string);
-
-        List<String> matches = new ArrayList<String>();
-        while (matcher.find()) {
-            matches.add(matcher.group());
-        }
-        if (matches.size() != 1) {
+        Object[] parts = compile(string);
+        if (parts.length != 1) {
             throw new IllegalArgumentException("Unable to set variable " + string + " : variable not found");
         }
-        if (matches.size() == 1) {
-            String k = matches.get(0);
-            if (k.startsWith("${") && k.endsWith("}")) {
-                k = k.substring(2, k.length() - 1);
-                ArrayList<ValueNode> path = new ArrayList<ValueNode>();
-                ValueNode valueNode = resolve(k, 0, path);
-                if (valueNode == null)
-                    throw new IllegalArgumentException("Unable to set variable " + string + " : variable not found");
-                valueNode.setValue(value);
+        if (parts[0] instanceof Variable) {
+            ValueNode valueNode = resolve((Variable) parts[0]);
+            if (valueNode == null)
+                throw new IllegalArgumentException("Unable to set variable " + string + " : variable not found");
+            valueNode.setValue(value);
+        }
+    }
+
+    /**
+     * Split a string into its literal parts and variables. Compiled strings
+     * are cached for the whole tree.
+     *
+     * @param string the string
+     * @return parts literal strings and {@link Variable}s in order
+     */
+    Object[] compile(String string) {
+        Object[] parts = tree.expressions.get(string);
+        if (parts == null) {
+            Matcher matcher = SPLITTER.matcher(string);
+            List<Object> matches = new ArrayList<Object>();
+            while (matcher.find()) {
+                String k = matcher.group();
+                if (k.startsWith("${") && k.endsWith("}")) {
+                    matches.add(new Variable(k.substring(2, k.length() - 1)));
+                } else {
+                    matches.add(k);
+                }
             }
+            parts = matches.toArray();
+            tree.expressions.put(string, parts);
         }
+        return parts;
     }
 
     /**
@@ -339,40 +360,33 @@ public class ScopeNode {
      * @param path the search path
      * @return value the resolved value or null
      */
-    Object get(String string, List<ValueNode> path) {
+    Object get(String string, Set<ValueNode> path) {
 
         if (string == null) return null;
         if (!string.contains("${")) return string;
-        Matcher matcher = SPLITTER.matcher(string);
-
-        List<String> matches = new ArrayList<String>();
-        while (matcher.find()) {
-            matches.add(matcher.group());
-        }
-        if (matches.size() == 0) {
+        Object[] parts = compile(string);
+        if (parts.length == 0) {
             throw new IllegalArgumentException("No matches found");
         }
-        if (matches.size() == 1) {
-            String k = matches.get(0);
-            if (k.startsWith("${") && k.endsWith("}")) {
-                k = k.substring(2, k.length() - 1);
-                ValueNode valueNode = resolve(k, 0, path);
-                return valueNode != null ? valueNode.getValue(path, k) : null;
+        if (parts.length == 1) {
+            if (parts[0] instanceof Variable) {
+                Variable variable = (Variable) parts[0];
+                ValueNode valueNode = resolve(variable);
+                return valueNode != null ? valueNode.getValue(path, variable.name) : null;
             } else {
-                return k;
+                return parts[0];
             }
         } else {
             StringBuilder b = new StringBuilder();
             List<StringBuilder> collection = null;
-            for (String match : matches) {
-                String k = match;
-                if (k.startsWith("${") && k.endsWith("}")) {
-                    k = k.substring(2, k.length() - 1);
-                    ValueNode value = resolve(k, 0, path);
+            for (Object part : parts) {
+                if (part instanceof Variable) {
+                    Variable variable = (Variable) part;
+                    ValueNode value = resolve(variable);
                     if(value == null){
                         continue;
                     }
-                    Object result = value.getValue(path, k);
+                    Object result = value.getValue(path, variable.name);
 
                     if (result != null) {
                         if (result instanceof Collection) {
@@ -406,10 +420,10 @@ public class ScopeNode {
                     }
                 } else {
                     if (collection == null) {
-                        b.append(k);
+                        b.append(part);
                     } else {
                         for (StringBuilder stringBuilder : collection) {
-                            stringBuilder.append(k);
+                            stringBuilder.append(part);
                         }
                     }
                 }
@@ -487,4 +501,37 @@ public class ScopeNode {
     public String toString() {
         return "ScopeNode{" + "name='" + name + '\'' +", valueNode=" + valueNode +'}';
     }
+
+    /**
+     * A variable reference split into its name segments
+     */
+    static class Variable {
+        /**
+         * The full variable name
+         */
+        final String name;
+        /**
+         * The name segments
+         */
+        final String[] segments;
+
+        Variable(String name) {
+            this.name = name;
+            this.segments = name.split("\\.");
+        }
+    }
+
+    /**
+     * State shared by all nodes of a tree
+     */
+    private static class Tree {
+        /**
+         * Compiled strings
+         */
+        Map<String, Object[]> expressions = new HashMap<String, Object[]>();
+        /**
+         * Incremented whenever nodes are added or values are replaced
+         */
+        int modCount;
+    }
 }
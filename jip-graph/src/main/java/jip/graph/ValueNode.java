@@ -29,8 +29,11 @@ import java.beans.PropertyDescriptor;
 import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 
 public class ValueNode {
@@ -52,9 +55,9 @@ public class ValueNode {
 
     }
 
-    Object getValue(List<ValueNode> path, String variableName) {
+    Object getValue(Set<ValueNode> path, String variableName) {
         if(value == null) return null;
-        if(path == null) path = new ArrayList<ValueNode>();
+        if(path == null) path = newPath();
         if(log.isDebugEnabled()){
             log.debug("Resolving value node " + variableName + " with value "+ value + " for path " + path);
         }
@@ -88,7 +91,16 @@ public class ValueNode {
 
 
 
-    private Object resolve(Object v, List<ValueNode> path, String variableName){
+    /**
+     * Create an empty set of visited value nodes
+     *
+     * @return path set of value nodes compared by identity
+     */
+    static Set<ValueNode> newPath(){
+        return Collections.newSetFromMap(new IdentityHashMap<ValueNode, Boolean>());
+    }
+
+    private Object resolve(Object v, Set<ValueNode> path, String variableName){
         if(path != null && path.contains(this) && variableName.endsWith(parent.name)){
             throw new IllegalArgumentException("Variable "+variableName+" has a reference to itself");
         }
@@ -108,7 +120,7 @@ public class ValueNode {
             ArrayList copy = new ArrayList();
             List source = (List) v;
             for (Object o : source) {
-                Object resolved = resolve(o, new ArrayList<ValueNode>(), variableName);
+                Object resolved = resolve(o, newPath(), variableName);
                 if(resolved instanceof Collection){
                     for (Object vv : ((Collection) resolved)) {
                         copy.add(vv);
@@ -205,7 +217,7 @@ public class ValueNode {
         throw new RuntimeException("Unable to resolve file parameter "+unresolved + " from " + value);
     }
 
-    private String getName(String file){
+    static String getName(String file){
         int startindex = file.lastIndexOf("/");
         if(startindex < 0) startindex = 0;
         else{
@@ -218,7 +230,7 @@ public class ValueNode {
         return file.substring(startindex, endIndex);
     }
 
-    private String getParent(String file){
+    static String getParent(String file){
         int i = file.lastIndexOf("/");
         if(i>=0){
             return file.substring(0, i+1);
@@ -226,7 +238,7 @@ public class ValueNode {
         return "";
     }
 
-    private String getExtension(String file){
+    static String getExtension(String file){
 //        int i =file.lastIndexOf(".");
         // fix JIP-99 and make sure full extension is returned
         int i =file.indexOf(".");
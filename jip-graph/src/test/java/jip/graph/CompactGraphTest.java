@@ -0,0 +1,59 @@
+package jip.graph;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static junit.framework.Assert.*;
+
+public class CompactGraphTest {
+
+    @Test
+    public void testKeepsTopologicalInsertionOrder(){
+        CompactGraph.Builder<String> builder = new CompactGraph.Builder<String>();
+        builder.addNode("a").addNode("b").addNode("c").addNode("d");
+        builder.addEdge("a", "c").addEdge("a", "b").addEdge("a", "b").addEdge("b", "d").addEdge("c", "d");
+        CompactGraph<String> graph = builder.build();
+
+        assertEquals(Arrays.asList("a", "b", "c", "d"), graph.getNodes());
+        assertEquals(4, graph.edgeCount());
+        int a = graph.indexOf("a");
+        assertEquals(0, graph.inDegree(a));
+        assertEquals(2, graph.outDegree(a));
+        assertEquals("b", graph.get(graph.successor(a, 0)));
+        assertEquals("c", graph.get(graph.successor(a, 1)));
+        int d = graph.indexOf("d");
+        assertEquals(2, graph.inDegree(d));
+        assertEquals(0, graph.outDegree(d));
+        assertEquals("b", graph.get(graph.predecessor(d, 0)));
+        assertEquals("c", graph.get(graph.predecessor(d, 1)));
+        assertEquals(-1, graph.indexOf("e"));
+    }
+
+    @Test
+    public void testSortsNodesTopologically(){
+        CompactGraph.Builder<String> builder = new CompactGraph.Builder<String>();
+        builder.addNode("merge").addNode("b").addNode("split").addNode("a");
+        builder.addEdge("split", "a").addEdge("split", "b").addEdge("a", "merge").addEdge("b", "merge");
+        CompactGraph<String> graph = builder.build();
+
+        assertEquals(Arrays.asList("split", "b", "a", "merge"), graph.getNodes());
+        for (int node = 0; node < graph.size(); node++) {
+            for (int i = 0; i < graph.outDegree(node); i++) {
+                assertTrue(graph.successor(node, i) > node);
+            }
+        }
+    }
+
+    @Test
+    public void testCycle(){
+        CompactGraph.Builder<String> builder = new CompactGraph.Builder<String>();
+        builder.addNode("a").addNode("b").addEdge("a", "b").addEdge("b", "a");
+        try {
+            builder.build();
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals("The graph contains a cycle", e.getMessage());
+        }
+    }
+}
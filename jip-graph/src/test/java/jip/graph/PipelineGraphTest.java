@@ -50,6 +50,269 @@ public class PipelineGraphTest{
         assertEquals(1, graph.getGraph().edgeSet().size());
         assertNotNull(graph.getGraph().inDegreeOf(graph.findNode("b")));
     }
+    @Test
+    public void testNodeIndexFollowsGraphChanges(){
+        PipelineJob job_a = new PipelineJob("a");
+        PipelineJob job_b = new PipelineJob("b");
+        job_b.setAfter(Arrays.asList("a"));
+        Pipeline pipeline_a = new Pipeline();
+        pipeline_a.setExecutions(Arrays.asList(job_a, job_b));
+        PipelineGraph graph = new PipelineGraph(pipeline_a);
+        JobNode a = graph.findNode("a");
+        assertNotNull(a);
+        assertNull(graph.findNode("c"));
+
+        a.setNodeId("c");
+        assertNull(graph.findNode("a"));
+        assertSame(a, graph.findNode("c"));
+
+        graph.getGraph().removeVertex(a);
+        assertNull(graph.findNode("c"));
+        a.setNodeId("a");
+        assertNull(graph.findNode("a"));
+
+        // duplicate ids resolve to the first node added
+        JobNode copy = new JobNode(graph.findNode("b"));
+        graph.getGraph().addVertex(copy);
+        assertNotSame(copy, graph.findNode("b"));
+        assertTrue(((PipelineGraph.IndexedGraph) graph.getGraph()).hasDuplicates());
+        graph.getGraph().removeVertex(graph.findNode("b"));
+        assertSame(copy, graph.findNode("b"));
+        // lookups use the index again once the ids are unique
+        assertFalse(((PipelineGraph.IndexedGraph) graph.getGraph()).hasDuplicates());
+        copy.setNodeId("d");
+        assertNull(graph.findNode("b"));
+        assertSame(copy, graph.findNode("d"));
+    }
+
+    @Test
+    public void testReduceDependencies(){
+        Pipeline pipeline = new Pipeline();
+        pipeline.setExecutions(Arrays.asList(new PipelineJob("a"), new PipelineJob("b"), new PipelineJob("c"), new PipelineJob("d")));
+        PipelineGraph graph = new PipelineGraph(pipeline);
+        JobNode a = graph.findNode("a");
+        JobNode b = graph.findNode("b");
+        JobNode c = graph.findNode("c");
+        JobNode d = graph.findNode("d");
+        // a -> b -> d, a -> c -> d, a -> d and two edges b -> d
+        graph.getGraph().addEdge(a, b, new JobEdge("a"));
+        graph.getGraph().addEdge(a, c, new JobEdge("a"));
+        graph.getGraph().addEdge(a, d, new JobEdge("a"));
+        graph.getGraph().addEdge(b, d, new JobEdge("b"));
+        graph.getGraph().addEdge(b, d, new JobEdge("b"));
+        graph.getGraph().addEdge(c, d, new JobEdge("c"));
+
+        graph.reduceDependencies();
+        assertEquals(4, graph.getGraph().edgeSet().size());
+        assertEquals(0, graph.getGraph().getAllEdges(a, d).size());
+        assertEquals(1, graph.getGraph().getAllEdges(b, d).size());
+        assertEquals(1, graph.getGraph().getAllEdges(c, d).size());
+        assertEquals(1, graph.getGraph().getAllEdges(a, b).size());
+    }
+
+    @Test
+    public void testCachedOrderAndLevels(){
+        Pipeline pipeline = new Pipeline();
+        pipeline.setExecutions(Arrays.asList(new PipelineJob("a"), new PipelineJob("b"), new PipelineJob("c"), new PipelineJob("d")));
+        PipelineGraph graph = new PipelineGraph(pipeline);
+        JobNode a = graph.findNode("a");
+        JobNode b = graph.findNode("b");
+        JobNode c = graph.findNode("c");
+        JobNode d = graph.findNode("d");
+        graph.getGraph().addEdge(a, b, new JobEdge("a"));
+        graph.getGraph().addEdge(b, c, new JobEdge("b"));
+        graph.getGraph().addEdge(a, c, new JobEdge("a"));
+
+        List<JobNode> nodes = graph.getNodes();
+        assertSame(nodes, graph.getNodes());
+        assertTrue(nodes.indexOf(a) < nodes.indexOf(b));
+        assertTrue(nodes.indexOf(b) < nodes.indexOf(c));
+        List<List<JobNode>> levels = graph.getLevels();
+        assertSame(levels, graph.getLevels());
+        assertEquals(3, levels.size());
+        assertEquals(2, levels.get(0).size());
+        assertTrue(levels.get(0).contains(a));
+        assertTrue(levels.get(0).contains(d));
+        assertEquals(Arrays.asList(b), levels.get(1));
+        assertEquals(Arrays.asList(c), levels.get(2));
+
+        // structural changes invalidate the cache, old lists stay untouched
+        graph.getGraph().addEdge(c, d, new JobEdge("c"));
+        assertNotSame(nodes, graph.getNodes());
+        assertEquals(4, nodes.size());
+        assertEquals(d, graph.getNodes().get(3));
+        assertEquals(4, graph.getLevels().size());
+        graph.getGraph().removeVertex(b);
+        assertEquals(3, graph.getNodes().size());
+        assertEquals(3, graph.getLevels().size());
+        assertEquals(Arrays.asList(c), graph.getLevels().get(1));
+    }
+
+    @Test
+    public void testParallelSubPipelinePreparation(){
+        PipelineGraph sequential = createSubPipelineGraph(1);
+        PipelineGraph parallel = createSubPipelineGraph(4);
+
+        List<String> ids = new ArrayList<String>();
+        for (JobNode node : sequential.getNodes()) {
+            ids.add(node.getNodeId());
+        }
+        List<String> parallelIds = new ArrayList<String>();
+        for (JobNode node : parallel.getNodes()) {
+            parallelIds.add(node.getNodeId());
+            assertEquals(sequential.findNode(node.getNodeId()).getConfiguration(), node.getConfiguration());
+        }
+        assertEquals(8, ids.size());
+        assertEquals(ids, parallelIds);
+        assertEquals(edges(sequential), edges(parallel));
+        assertEquals(2, parallel.findNode("p2_x").getConfiguration().get("input"));
+        assertEquals(3, parallel.findNode("p3_y").getConfiguration().get("input"));
+        assertEquals(1, parallel.getGraph().getAllEdges(parallel.findNode("p0_y"), parallel.findNode("p1_x")).size());
+    }
+
+    @Test
+    public void testSubPipelineTemplates(){
+        List<String> inputs = Arrays.asList("/data/a.txt", "b.fq.gz", "/data/c", "d.txt");
+        PipelineGraph graph = createTemplateGraph(inputs);
+        assertEquals(8, graph.vertexCount());
+        // rebound instances match separately prepared ones
+        for (int i = 0; i < inputs.size(); i++) {
+            PipelineGraph single = createTemplateGraph(Arrays.asList(inputs.get(i)));
+            for (JobNode node : single.getNodes()) {
+                JobNode instance = graph.findNode(node.getNodeId().replace("p0_", "p" + i + "_"));
+                assertEquals(node.getConfiguration(), instance.getConfiguration());
+            }
+        }
+        assertEquals("a.bam", graph.findNode("p0_x").getConfiguration().get("output"));
+        assertEquals("b.fq.gz.bai", graph.findNode("p1_y").getConfiguration().get("index"));
+        assertEquals("/data/c..bai", graph.findNode("p2_y").getConfiguration().get("index"));
+        assertEquals(1, graph.getGraph().getAllEdges(graph.findNode("p3_x"), graph.findNode("p3_y")).size());
+    }
+
+    private PipelineGraph createTemplateGraph(List<String> inputs){
+        PipelineJob x = new PipelineJob("x");
+        x.setParameters(Arrays.asList(
+                new ParameterBuilder().setName("input").setList(false).createParameter(),
+                new ParameterBuilder().setName("output").setList(false).setOutput(true).createParameter()
+        ));
+        x.getConfiguration().put("output", "${input.name}.bam");
+        PipelineJob y = new PipelineJob("y");
+        y.setParameters(Arrays.asList(
+                new ParameterBuilder().setName("input").setList(false).createParameter(),
+                new ParameterBuilder().setName("index").setList(false).createParameter()
+        ));
+        y.getConfiguration().put("input", "${x.output}");
+        y.getConfiguration().put("index", "${pipeline.input.parent}${pipeline.input.name}.${pipeline.input.extension}.bai");
+        Pipeline sub = new Pipeline();
+        sub.setExecutions(Arrays.asList(x, y));
+
+        List<PipelineJob> executions = new ArrayList<PipelineJob>();
+        for (int i = 0; i < inputs.size(); i++) {
+            PipelineJob job = new PipelineJob("p" + i);
+            job.setParameters(Arrays.asList(new ParameterBuilder().setName("input").setList(false).createParameter()));
+            job.getConfiguration().put("input", inputs.get(i));
+            job.setPipeline(sub);
+            executions.add(job);
+        }
+        Pipeline pipeline = new Pipeline();
+        pipeline.setExecutions(executions);
+        PipelineGraph graph = new PipelineGraph(pipeline);
+        graph.prepare();
+        return graph;
+    }
+
+    private PipelineGraph createSubPipelineGraph(int parallelism){
+        PipelineJob x = new PipelineJob("x");
+        x.setParameters(Arrays.asList(new ParameterBuilder().setName("input").setList(false).createParameter()));
+        PipelineJob y = new PipelineJob("y");
+        y.setParameters(Arrays.asList(new ParameterBuilder().setName("input").setList(false).createParameter()));
+        y.setAfter(Arrays.asList("x"));
+        Pipeline sub = new Pipeline();
+        sub.setExecutions(Arrays.asList(x, y));
+
+        List<PipelineJob> executions = new ArrayList<PipelineJob>();
+        for (int i = 0; i < 4; i++) {
+            PipelineJob job = new PipelineJob("p" + i);
+            job.setParameters(Arrays.asList(new ParameterBuilder().setName("input").setList(false).createParameter()));
+            // values that are not strings are not rebound from a template
+            job.getConfiguration().put("input", i);
+            job.setPipeline(sub);
+            if (i > 0) job.setAfter(Arrays.asList("p" + (i - 1)));
+            executions.add(job);
+        }
+        Pipeline pipeline = new Pipeline();
+        pipeline.setExecutions(executions);
+
+        PipelineGraph graph = new PipelineGraph(pipeline);
+        graph.setParallelism(parallelism);
+        graph.prepare();
+        return graph;
+    }
+
+    private List<String> edges(PipelineGraph graph){
+        List<String> edges = new ArrayList<String>();
+        for (JobEdge edge : graph.getGraph().edgeSet()) {
+            edges.add(graph.getGraph().getEdgeSource(edge).getNodeId() + "->" + graph.getGraph().getEdgeTarget(edge).getNodeId());
+        }
+        return edges;
+    }
+
+    @Test
+    public void testPruneToTargets(){
+        PipelineGraph graph = createPruneGraph();
+        assertEquals(2, graph.prune(Arrays.asList("c")));
+        assertEquals(3, graph.vertexCount());
+        assertNotNull(graph.findNode("a"));
+        assertNotNull(graph.findNode("b"));
+        assertNull(graph.findNode("d"));
+        assertNull(graph.findNode("e"));
+        graph.prepare();
+        assertEquals(3, graph.getNodes().size());
+
+        graph = createPruneGraph();
+        assertEquals(1, graph.prune(Arrays.asList("d.output", "c")));
+        assertNull(graph.findNode("e"));
+
+        // tool ids select all nodes of the tool
+        graph = createPruneGraph();
+        assertEquals(2, graph.prune(Arrays.asList("tool-e")));
+        assertNotNull(graph.findNode("d"));
+        assertNull(graph.findNode("c"));
+
+        try {
+            createPruneGraph().prune(Arrays.asList("d.input"));
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals("Target d.input is not an output of d", e.getMessage());
+        }
+        try {
+            createPruneGraph().prune(Arrays.asList("x"));
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals("Unknown target x", e.getMessage());
+        }
+    }
+
+    private PipelineGraph createPruneGraph(){
+        // a -> b -> c, a -> d -> e
+        List<PipelineJob> executions = new ArrayList<PipelineJob>();
+        for (String id : Arrays.asList("a", "b", "c", "d", "e")) {
+            PipelineJob job = new PipelineJob(id, "tool-" + (id.equals("a") ? "e" : id));
+            job.setParameters(Arrays.asList(
+                    new ParameterBuilder().setName("input").setList(false).createParameter(),
+                    new ParameterBuilder().setName("output").setList(false).setOutput(true).createParameter()
+            ));
+            executions.add(job);
+        }
+        executions.get(1).setAfter(Arrays.asList("a"));
+        executions.get(2).setAfter(Arrays.asList("b"));
+        executions.get(3).setAfter(Arrays.asList("a"));
+        executions.get(4).setAfter(Arrays.asList("d"));
+        Pipeline pipeline = new Pipeline();
+        pipeline.setExecutions(executions);
+        return new PipelineGraph(pipeline);
+    }
+
     @Test
     public void testParameterValidation(){
         PipelineJob job_a = new PipelineJob("a");
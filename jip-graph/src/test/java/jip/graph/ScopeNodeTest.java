@@ -138,6 +138,29 @@ public class ScopeNodeTest {
     }
 
 
+    @Test
+    public void testResolvedValuesFollowTreeChanges() throws Exception {
+        ScopeNode scope = new ScopeNode("Root");
+        ScopeNode c1 = scope.createChild("c1");
+        ScopeNode c2 = c1.createChild("c2");
+        c1.createValue("v", "outer");
+        assertEquals("outer", c2.get("${v}"));
+        assertEquals("outer_outer", c2.get("${v}_${v}"));
+
+        // a closer node shadows the cached one
+        c2.createValue("v", "inner");
+        assertEquals("inner", c2.get("${v}"));
+        assertEquals("inner_inner", c2.get("${v}_${v}"));
+        assertEquals("outer", c1.get("${v}"));
+
+        // replaced value nodes are resolved again
+        ScopeNode c3 = c2.createChild("c3");
+        c3.setValue("first");
+        assertEquals("first", scope.get("${c1.c2.c3}"));
+        c3.setValue("second");
+        assertEquals("second", scope.get("${c1.c2.c3}"));
+    }
+
     @Test
     public void testSetValues() throws Exception {
         ScopeNode scope = new ScopeNode("Root");